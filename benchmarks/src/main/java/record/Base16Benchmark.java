@@ -0,0 +1,70 @@
+package record;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes and decodes object hashes, which is what Base16 is used for.
+ *
+ * <p>The {@code baseline} benchmarks use the previous implementation, which
+ * looked digits up with {@link String#charAt} and {@link String#indexOf}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class Base16Benchmark {
+    private static final String DIGITS = "0123456789abcdef";
+
+    private byte[] hash;
+    private String encodedHash;
+
+    @Setup
+    public void setUp() {
+        hash = Fixtures.randomBytes(20, 0);
+        encodedHash = Base16.encode(hash);
+    }
+
+    @Benchmark
+    public String encode() {
+        return Base16.encode(hash);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return Base16.decode(encodedHash);
+    }
+
+    @Benchmark
+    public String baselineEncode() {
+        char[] result = new char[2 * hash.length];
+        for (int i = 0; i < hash.length; ++i) {
+            result[2 * i] = DIGITS.charAt((hash[i] & 0xf0) >>> 4);
+            result[2 * i + 1] = DIGITS.charAt(hash[i] & 0x0f);
+        }
+        return String.valueOf(result);
+    }
+
+    @Benchmark
+    public byte[] baselineDecode() {
+        byte[] result = new byte[encodedHash.length() / 2];
+        for (int i = 0; i < result.length; ++i) {
+            int x = DIGITS.indexOf(encodedHash.charAt(2 * i));
+            int y = DIGITS.indexOf(encodedHash.charAt(2 * i + 1));
+            result[i] = (byte) ((x << 4) + y);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+package record;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BlobBenchmark {
+    /**
+     * The length of the blob's body: a small source file or a large asset.
+     */
+    @Param({"512", "4194304"})
+    private int length;
+
+    private Blob blob;
+    private byte[] content;
+
+    @Setup
+    public void setUp() {
+        blob = new Blob(Fixtures.randomBytes(length, 0));
+        content = blob.getBytes();
+    }
+
+    @Benchmark
+    public Blob parse() {
+        return Blob.parse(content);
+    }
+
+    @Benchmark
+    public byte[] getHash() {
+        return blob.getHash();
+    }
+}
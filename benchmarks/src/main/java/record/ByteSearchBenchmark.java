@@ -0,0 +1,74 @@
+package record;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the scalar and SWAR implementations of {@link ByteSearch}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ByteSearchBenchmark {
+    /**
+     * The number of bytes before the match.
+     */
+    @Param({"12", "100", "65536"})
+    private int prefix;
+
+    private byte[] input;
+    private byte[] tree;
+
+    @Setup
+    public void setUp() {
+        input = new byte[prefix + 64];
+        Arrays.fill(input, 0, prefix, (byte) 'a');
+        tree = Fixtures.tree(1000).getBytes();
+    }
+
+    @Benchmark
+    public int scalar() {
+        return ByteSearch.scalarIndexOf(input, 0, (byte) 0);
+    }
+
+    @Benchmark
+    public int swar() {
+        return ByteSearch.swarIndexOf(input, 0, (byte) 0);
+    }
+
+    /**
+     * Finds the end of every name in a tree, as {@link TreeView#parse} does.
+     */
+    @Benchmark
+    public int scalarTree() {
+        int result = 0;
+        for (int i = ByteSearch.scalarIndexOf(tree, 0, (byte) 0) + 1; i < tree.length; i = ByteSearch.scalarIndexOf(tree, i, (byte) 0) + 21) {
+            ++result;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int swarTree() {
+        int result = 0;
+        for (int i = ByteSearch.swarIndexOf(tree, 0, (byte) 0) + 1; i < tree.length; i = ByteSearch.swarIndexOf(tree, i, (byte) 0) + 21) {
+            ++result;
+        }
+        return result;
+    }
+}
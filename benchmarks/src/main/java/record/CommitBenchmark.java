@@ -0,0 +1,53 @@
+package record;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CommitBenchmark {
+    private Commit commit;
+    private byte[] content;
+    private final ObjectBuffer buffer = new ObjectBuffer();
+
+    @Setup
+    public void setUp() {
+        commit = Fixtures.commit();
+        content = commit.getBytes();
+    }
+
+    @Benchmark
+    public Commit parse() {
+        return Commit.parse(content);
+    }
+
+    @Benchmark
+    public ObjectId extractTreeHash() {
+        return Commit.extractTreeHash(content);
+    }
+
+    @Benchmark
+    public byte[] getHash() {
+        return commit.getHash();
+    }
+
+    @Benchmark
+    public ObjectBuffer writeObject() {
+        buffer.writeObject(commit);
+        return buffer;
+    }
+}
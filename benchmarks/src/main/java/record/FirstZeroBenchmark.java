@@ -0,0 +1,67 @@
+package record;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FirstZeroBenchmark {
+    /**
+     * The number of non-zero bytes before the first zero: an object header,
+     * a tree entry with a long name, and a text file.
+     */
+    @Param({"12", "100", "65536"})
+    private int prefix;
+
+    private byte[] input;
+
+    @Setup
+    public void setUp() {
+        input = new byte[prefix + 64];
+        Arrays.fill(input, 0, prefix, (byte) 'a');
+    }
+
+    @Benchmark
+    public int in() {
+        return FirstZero.in(input);
+    }
+
+    /**
+     * Finds every zero of a tree's content, as {@link Tree#parse} does.
+     */
+    @State(Scope.Benchmark)
+    public static class TreeContent {
+        private byte[] content;
+
+        @Setup
+        public void setUp() {
+            content = Fixtures.tree(1000).getBytes();
+        }
+    }
+
+    @Benchmark
+    public int tree(TreeContent state) {
+        byte[] content = state.content;
+        int result = 0;
+        for (int i = FirstZero.in(content) + 1; i < content.length; i = FirstZero.in(content, i) + 21) {
+            ++result;
+        }
+        return result;
+    }
+}
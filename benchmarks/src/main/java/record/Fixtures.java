@@ -0,0 +1,57 @@
+package record;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic inputs for the benchmarks.
+ */
+final class Fixtures {
+    private Fixtures() {
+        // No instantiation.
+    }
+
+    public static byte[] randomBytes(int length, long seed) {
+        byte[] result = new byte[length];
+        new Random(seed).nextBytes(result);
+        return result;
+    }
+
+    /**
+     * Builds a tree whose entries look like the ones of a source directory:
+     * mostly files, with some executables and subdirectories.
+     */
+    public static Tree tree(int entries) {
+        Random random = new Random(entries);
+        List<TreeNode> children = new ArrayList<>(entries);
+        byte[] hash = new byte[20];
+        for (int i = 0; i < entries; ++i) {
+            random.nextBytes(hash);
+            String name = String.format("entry-%06d.java", i);
+            int kind = random.nextInt(20);
+            if (kind == 0) {
+                children.add(new Directory(name.substring(0, 12), hash.clone()));
+            } else if (kind == 1) {
+                children.add(new File(name, true, hash.clone()));
+            } else {
+                children.add(new File(name, false, hash.clone()));
+            }
+        }
+        return new Tree(children);
+    }
+
+    public static Commit commit() {
+        User user = new User("Jane Doe", "jane@example.com");
+        Timestamp timestamp = Timestamp.of("1604560870 +0100");
+        return new Commit(
+            ObjectId.fromBytes(randomBytes(20, 1)),
+            List.of(ObjectId.fromBytes(randomBytes(20, 2))),
+            user,
+            timestamp,
+            user,
+            timestamp,
+            "Add more stuff\n\nThe body of the commit message explains why the stuff was added.\n"
+        );
+    }
+}
@@ -0,0 +1,283 @@
+package record;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Times whole {@link Repository} operations on a {@link SyntheticTree}.
+ *
+ * <p>Every run generates a fresh working directory and then measures, in
+ * order: {@code init}, the first {@code commit}, a {@code commit} without
+ * changes, a {@code commit} after touching 1% of the files, and a
+ * {@code checkout} to the first commit's branch and back.
+ *
+ * <p>For every operation it reports the wall time, the number of loose
+ * objects written, the bytes read and written by the process (from
+ * {@code /proc/self/io}, or {@code -1} where that isn't available) and the
+ * peak heap usage, which is the sum of the heap pools' peaks.
+ *
+ * <p>Options are given as {@code --name value}; see {@link #main} for the
+ * defaults.
+ */
+public final class RepositoryBenchmark {
+    private static final User USER = new User("Jane Doe", "jane@example.com");
+
+    private static final class Result {
+        private final int run;
+        private final String operation;
+        private final long wallNanos;
+        private final long objectsWritten;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long peakHeap;
+
+        public Result(int run, String operation, long wallNanos, long objectsWritten, long bytesRead, long bytesWritten, long peakHeap) {
+            this.run = run;
+            this.operation = operation;
+            this.wallNanos = wallNanos;
+            this.objectsWritten = objectsWritten;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.peakHeap = peakHeap;
+        }
+    }
+
+    private interface Operation {
+        void run() throws IOException;
+    }
+
+    private final Path gitDirectory;
+    private final int run;
+    private final List<Result> results;
+
+    private RepositoryBenchmark(Path directory, int run, List<Result> results) {
+        this.gitDirectory = directory.resolve(".git");
+        this.run = run;
+        this.results = results;
+    }
+
+    /**
+     * Reads the process's I/O counters.
+     *
+     * @return The bytes read and written so far, or {@code -1}s.
+     */
+    private static long[] readIoCounters() {
+        long[] result = {-1, -1};
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/io"))) {
+                if (line.startsWith("rchar: ")) {
+                    result[0] = Long.parseLong(line.substring(7).strip());
+                } else if (line.startsWith("wchar: ")) {
+                    result[1] = Long.parseLong(line.substring(7).strip());
+                }
+            }
+        } catch (IOException e) {
+            // Not on Linux; report the counters as unavailable.
+        }
+        return result;
+    }
+
+    private long countObjects() throws IOException {
+        Path objects = gitDirectory.resolve("objects");
+        if (!Files.isDirectory(objects)) {
+            return 0;
+        }
+        try (Stream<Path> stream = Files.walk(objects)) {
+            return stream
+                .filter(path -> !path.getParent().getFileName().toString().equals("pack"))
+                .filter(path -> path.getFileName().toString().length() == 38)
+                .filter(Files::isRegularFile)
+                .count();
+        }
+    }
+
+    private void measure(String name, Operation operation) throws IOException {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pools.add(pool);
+            }
+        }
+        long objects = countObjects();
+        System.gc();
+        for (MemoryPoolMXBean pool : pools) {
+            pool.resetPeakUsage();
+        }
+        long[] io = readIoCounters();
+        long start = System.nanoTime();
+        operation.run();
+        long wallNanos = System.nanoTime() - start;
+        long[] ioAfter = readIoCounters();
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        results.add(
+            new Result(
+                run,
+                name,
+                wallNanos,
+                countObjects() - objects,
+                io[0] == -1 ? -1 : ioAfter[0] - io[0],
+                io[1] == -1 ? -1 : ioAfter[1] - io[1],
+                peakHeap
+            )
+        );
+    }
+
+    private static void runScenario(SyntheticTree generator, Path directory, int run, int workers, List<Result> results) throws IOException {
+        List<Path> files = generator.generate(directory);
+        Repository repository = new Repository(directory);
+        repository.setFreezeWorkers(workers);
+        repository.setThawWorkers(workers);
+        RepositoryBenchmark benchmark = new RepositoryBenchmark(directory, run, results);
+        benchmark.measure("init", repository::init);
+        benchmark.measure("commit", () -> repository.commit(USER, Timestamp.of("1604560870 +0100"), "Initial commit"));
+        repository.branch("base");
+        benchmark.measure("commit-unchanged", () -> repository.commit(USER, Timestamp.of("1604560871 +0100"), "No changes"));
+        generator.touch(files, 0.01);
+        benchmark.measure("commit-touched", () -> repository.commit(USER, Timestamp.of("1604560872 +0100"), "Touch some files"));
+        benchmark.measure("checkout-base", () -> repository.checkout("base"));
+        benchmark.measure("checkout-master", () -> repository.checkout("master"));
+    }
+
+    private static void delete(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void writeJson(PrintStream out, Map<String, String> options, List<Result> results) {
+        out.println("{");
+        out.println("  \"options\": {");
+        List<String> keys = new ArrayList<>(options.keySet());
+        keys.sort(null);
+        for (int i = 0; i < keys.size(); ++i) {
+            out.printf("    \"%s\": \"%s\"%s%n", keys.get(i), options.get(keys.get(i)), i + 1 < keys.size() ? "," : "");
+        }
+        out.println("  },");
+        out.println("  \"results\": [");
+        for (int i = 0; i < results.size(); ++i) {
+            Result result = results.get(i);
+            out.printf(
+                Locale.ROOT,
+                "    {\"run\": %d, \"operation\": \"%s\", \"wallMillis\": %.3f, \"objectsWritten\": %d, \"bytesRead\": %d, \"bytesWritten\": %d, \"peakHeapBytes\": %d}%s%n",
+                result.run,
+                result.operation,
+                result.wallNanos / 1e6,
+                result.objectsWritten,
+                result.bytesRead,
+                result.bytesWritten,
+                result.peakHeap,
+                i + 1 < results.size() ? "," : ""
+            );
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+
+    private static void writeCsv(PrintStream out, List<Result> results) {
+        out.println("run,operation,wallMillis,objectsWritten,bytesRead,bytesWritten,peakHeapBytes");
+        for (Result result : results) {
+            out.printf(
+                Locale.ROOT,
+                "%d,%s,%.3f,%d,%d,%d,%d%n",
+                result.run,
+                result.operation,
+                result.wallNanos / 1e6,
+                result.objectsWritten,
+                result.bytesRead,
+                result.bytesWritten,
+                result.peakHeap
+            );
+        }
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * <p>Options and their defaults: {@code --depth 3}, {@code --fan-out 4},
+     * {@code --files 20}, {@code --median-size 4096}, {@code --sigma 1.5},
+     * {@code --max-size 4194304}, {@code --symlinks 0.01},
+     * {@code --executables 0.05}, {@code --seed 0}, {@code --runs 3},
+     * {@code --workers 1}, {@code --format json} (or {@code csv}),
+     * {@code --output -} (standard output) and {@code --directory} (a new
+     * temporary directory for every run).
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        options.put("depth", "3");
+        options.put("fan-out", "4");
+        options.put("files", "20");
+        options.put("median-size", "4096");
+        options.put("sigma", "1.5");
+        options.put("max-size", "4194304");
+        options.put("symlinks", "0.01");
+        options.put("executables", "0.05");
+        options.put("seed", "0");
+        options.put("runs", "3");
+        options.put("workers", "1");
+        options.put("format", "json");
+        options.put("output", "-");
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --name value, got " + args[i] + ".");
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        SyntheticTree generator = new SyntheticTree(
+            Integer.parseInt(options.get("depth")),
+            Integer.parseInt(options.get("fan-out")),
+            Integer.parseInt(options.get("files")),
+            Integer.parseInt(options.get("median-size")),
+            Double.parseDouble(options.get("sigma")),
+            Integer.parseInt(options.get("max-size")),
+            Double.parseDouble(options.get("symlinks")),
+            Double.parseDouble(options.get("executables")),
+            Long.parseLong(options.get("seed"))
+        );
+        List<Result> results = new ArrayList<>();
+        for (int run = 0; run < Integer.parseInt(options.get("runs")); ++run) {
+            Path directory = options.containsKey("directory")
+                ? Files.createTempDirectory(Path.of(options.get("directory")), "record")
+                : Files.createTempDirectory("record");
+            try {
+                runScenario(generator, directory, run, Integer.parseInt(options.get("workers")), results);
+            } finally {
+                delete(directory);
+            }
+        }
+        String output = options.get("output");
+        try (PrintStream out = output.equals("-") ? new PrintStream(System.out, true) : new PrintStream(Files.newOutputStream(Path.of(output)))) {
+            if (options.get("format").equals("csv")) {
+                writeCsv(out, results);
+            } else {
+                writeJson(out, options, results);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package record;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates deterministic working directories of a configurable shape.
+ *
+ * <p>Every directory down to {@code depth} has {@code fanOut} subdirectories
+ * and {@code files} entries. File sizes follow a log-normal distribution
+ * around {@code medianSize}, which matches source trees reasonably well: most
+ * files are small, a few are large. The same parameters and seed always
+ * produce the same tree.
+ */
+final class SyntheticTree {
+    private static final byte[] ALPHABET = "abcdefghijklmnopqrstuvwxyz {}();=".getBytes(StandardCharsets.US_ASCII);
+
+    private final int depth;
+    private final int fanOut;
+    private final int files;
+    private final int medianSize;
+    private final double sigma;
+    private final int maxSize;
+    private final double symlinkRatio;
+    private final double executableRatio;
+    private final long seed;
+
+    /**
+     * @param depth           The number of directory levels below the root.
+     * @param fanOut          The number of subdirectories of every directory.
+     * @param files           The number of files, symbolic links included, in
+     *                        every directory.
+     * @param medianSize      The median file size, in bytes.
+     * @param sigma           The standard deviation of the logarithm of the
+     *                        file size.
+     * @param maxSize         The maximal file size, in bytes.
+     * @param symlinkRatio    The fraction of entries that are symbolic links.
+     * @param executableRatio The fraction of files that are executable.
+     * @param seed            The seed of the random number generator.
+     */
+    public SyntheticTree(
+        int depth,
+        int fanOut,
+        int files,
+        int medianSize,
+        double sigma,
+        int maxSize,
+        double symlinkRatio,
+        double executableRatio,
+        long seed
+    ) {
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.files = files;
+        this.medianSize = medianSize;
+        this.sigma = sigma;
+        this.maxSize = maxSize;
+        this.symlinkRatio = symlinkRatio;
+        this.executableRatio = executableRatio;
+        this.seed = seed;
+    }
+
+    /**
+     * Writes the tree into {@code root}.
+     *
+     * @return The regular files that were written, in generation order.
+     */
+    public List<Path> generate(Path root) throws IOException {
+        Random random = new Random(seed);
+        List<Path> result = new ArrayList<>();
+        generate(root, 0, random, result);
+        return result;
+    }
+
+    private void generate(Path dir, int level, Random random, List<Path> result) throws IOException {
+        Files.createDirectories(dir);
+        Path previous = null;
+        for (int i = 0; i < files; ++i) {
+            Path path = dir.resolve(String.format("file-%04d.txt", i));
+            if (previous != null && random.nextDouble() < symlinkRatio) {
+                Files.createSymbolicLink(path, previous.getFileName());
+                continue;
+            }
+            Files.write(path, content(random));
+            if (random.nextDouble() < executableRatio) {
+                Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rwxr-xr-x"));
+            }
+            result.add(path);
+            previous = path;
+        }
+        if (level < depth) {
+            for (int i = 0; i < fanOut; ++i) {
+                generate(dir.resolve(String.format("dir-%02d", i)), level + 1, random, result);
+            }
+        }
+    }
+
+    /**
+     * Produces text-like content, so that it compresses about as well as source code.
+     */
+    private byte[] content(Random random) {
+        double size = medianSize * Math.exp(sigma * random.nextGaussian());
+        byte[] result = new byte[(int) Math.max(1, Math.min(maxSize, size))];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = i % 64 == 63 ? (byte) '\n' : ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        return result;
+    }
+
+    /**
+     * Modifies a deterministic selection of {@code files}.
+     *
+     * @param fraction The fraction of files to modify.
+     * @return The number of modified files.
+     */
+    public int touch(List<Path> files, double fraction) throws IOException {
+        Random random = new Random(seed + 1);
+        int count = (int) Math.ceil(fraction * files.size());
+        List<Path> candidates = new ArrayList<>(files);
+        for (int i = 0; i < count; ++i) {
+            Path file = candidates.remove(random.nextInt(candidates.size()));
+            Files.writeString(file, "touched\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,68 @@
+package record;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TreeBenchmark {
+    /**
+     * The number of entries: a small directory, a large one, and the root of
+     * a monorepo-sized flat directory.
+     */
+    @Param({"10", "1000", "50000"})
+    private int entries;
+
+    private Tree tree;
+    private byte[] content;
+    private String name;
+    private final ObjectBuffer buffer = new ObjectBuffer();
+
+    @Setup
+    public void setUp() {
+        tree = Fixtures.tree(entries);
+        content = tree.getBytes();
+        name = tree.getChildren().get(entries / 2).getName();
+    }
+
+    @Benchmark
+    public Tree parse() {
+        return Tree.parse(content);
+    }
+
+    @Benchmark
+    public TreeNode lookup() {
+        return TreeView.parse(content).lookup(name);
+    }
+
+    @Benchmark
+    public byte[] getBody() {
+        return tree.getBody();
+    }
+
+    @Benchmark
+    public byte[] getHash() {
+        return tree.getHash();
+    }
+
+    @Benchmark
+    public ObjectBuffer writeObject() {
+        buffer.writeObject(tree);
+        return buffer;
+    }
+}
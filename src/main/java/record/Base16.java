@@ -1,12 +1,34 @@
 package record;
 
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
+import java.util.Arrays;
 
 /**
  * Conversion to and from Base16.
  */
 final class Base16 {
-    private static final String digits = "0123456789abcdef";
+    private static final byte[] DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The two digits of every byte, indexed by the unsigned byte times two.
+     */
+    private static final byte[] ENCODE = new byte[512];
+    /**
+     * The value of every digit, indexed by its character; {@code -1} for
+     * everything else.
+     */
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        for (int i = 0; i < 256; ++i) {
+            ENCODE[2 * i] = DIGITS[i >>> 4];
+            ENCODE[2 * i + 1] = DIGITS[i & 0x0f];
+        }
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < DIGITS.length; ++i) {
+            DECODE[DIGITS[i]] = (byte) i;
+        }
+    }
 
     private Base16() {
         // No instantiation.
@@ -19,12 +41,28 @@ final class Base16 {
      * @return The corresponding string of hexadecimal digits.
      */
     public static String encode(byte[] data) {
-        char[] result = new char[2 * data.length];
-        for (int i = 0; i < data.length; ++i) {
-            result[2 * i] = digits.charAt((data[i] & 0xf0) >>> 4);
-            result[2 * i + 1] = digits.charAt(data[i] & 0x0f);
+        byte[] result = new byte[2 * data.length];
+        encode(data, 0, data.length, result, 0);
+        // Latin-1 strings are stored as bytes, so this is a plain copy.
+        return new String(result, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Convert bytes into Base16, writing the digits into {@code output}.
+     *
+     * <p>The input may overlap the output, as long as it starts at least
+     * {@code length} bytes after the output.
+     */
+    public static void encode(byte[] data, int offset, int length, byte[] output, int outputOffset) {
+        for (int i = 0; i < length; ++i) {
+            int j = 2 * (data[offset + i] & 0xff);
+            output[outputOffset + 2 * i] = ENCODE[j];
+            output[outputOffset + 2 * i + 1] = ENCODE[j + 1];
         }
-        return String.valueOf(result);
+    }
+
+    private static int digit(int c) {
+        return c >= 0 && c < DECODE.length ? DECODE[c] : -1;
     }
 
     /**
@@ -40,8 +78,33 @@ final class Base16 {
         }
         byte[] result = new byte[string.length() / 2];
         for (int i = 0; i < result.length; ++i) {
-            int x = digits.indexOf(string.charAt(2 * i));
-            int y = digits.indexOf(string.charAt(2 * i + 1));
+            int x = digit(string.charAt(2 * i));
+            int y = digit(string.charAt(2 * i + 1));
+            if (x == -1 || y == -1) {
+                throw new FatalParseException(MessageFormat.format("Invalid hexadecimal byte at position {0}.", 2 * i));
+            }
+            result[i] = (byte) ((x << 4) + y);
+        }
+        return result;
+    }
+
+    /**
+     * Convert ASCII-encoded Base16 into bytes, without going through a string.
+     *
+     * @param input  An array containing pairs of hexadecimal digits.
+     * @param offset The position of the first digit.
+     * @param length The number of digits.
+     * @return The corresponding array of bytes.
+     * @throws FatalParseException If the input is malformed.
+     */
+    public static byte[] decode(byte[] input, int offset, int length) throws FatalParseException {
+        if (length % 2 != 0) {
+            throw new FatalParseException("Input is of odd length.");
+        }
+        byte[] result = new byte[length / 2];
+        for (int i = 0; i < result.length; ++i) {
+            int x = digit(input[offset + 2 * i]);
+            int y = digit(input[offset + 2 * i + 1]);
             if (x == -1 || y == -1) {
                 throw new FatalParseException(MessageFormat.format("Invalid hexadecimal byte at position {0}.", 2 * i));
             }
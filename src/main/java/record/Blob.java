@@ -1,5 +1,8 @@
 package record;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
@@ -40,6 +43,24 @@ public final class Blob implements LooseObject {
         return new Blob(data);
     }
 
+    /**
+     * Copy a blob's body from its content, without holding the body in memory.
+     *
+     * @param input  A stream of the blob's content.
+     * @param output Where to write the blob's body.
+     * @throws FatalParseException If {@code input} is not a valid blob.
+     * @throws IOException         If reading or writing failed.
+     */
+    public static void transfer(InputStream input, OutputStream output) throws IOException {
+        String header = LooseObject.readHeader(input);
+        if (!header.startsWith("blob ")) {
+            throw new FatalParseException("Malformed header.");
+        }
+        if (Long.parseLong(header.substring(5)) != input.transferTo(output)) {
+            throw new FatalParseException("Header contains incorrect length.");
+        }
+    }
+
     @Override
     public String getType() {
         return "blob";
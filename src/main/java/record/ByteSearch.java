@@ -0,0 +1,74 @@
+package record;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Finds bytes in byte arrays.
+ *
+ * <p>There are two implementations: a scalar one that compares one byte at a
+ * time, and a SWAR ("SIMD within a register") one that loads eight bytes into
+ * a {@code long} and tests all of them at once. The latter is used unless the
+ * system property {@code record.search} is set to {@code scalar}.
+ */
+final class ByteSearch {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /**
+     * Whether {@link #indexOf} uses the SWAR implementation.
+     */
+    static final boolean SWAR = !"scalar".equals(System.getProperty("record.search"));
+
+    private ByteSearch() {
+        // No instantiation.
+    }
+
+    /**
+     * Returns the index of the first occurrence of {@code value} in
+     * {@code input} from {@code offset} on, or {@code -1}.
+     */
+    public static int indexOf(byte[] input, int offset, byte value) {
+        return SWAR ? swarIndexOf(input, offset, value) : scalarIndexOf(input, offset, value);
+    }
+
+    static int scalarIndexOf(byte[] input, int offset, byte value) {
+        for (int i = offset; i < input.length; ++i) {
+            if (input[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int swarIndexOf(byte[] input, int offset, byte value) {
+        long pattern = ONES * (value & 0xff);
+        int i = offset;
+        // Two words per iteration, so that the loop overhead is amortized.
+        for (; i + 2 * Long.BYTES <= input.length; i += 2 * Long.BYTES) {
+            long first = (long) LONGS.get(input, i) ^ pattern;
+            long second = (long) LONGS.get(input, i + Long.BYTES) ^ pattern;
+            if (((((first - ONES) & ~first) | ((second - ONES) & ~second)) & HIGH_BITS) != 0) {
+                break;
+            }
+        }
+        for (; i + Long.BYTES <= input.length; i += Long.BYTES) {
+            // The bytes equal to value become zero. Subtracting one from every
+            // byte sets the high bit of the zero bytes; the lowest flagged byte
+            // is always a genuine match, because borrows only propagate upwards.
+            long word = (long) LONGS.get(input, i) ^ pattern;
+            long found = (word - ONES) & ~word & HIGH_BITS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < input.length; ++i) {
+            if (input[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,6 +1,8 @@
 package record;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -10,8 +12,10 @@ import java.util.List;
  * of the objects they refer to.
  */
 public final class Commit implements LooseObject {
-    private final String tree;
-    private final List<String> parents;
+    private static final byte[] TREE = "tree ".getBytes(StandardCharsets.US_ASCII);
+
+    private final ObjectId tree;
+    private final List<ObjectId> parents;
     private final User author;
     private final Timestamp authorDate;
     private final User committer;
@@ -19,8 +23,8 @@ public final class Commit implements LooseObject {
     private final String message;
 
     /**
-     * @param tree          The tree's Base16-encoded hash.
-     * @param parents       A list of the parents' Base16-encoded hashes.
+     * @param tree          The tree's id.
+     * @param parents       A list of the parents' ids.
      * @param author        Who created the content.
      * @param authorDate    When the content was created.
      * @param committer     Who is creating the commit.
@@ -28,8 +32,8 @@ public final class Commit implements LooseObject {
      * @param message       The commit message.
      */
     public Commit(
-        String tree,
-        List<String> parents,
+        ObjectId tree,
+        List<ObjectId> parents,
         User author,
         Timestamp authorDate,
         User committer,
@@ -46,13 +50,41 @@ public final class Commit implements LooseObject {
     }
 
     /**
-     * Extract the tree hash from a commit's content.
+     * Reconstruct a commit from its content, see {@link CommitView#parse}.
+     *
+     * <p>Headers that this class doesn't model (e.g., {@code gpgsig}) are
+     * skipped.
+     *
+     * @param input A byte array containing the commit's content.
+     * @return The corresponding {@link Commit}.
+     * @throws FatalParseException If {@code input} is not a valid commit.
+     */
+    public static Commit parse(byte[] input) throws FatalParseException {
+        CommitView view = CommitView.parse(input);
+        List<ObjectId> parents = new ArrayList<>(view.getParentCount());
+        for (int i = 0; i < view.getParentCount(); ++i) {
+            parents.add(view.getParent(i));
+        }
+        return new Commit(
+            view.getTree(),
+            parents,
+            view.getAuthor(),
+            view.getAuthorDate(),
+            view.getCommitter(),
+            view.getCommitterDate(),
+            view.getMessage()
+        );
+    }
+
+    /**
+     * Extract the tree's id from a commit's content, without parsing the
+     * rest of the commit.
      *
      * @param input A byte array containing the commit's content.
-     * @return The hash of the commit's tree.
+     * @return The id of the commit's tree.
      * @throws FatalParseException If {@code input} is not a valid commit.
      */
-    public static byte[] extractTreeHash(byte[] input) throws FatalParseException {
+    public static ObjectId extractTreeHash(byte[] input) throws FatalParseException {
         int i = FirstZero.in(input);
         String header = new String(input, 0, i, StandardCharsets.UTF_8);
         if (!header.startsWith("commit ")) {
@@ -63,17 +95,32 @@ public final class Commit implements LooseObject {
         if (Integer.parseInt(header.substring(7)) != input.length - i) {
             throw new FatalParseException("Header contains incorrect length.");
         }
-        // Skip past "tree ".
-        i += 5;
-        for (int j = i; j < input.length; ++j) {
-            if (input[j] == '\n') {
-                if (j - i != 40) {
-                    throw new FatalParseException("Invalid tree hash.");
-                }
-                return Base16.decode(new String(input, i, j - i, StandardCharsets.UTF_8));
-            }
+        if (input.length - i < TREE.length || !Arrays.equals(input, i, i + TREE.length, TREE, 0, TREE.length)) {
+            throw new FatalParseException("Malformed body.");
         }
-        throw new FatalParseException("Malformed body.");
+        i += TREE.length;
+        int j = ByteSearch.indexOf(input, i, (byte) '\n');
+        if (j == -1) {
+            throw new FatalParseException("Malformed body.");
+        }
+        if (j - i != 2 * ObjectId.LENGTH) {
+            throw new FatalParseException("Invalid tree hash.");
+        }
+        return ObjectId.parse(input, i);
+    }
+
+    /**
+     * @return The tree's id.
+     */
+    public ObjectId getTree() {
+        return tree;
+    }
+
+    /**
+     * @return A list of the parents' ids.
+     */
+    public List<ObjectId> getParents() {
+        return parents;
     }
 
     @Override
@@ -81,22 +128,41 @@ public final class Commit implements LooseObject {
         return "commit";
     }
 
+    private static void writeSignature(ObjectBuffer buffer, String header, User user, Timestamp timestamp) {
+        buffer.writeUtf8(header);
+        buffer.writeUtf8(user.getName());
+        buffer.writeUtf8(" <");
+        buffer.writeUtf8(user.getEmail());
+        buffer.writeUtf8("> ");
+        buffer.writeUtf8(timestamp.toString());
+        buffer.write('\n');
+    }
+
     @Override
-    public byte[] getBody() {
-        StringBuilder builder = new StringBuilder().append("tree ").append(tree).append('\n');
-        for (String parent : parents) {
-            builder.append("parent ").append(parent).append('\n');
+    public void writeBody(ObjectBuffer buffer) {
+        buffer.writeUtf8("tree ");
+        buffer.writeHex(tree);
+        buffer.write('\n');
+        for (ObjectId parent : parents) {
+            buffer.writeUtf8("parent ");
+            buffer.writeHex(parent);
+            buffer.write('\n');
         }
-        builder
-            .append("author ").append(author).append(' ').append(authorDate).append('\n')
-            .append("committer ").append(committer).append(' ').append(committerDate).append('\n')
-            .append('\n');
+        writeSignature(buffer, "author ", author, authorDate);
+        writeSignature(buffer, "committer ", committer, committerDate);
+        buffer.write('\n');
         if (message != null && !message.isEmpty()) {
-            builder.append(message);
+            buffer.writeUtf8(message);
             if (message.charAt(message.length() - 1) != '\n') {
-                builder.append('\n');
+                buffer.write('\n');
             }
         }
-        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] getBody() {
+        ObjectBuffer buffer = new ObjectBuffer();
+        writeBody(buffer);
+        return buffer.copyBody();
     }
 }
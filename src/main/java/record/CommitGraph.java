@@ -0,0 +1,191 @@
+package record;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * A Git commit-graph file.
+ *
+ * <p>The file is of the form
+ * <pre><code>
+ * +--------+---------+--------------+--------+------------+--------+----------+
+ * | header | chunks  | OIDF         | OIDL   | CDAT       | EDGE   | checksum |
+ * +--------+---------+--------------+--------+------------+--------+----------+
+ * </code></pre>
+ * where the header is {@code "CGPH"}, the version, the hash version, the
+ * number of chunks and the number of base graphs, and {@code chunks} lists
+ * each chunk's id and offset. {@code OIDF} and {@code OIDL} are a fanout
+ * table and the sorted commit hashes, like in a pack index (see
+ * {@link PackFile}); a commit's position in {@code OIDL} is its position in
+ * the graph. {@code CDAT} contains, for every commit, its tree's hash, the
+ * positions of its first two parents, and its generation and commit time;
+ * the positions of further parents are in {@code EDGE}.
+ *
+ * <p>The generation of a commit is one more than the maximal generation of its
+ * parents, and one for root commits; hence a commit can only be an ancestor of
+ * commits with a larger generation. The graph is closed under taking parents,
+ * so every ancestor of a commit in the graph is in the graph too.
+ *
+ * <p>The file is memory-mapped, so looking up a commit neither inflates nor
+ * parses anything; instances are safe to use from multiple threads.
+ */
+final class CommitGraph {
+    static final int SIGNATURE = 0x43475048;
+    static final int FANOUT_CHUNK = 0x4f494446;
+    static final int IDS_CHUNK = 0x4f49444c;
+    static final int DATA_CHUNK = 0x43444154;
+    static final int EDGES_CHUNK = 0x45444745;
+    /**
+     * The parent position of a commit that doesn't have that many parents.
+     */
+    static final int NO_PARENT = 0x70000000;
+    /**
+     * Set on the second parent position if it's an index into {@code EDGE},
+     * and on the last position of every list in {@code EDGE}.
+     */
+    static final int EDGE_FLAG = 0x80000000;
+    /**
+     * The length of a commit's entry in {@code CDAT}.
+     */
+    static final int DATA_LENGTH = ObjectId.LENGTH + 16;
+    /**
+     * The largest generation that fits into {@code CDAT}; larger ones are capped.
+     */
+    static final int MAX_GENERATION = 0x3fffffff;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int fanoutOffset;
+    private final int idsOffset;
+    private final int dataOffset;
+    private final int edgesOffset;
+
+    public CommitGraph(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < 8 || buffer.getInt(0) != SIGNATURE || buffer.get(4) != 1 || buffer.get(5) != 1) {
+            throw new FatalParseException("Unsupported commit-graph.");
+        }
+        int chunks = buffer.get(6) & 0xff;
+        int fanout = -1;
+        int ids = -1;
+        int data = -1;
+        int edges = -1;
+        for (int i = 0; i < chunks; ++i) {
+            int id = buffer.getInt(8 + 12 * i);
+            int offset = (int) buffer.getLong(8 + 12 * i + 4);
+            if (id == FANOUT_CHUNK) {
+                fanout = offset;
+            } else if (id == IDS_CHUNK) {
+                ids = offset;
+            } else if (id == DATA_CHUNK) {
+                data = offset;
+            } else if (id == EDGES_CHUNK) {
+                edges = offset;
+            }
+        }
+        if (fanout == -1 || ids == -1 || data == -1) {
+            throw new FatalParseException("Malformed commit-graph.");
+        }
+        this.fanoutOffset = fanout;
+        this.idsOffset = ids;
+        this.dataOffset = data;
+        this.edgesOffset = edges;
+        this.count = buffer.getInt(fanoutOffset + 255 * 4);
+    }
+
+    /**
+     * Returns the number of commits.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the position of {@code id} in the graph, or {@code -1}.
+     */
+    public int find(ObjectId id) {
+        int first = id.getFirstByte();
+        int low = first == 0 ? 0 : buffer.getInt(fanoutOffset + (first - 1) * 4);
+        int high = buffer.getInt(fanoutOffset + first * 4);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = -id.compareTo(buffer, idsOffset + middle * ObjectId.LENGTH);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(ObjectId id) {
+        return find(id) != -1;
+    }
+
+    public ObjectId getId(int position) {
+        return ObjectId.fromBuffer(buffer, idsOffset + position * ObjectId.LENGTH);
+    }
+
+    public ObjectId getTree(int position) {
+        return ObjectId.fromBuffer(buffer, dataOffset + position * DATA_LENGTH);
+    }
+
+    public int getParentCount(int position) {
+        int offset = dataOffset + position * DATA_LENGTH + ObjectId.LENGTH;
+        if (buffer.getInt(offset) == NO_PARENT) {
+            return 0;
+        }
+        int second = buffer.getInt(offset + 4);
+        if (second == NO_PARENT) {
+            return 1;
+        }
+        if ((second & EDGE_FLAG) == 0) {
+            return 2;
+        }
+        int result = 2;
+        for (int i = second & ~EDGE_FLAG; (buffer.getInt(edgesOffset + 4 * i) & EDGE_FLAG) == 0; ++i) {
+            ++result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the position of the parent at {@code index} of the commit at
+     * {@code position}.
+     */
+    public int getParent(int position, int index) {
+        int offset = dataOffset + position * DATA_LENGTH + ObjectId.LENGTH;
+        if (index == 0) {
+            return buffer.getInt(offset);
+        }
+        int second = buffer.getInt(offset + 4);
+        if ((second & EDGE_FLAG) == 0) {
+            return second;
+        }
+        return buffer.getInt(edgesOffset + 4 * ((second & ~EDGE_FLAG) + index - 1)) & ~EDGE_FLAG;
+    }
+
+    /**
+     * Returns the generation of the commit at {@code position}.
+     */
+    public int getGeneration(int position) {
+        return buffer.getInt(dataOffset + position * DATA_LENGTH + ObjectId.LENGTH + 8) >>> 2;
+    }
+
+    /**
+     * Returns the commit time of the commit at {@code position}, in seconds
+     * since the epoch.
+     */
+    public long getCommitTime(int position) {
+        int offset = dataOffset + position * DATA_LENGTH + ObjectId.LENGTH + 8;
+        long high = buffer.getInt(offset) & 0x3;
+        return (high << 32) | (buffer.getInt(offset + 4) & 0xffffffffL);
+    }
+}
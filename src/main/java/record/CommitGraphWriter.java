@@ -0,0 +1,211 @@
+package record;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Writes a {@link CommitGraph}.
+ *
+ * <p>Commits can be added in any order, but the parents of every commit must
+ * be added too, because the graph refers to parents by position.
+ */
+final class CommitGraphWriter {
+    private static final class Entry {
+        private final ObjectId id;
+        private final ObjectId tree;
+        private final ObjectId[] parents;
+        private final long commitTime;
+        private int position = -1;
+        private int generation = 0;
+
+        public Entry(ObjectId id, ObjectId tree, ObjectId[] parents, long commitTime) {
+            this.id = id;
+            this.tree = tree;
+            this.parents = parents;
+            this.commitTime = commitTime;
+        }
+    }
+
+    private final ObjectIdMap<Entry> entries = new ObjectIdMap<>();
+    private final List<Entry> list = new ArrayList<>();
+
+    /**
+     * Adds a commit, unless it was added before.
+     *
+     * @param commitTime The commit time, in seconds since the epoch.
+     */
+    public void add(ObjectId id, ObjectId tree, ObjectId[] parents, long commitTime) {
+        Entry entry = new Entry(id, tree, parents, commitTime);
+        if (entries.putIfAbsent(id, entry) == null) {
+            list.add(entry);
+        }
+    }
+
+    /**
+     * Adds all commits of an existing graph.
+     */
+    public void addAll(CommitGraph graph) {
+        for (int i = 0; i < graph.size(); ++i) {
+            ObjectId[] parents = new ObjectId[graph.getParentCount(i)];
+            for (int j = 0; j < parents.length; ++j) {
+                parents[j] = graph.getId(graph.getParent(i, j));
+            }
+            add(graph.getId(i), graph.getTree(i), parents, graph.getCommitTime(i));
+        }
+    }
+
+    public boolean contains(ObjectId id) {
+        return entries.containsKey(id);
+    }
+
+    public int size() {
+        return list.size();
+    }
+
+    private Entry getParent(ObjectId parent) {
+        Entry result = entries.get(parent);
+        if (result == null) {
+            throw new IllegalStateException("Parent " + parent + " is missing from the commit-graph.");
+        }
+        return result;
+    }
+
+    /**
+     * Assigns generations without recursion, since histories can be long.
+     */
+    private void computeGenerations() {
+        Deque<Entry> stack = new ArrayDeque<>();
+        for (Entry root : list) {
+            if (root.generation != 0) {
+                continue;
+            }
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Entry entry = stack.peek();
+                int generation = 0;
+                boolean ready = true;
+                for (ObjectId id : entry.parents) {
+                    Entry parent = getParent(id);
+                    if (parent.generation == 0) {
+                        stack.push(parent);
+                        ready = false;
+                    } else {
+                        generation = Math.max(generation, parent.generation);
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    entry.generation = Math.min(generation + 1, CommitGraph.MAX_GENERATION);
+                }
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 is broken!");
+        }
+    }
+
+    /**
+     * Writes the graph to the new file {@code path}.
+     *
+     * <p>The file isn't synced; callers write to a lock file and move it into
+     * place (see {@link LockFile}).
+     *
+     * @throws IllegalStateException If the parent of one of the commits is missing.
+     */
+    public void write(Path path) throws IOException {
+        list.sort((a, b) -> a.id.compareTo(b.id));
+        for (int i = 0; i < list.size(); ++i) {
+            list.get(i).position = i;
+        }
+        computeGenerations();
+        int edges = 0;
+        for (Entry entry : list) {
+            if (entry.parents.length > 2) {
+                edges += entry.parents.length - 1;
+            }
+        }
+        int chunks = edges == 0 ? 3 : 4;
+        long offset = 8 + 12 * (chunks + 1);
+        Files.createDirectories(path.getParent());
+        MessageDigest digest = newDigest();
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(path)), digest))) {
+            out.writeInt(CommitGraph.SIGNATURE);
+            out.writeByte(1);
+            out.writeByte(1);
+            out.writeByte(chunks);
+            out.writeByte(0);
+            out.writeInt(CommitGraph.FANOUT_CHUNK);
+            out.writeLong(offset);
+            offset += 256 * 4;
+            out.writeInt(CommitGraph.IDS_CHUNK);
+            out.writeLong(offset);
+            offset += (long) list.size() * ObjectId.LENGTH;
+            out.writeInt(CommitGraph.DATA_CHUNK);
+            out.writeLong(offset);
+            offset += (long) list.size() * CommitGraph.DATA_LENGTH;
+            if (edges > 0) {
+                out.writeInt(CommitGraph.EDGES_CHUNK);
+                out.writeLong(offset);
+                offset += 4L * edges;
+            }
+            out.writeInt(0);
+            out.writeLong(offset);
+            int[] fanout = new int[256];
+            for (Entry entry : list) {
+                ++fanout[entry.id.getFirstByte()];
+            }
+            int total = 0;
+            for (int count : fanout) {
+                total += count;
+                out.writeInt(total);
+            }
+            byte[] hash = new byte[ObjectId.LENGTH];
+            for (Entry entry : list) {
+                entry.id.copyTo(hash, 0);
+                out.write(hash);
+            }
+            int edge = 0;
+            for (Entry entry : list) {
+                entry.tree.copyTo(hash, 0);
+                out.write(hash);
+                ObjectId[] parents = entry.parents;
+                out.writeInt(parents.length > 0 ? getParent(parents[0]).position : CommitGraph.NO_PARENT);
+                if (parents.length > 2) {
+                    out.writeInt(CommitGraph.EDGE_FLAG | edge);
+                    edge += parents.length - 1;
+                } else {
+                    out.writeInt(parents.length > 1 ? getParent(parents[1]).position : CommitGraph.NO_PARENT);
+                }
+                out.writeInt((entry.generation << 2) | (int) ((entry.commitTime >>> 32) & 0x3));
+                out.writeInt((int) entry.commitTime);
+            }
+            for (Entry entry : list) {
+                ObjectId[] parents = entry.parents;
+                if (parents.length > 2) {
+                    for (int i = 1; i < parents.length; ++i) {
+                        int position = getParent(parents[i]).position;
+                        out.writeInt(i == parents.length - 1 ? CommitGraph.EDGE_FLAG | position : position);
+                    }
+                }
+            }
+            out.write(digest.digest());
+        }
+        Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("r--r--r--"));
+    }
+}
@@ -0,0 +1,254 @@
+package record;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A read-only view of a serialized {@link Commit}.
+ *
+ * <p>Like {@link TreeView}, this only records where the header lines are in
+ * the buffer. The committer's time is decoded up front, because it's what
+ * {@link RevisionWalker} orders commits by; parents, author and message are
+ * decoded when they're asked for.
+ *
+ * <p>This is the only parser of the commit format; {@link Commit#parse}
+ * decodes all fields of a view.
+ */
+final class CommitView {
+    private static final byte[] TREE = "tree ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PARENT = "parent ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AUTHOR = "author ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COMMITTER = "committer ".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] input;
+    private final int treeStart;
+    /**
+     * The offset of the first digit of each parent's hash.
+     */
+    private final int[] parentStarts;
+    private final int parentCount;
+    private final int authorStart;
+    private final int authorEnd;
+    private final int committerStart;
+    private final int committerEnd;
+    private final long commitTime;
+    private final int messageStart;
+
+    private CommitView(
+        byte[] input,
+        int treeStart,
+        int[] parentStarts,
+        int parentCount,
+        int authorStart,
+        int authorEnd,
+        int committerStart,
+        int committerEnd,
+        long commitTime,
+        int messageStart
+    ) {
+        this.input = input;
+        this.treeStart = treeStart;
+        this.parentStarts = parentStarts;
+        this.parentCount = parentCount;
+        this.authorStart = authorStart;
+        this.authorEnd = authorEnd;
+        this.committerStart = committerStart;
+        this.committerEnd = committerEnd;
+        this.commitTime = commitTime;
+        this.messageStart = messageStart;
+    }
+
+    private static boolean startsWith(byte[] input, int from, int to, byte[] prefix) {
+        return to - from >= prefix.length && Arrays.equals(input, from, from + prefix.length, prefix, 0, prefix.length);
+    }
+
+    /**
+     * Returns the offset of the hash on the line {@code input[from:to]},
+     * which starts with {@code prefix}.
+     *
+     * @throws FatalParseException If the rest of the line isn't a hash.
+     */
+    private static int hashStart(byte[] input, int from, int to, byte[] prefix) throws FatalParseException {
+        if (to - from != prefix.length + 2 * ObjectId.LENGTH) {
+            throw new FatalParseException("Invalid hash.");
+        }
+        return from + prefix.length;
+    }
+
+    /**
+     * Creates a view of a commit's content.
+     *
+     * <p>Headers that this class doesn't model (e.g., {@code gpgsig}) are
+     * skipped.
+     *
+     * @param input A byte array containing the commit's content; it is not
+     *              copied, so it must not be modified afterwards.
+     * @return The corresponding {@link CommitView}.
+     * @throws FatalParseException If {@code input} is not a valid commit.
+     */
+    public static CommitView parse(byte[] input) throws FatalParseException {
+        int i = FirstZero.in(input);
+        String header = new String(input, 0, i, StandardCharsets.UTF_8);
+        if (!header.startsWith("commit ")) {
+            throw new FatalParseException("Malformed header.");
+        }
+        // Move to the start of the body.
+        ++i;
+        if (Integer.parseInt(header.substring(7)) != input.length - i) {
+            throw new FatalParseException("Header contains incorrect length.");
+        }
+        int treeStart = -1;
+        int[] parentStarts = new int[1];
+        int parentCount = 0;
+        int authorStart = -1;
+        int authorEnd = -1;
+        int committerStart = -1;
+        int committerEnd = -1;
+        long commitTime = -1;
+        while (true) {
+            int j = ByteSearch.indexOf(input, i, (byte) '\n');
+            if (j == -1) {
+                throw new FatalParseException("Malformed body.");
+            }
+            if (j == i) {
+                // The empty line that separates the headers from the message.
+                ++i;
+                break;
+            }
+            if (startsWith(input, i, j, TREE)) {
+                treeStart = hashStart(input, i, j, TREE);
+            } else if (startsWith(input, i, j, PARENT)) {
+                if (parentCount == parentStarts.length) {
+                    parentStarts = Arrays.copyOf(parentStarts, 2 * parentCount);
+                }
+                parentStarts[parentCount++] = hashStart(input, i, j, PARENT);
+            } else if (startsWith(input, i, j, AUTHOR)) {
+                authorStart = i + AUTHOR.length;
+                authorEnd = j;
+            } else if (startsWith(input, i, j, COMMITTER)) {
+                committerStart = i + COMMITTER.length;
+                committerEnd = j;
+                commitTime = parseTime(input, committerStart, committerEnd);
+            }
+            i = j + 1;
+        }
+        if (treeStart == -1 || authorStart == -1 || commitTime == -1) {
+            throw new FatalParseException("Malformed body.");
+        }
+        return new CommitView(
+            input,
+            treeStart,
+            parentStarts,
+            parentCount,
+            authorStart,
+            authorEnd,
+            committerStart,
+            committerEnd,
+            commitTime,
+            i
+        );
+    }
+
+    /**
+     * Parses the seconds of a line of the form {@code "name <email> seconds offset"}.
+     */
+    private static long parseTime(byte[] input, int from, int to) throws FatalParseException {
+        int i = to;
+        while (i > from && input[i - 1] != '>') {
+            --i;
+        }
+        if (i == from || i == to || input[i] != ' ') {
+            throw new FatalParseException("Malformed user.");
+        }
+        ++i;
+        long result = 0;
+        int start = i;
+        for (; i < to && input[i] != ' '; ++i) {
+            int digit = input[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new FatalParseException("Malformed timestamp.");
+            }
+            result = 10 * result + digit;
+        }
+        if (i == start) {
+            throw new FatalParseException("Malformed timestamp.");
+        }
+        return result;
+    }
+
+    /**
+     * @return The tree's id.
+     * @throws FatalParseException If the tree's hash is malformed.
+     */
+    public ObjectId getTree() throws FatalParseException {
+        return ObjectId.parse(input, treeStart);
+    }
+
+    public int getParentCount() {
+        return parentCount;
+    }
+
+    /**
+     * @return The id of the parent at {@code index}.
+     * @throws FatalParseException If the parent's hash is malformed.
+     */
+    public ObjectId getParent(int index) throws FatalParseException {
+        if (index >= parentCount) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return ObjectId.parse(input, parentStarts[index]);
+    }
+
+    private static User parseUser(String line) throws FatalParseException {
+        return User.of(line.substring(0, line.lastIndexOf('>') + 1));
+    }
+
+    private static Timestamp parseTimestamp(String line) {
+        return Timestamp.of(line.substring(line.lastIndexOf('>') + 1).strip());
+    }
+
+    private String getLine(int start, int end) {
+        return new String(input, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The author, without the date.
+     * @throws FatalParseException If the author line is malformed.
+     */
+    public User getAuthor() throws FatalParseException {
+        return parseUser(getLine(authorStart, authorEnd));
+    }
+
+    /**
+     * @return When the content was created.
+     */
+    public Timestamp getAuthorDate() {
+        return parseTimestamp(getLine(authorStart, authorEnd));
+    }
+
+    /**
+     * @return The committer, without the date.
+     * @throws FatalParseException If the committer line is malformed.
+     */
+    public User getCommitter() throws FatalParseException {
+        return parseUser(getLine(committerStart, committerEnd));
+    }
+
+    /**
+     * @return When the commit was created, with its time zone.
+     */
+    public Timestamp getCommitterDate() {
+        return parseTimestamp(getLine(committerStart, committerEnd));
+    }
+
+    /**
+     * @return When the commit was created, in seconds since the epoch.
+     */
+    public long getCommitTime() {
+        return commitTime;
+    }
+
+    public String getMessage() {
+        return new String(input, messageStart, input.length - messageStart, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,123 @@
+package record;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Chooses the zlib level that an object is deflated at.
+ *
+ * <p>The level doesn't affect an object's id, only its size on disk and the
+ * time it takes to write; any level can be inflated by Git. Blobs that are
+ * already compressed (e.g., images and archives) don't shrink, so they're
+ * stored without compression. They're recognized by the extension of the
+ * file they come from, or by the entropy of their first few kilobytes:
+ * compressed data looks random, i.e., has close to eight bits of entropy per
+ * byte, whereas text and most binaries have far less. Small objects save
+ * little space either way, so they're deflated at a faster level.
+ */
+final class CompressionPolicy {
+    /**
+     * The default policy: {@link Deflater#DEFAULT_COMPRESSION} for everything,
+     * except {@link Deflater#BEST_SPEED} for objects of at most 4 KiB and no
+     * compression for compressed blobs.
+     */
+    static final CompressionPolicy DEFAULT = new CompressionPolicy(
+        Deflater.DEFAULT_COMPRESSION,
+        Deflater.DEFAULT_COMPRESSION,
+        Deflater.DEFAULT_COMPRESSION,
+        Deflater.BEST_SPEED,
+        4 << 10
+    );
+
+    /**
+     * How many bytes of a blob are looked at to estimate its entropy.
+     */
+    static final int SAMPLE_LENGTH = 4 << 10;
+
+    /**
+     * The entropy, in bits per byte, above which a sample counts as compressed.
+     */
+    private static final double COMPRESSED_ENTROPY = 7.5;
+
+    /**
+     * Extensions of file formats that are compressed already.
+     */
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+        "7z", "avif", "br", "bz2", "docx", "gif", "gz", "heic", "jar", "jpeg", "jpg", "m4a", "mkv", "mov", "mp3",
+        "mp4", "ogg", "png", "pptx", "tgz", "war", "webm", "webp", "woff", "woff2", "xlsx", "xz", "zip", "zst"
+    );
+
+    private final int blobLevel;
+    private final int treeLevel;
+    private final int commitLevel;
+    private final int smallLevel;
+    private final long smallThreshold;
+
+    /**
+     * @param smallLevel     The level for objects of at most
+     *                       {@code smallThreshold} bytes.
+     * @param smallThreshold The size up to which objects count as small.
+     */
+    public CompressionPolicy(int blobLevel, int treeLevel, int commitLevel, int smallLevel, long smallThreshold) {
+        this.blobLevel = blobLevel;
+        this.treeLevel = treeLevel;
+        this.commitLevel = commitLevel;
+        this.smallLevel = smallLevel;
+        this.smallThreshold = smallThreshold;
+    }
+
+    private static boolean hasCompressedExtension(String name) {
+        int i = name.lastIndexOf('.');
+        return i != -1 && COMPRESSED_EXTENSIONS.contains(name.substring(i + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the Shannon entropy of {@code data[offset:offset + length]}, in
+     * bits per byte.
+     */
+    static double entropy(byte[] data, int offset, int length) {
+        int[] counts = new int[256];
+        for (int i = offset; i < offset + length; ++i) {
+            ++counts[data[i] & 0xff];
+        }
+        double result = 0;
+        for (int count : counts) {
+            if (count != 0) {
+                double p = (double) count / length;
+                result -= p * Math.log(p);
+            }
+        }
+        return result / Math.log(2);
+    }
+
+    /**
+     * Returns the level to deflate an object at.
+     *
+     * @param type         The object's type (e.g., {@code "blob"}).
+     * @param name         The name of the file that the object comes from, or
+     *                     {@code null}.
+     * @param sample       An array that holds the start of the object's body.
+     * @param sampleOffset Where the body starts in {@code sample}.
+     * @param sampleLength How many bytes of the body {@code sample} holds; at
+     *                     most {@link #SAMPLE_LENGTH} bytes are looked at.
+     * @param length       The length of the object's body.
+     */
+    public int getLevel(String type, String name, byte[] sample, int sampleOffset, int sampleLength, long length) {
+        if (length <= smallThreshold) {
+            return smallLevel;
+        }
+        switch (type) {
+            case "tree":
+                return treeLevel;
+            case "commit":
+                return commitLevel;
+            default:
+                if (name != null && hasCompressedExtension(name)
+                    || entropy(sample, sampleOffset, Math.min(sampleLength, SAMPLE_LENGTH)) > COMPRESSED_ENTROPY) {
+                    return Deflater.NO_COMPRESSION;
+                }
+                return blobLevel;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package record;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Git's delta encoding, which describes an object in terms of another one.
+ *
+ * <p>A delta is of the form
+ * <pre><code>
+ * +-------------+---------------+---------------+-----+---------------+
+ * | base length | result length | instruction 1 | ... | instruction n |
+ * +-------------+---------------+---------------+-----+---------------+
+ * </code></pre>
+ * where both lengths are variable-length integers, and every instruction
+ * either copies a range of the base or inserts up to 127 literal bytes.
+ */
+final class Delta {
+    /**
+     * The length of the blocks of the base that are indexed.
+     */
+    private static final int BLOCK = 16;
+    private static final int MAX_COPY = 0x10000;
+    private static final int MAX_INSERT = 0x7f;
+    private static final int MULTIPLIER = 31;
+    /**
+     * {@code MULTIPLIER} to the power of {@code BLOCK - 1}.
+     */
+    private static final int LEADING_FACTOR;
+
+    static {
+        int factor = 1;
+        for (int i = 1; i < BLOCK; ++i) {
+            factor *= MULTIPLIER;
+        }
+        LEADING_FACTOR = factor;
+    }
+
+    private Delta() {
+        // No instantiation.
+    }
+
+    /**
+     * A base together with an index of its blocks, which can be reused for
+     * many targets.
+     */
+    static final class Base {
+        private final byte[] base;
+        private final int[] table;
+        private final int mask;
+
+        public Base(byte[] base) {
+            this.base = base;
+            int blocks = base.length / BLOCK;
+            int size = Integer.highestOneBit(Math.max(blocks, 1) * 2 - 1) << 1;
+            this.table = new int[size];
+            this.mask = size - 1;
+            for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+                // Positions are stored plus one, so that zero means empty.
+                table[hash(base, i) & mask] = i + 1;
+            }
+        }
+
+        private int candidate(int hash) {
+            return table[hash & mask] - 1;
+        }
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int result = 0;
+        for (int i = offset; i < offset + BLOCK; ++i) {
+            result = result * MULTIPLIER + data[i];
+        }
+        return result;
+    }
+
+    private static void writeLength(ByteArrayOutputStream output, long length) {
+        while (length >= 0x80) {
+            output.write((int) (length & 0x7f) | 0x80);
+            length >>>= 7;
+        }
+        output.write((int) length);
+    }
+
+    private static void writeInsert(ByteArrayOutputStream output, byte[] target, int from, int to) {
+        while (from < to) {
+            int length = Math.min(to - from, MAX_INSERT);
+            output.write(length);
+            output.write(target, from, length);
+            from += length;
+        }
+    }
+
+    private static void writeCopy(ByteArrayOutputStream output, int offset, int length) {
+        byte[] instruction = new byte[8];
+        while (length > 0) {
+            int chunk = Math.min(length, MAX_COPY);
+            int opcode = 0x80;
+            int n = 1;
+            for (int i = 0; i < 4; ++i) {
+                int b = (offset >>> (8 * i)) & 0xff;
+                if (b != 0) {
+                    opcode |= 1 << i;
+                    instruction[n++] = (byte) b;
+                }
+            }
+            // A length of 0x10000 is encoded as zero.
+            int encodedChunk = chunk == MAX_COPY ? 0 : chunk;
+            for (int i = 0; i < 3; ++i) {
+                int b = (encodedChunk >>> (8 * i)) & 0xff;
+                if (b != 0) {
+                    opcode |= 1 << (4 + i);
+                    instruction[n++] = (byte) b;
+                }
+            }
+            instruction[0] = (byte) opcode;
+            output.write(instruction, 0, n);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Computes a delta that turns {@code base} into {@code target}.
+     *
+     * @param limit The maximal length of the delta.
+     * @return The delta, or {@code null} if it would be longer than
+     *         {@code limit}.
+     */
+    public static byte[] encode(Base indexedBase, byte[] target, int limit) {
+        byte[] base = indexedBase.base;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writeLength(output, base.length);
+        writeLength(output, target.length);
+        int pending = 0;
+        int i = 0;
+        int hash = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            int j = indexedBase.candidate(hash);
+            int length = 0;
+            if (j != -1) {
+                while (j + length < base.length && i + length < target.length && base[j + length] == target[i + length]) {
+                    ++length;
+                }
+            }
+            if (length >= BLOCK) {
+                // Extend the match backwards into the pending insertion.
+                while (i > pending && j > 0 && base[j - 1] == target[i - 1]) {
+                    --i;
+                    --j;
+                    ++length;
+                }
+                writeInsert(output, target, pending, i);
+                writeCopy(output, j, length);
+                i += length;
+                pending = i;
+                if (i + BLOCK <= target.length) {
+                    hash = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    hash = (hash - target[i] * LEADING_FACTOR) * MULTIPLIER + target[i + BLOCK];
+                }
+                ++i;
+            }
+            if (output.size() > limit) {
+                return null;
+            }
+        }
+        writeInsert(output, target, pending, target.length);
+        return output.size() > limit ? null : output.toByteArray();
+    }
+
+    /**
+     * Computes a delta that turns {@code base} into {@code target}.
+     */
+    public static byte[] encode(byte[] base, byte[] target) {
+        return encode(new Base(base), target, Integer.MAX_VALUE);
+    }
+
+    private static final class Reader {
+        private final byte[] delta;
+        private int position = 0;
+
+        public Reader(byte[] delta) {
+            this.delta = delta;
+        }
+
+        public int next() {
+            if (position == delta.length) {
+                throw new FatalParseException("Truncated delta.");
+            }
+            return delta[position++] & 0xff;
+        }
+
+        public long readLength() {
+            long result = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = next();
+                result |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return result;
+        }
+
+        public boolean hasNext() {
+            return position < delta.length;
+        }
+    }
+
+    /**
+     * Applies a delta to {@code base}.
+     *
+     * @return The object described by the delta.
+     * @throws FatalParseException If {@code delta} is malformed or doesn't
+     *                             belong to {@code base}.
+     */
+    public static byte[] apply(byte[] base, byte[] delta) throws FatalParseException {
+        Reader reader = new Reader(delta);
+        if (reader.readLength() != base.length) {
+            throw new FatalParseException("Delta has incorrect base length.");
+        }
+        byte[] result = new byte[Math.toIntExact(reader.readLength())];
+        int position = 0;
+        while (reader.hasNext()) {
+            int opcode = reader.next();
+            if ((opcode & 0x80) != 0) {
+                int offset = 0;
+                for (int i = 0; i < 4; ++i) {
+                    if ((opcode & (1 << i)) != 0) {
+                        offset |= reader.next() << (8 * i);
+                    }
+                }
+                int length = 0;
+                for (int i = 0; i < 3; ++i) {
+                    if ((opcode & (1 << (4 + i))) != 0) {
+                        length |= reader.next() << (8 * i);
+                    }
+                }
+                if (length == 0) {
+                    length = MAX_COPY;
+                }
+                if (offset < 0 || offset + length > base.length || position + length > result.length) {
+                    throw new FatalParseException("Delta copies out of bounds.");
+                }
+                System.arraycopy(base, offset, result, position, length);
+                position += length;
+            } else if (opcode != 0) {
+                if (position + opcode > result.length) {
+                    throw new FatalParseException("Delta inserts out of bounds.");
+                }
+                for (int i = 0; i < opcode; ++i) {
+                    result[position++] = (byte) reader.next();
+                }
+            } else {
+                throw new FatalParseException("Reserved delta instruction.");
+            }
+        }
+        if (position != result.length) {
+            throw new FatalParseException("Delta has incorrect result length.");
+        }
+        return result;
+    }
+}
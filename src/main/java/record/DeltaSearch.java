@@ -0,0 +1,182 @@
+package record;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Chooses which objects of a pack are stored as {@link Delta}s, the way Git's
+ * {@code pack-objects} does.
+ *
+ * <p>The objects are sorted by type, by a hash of their name and by descending
+ * length, so that similar objects (e.g., versions of the same file) end up
+ * next to each other. Every object is then compared against the previous
+ * {@link #WINDOW} objects of the same type, and stored as a delta against the
+ * one that yields the smallest delta, as long as that delta is considerably
+ * smaller than the object and the chain of deltas doesn't get too long.
+ */
+final class DeltaSearch {
+    static final int WINDOW = 10;
+    static final int MAX_DEPTH = 50;
+    /**
+     * Objects larger than this many bytes are always stored as a whole.
+     */
+    static final long MAX_LENGTH = 16 << 20;
+
+    private DeltaSearch() {
+        // No instantiation.
+    }
+
+    /**
+     * Reads the body of an object.
+     */
+    interface Source {
+        byte[] readBody(ObjectId id) throws IOException;
+    }
+
+    /**
+     * An object that is going to be packed.
+     */
+    static final class Candidate {
+        private final ObjectId id;
+        private final String type;
+        private final int nameHash;
+        private final long length;
+
+        /**
+         * @param id     The object's id.
+         * @param type   The object's type.
+         * @param name   The name under which the object was found, e.g.,
+         *               the name of a {@link TreeNode}.
+         * @param length The length of the object's body.
+         */
+        public Candidate(ObjectId id, String type, String name, long length) {
+            this.id = id;
+            this.type = type;
+            this.nameHash = getNameHash(name);
+            this.length = length;
+        }
+
+        public ObjectId getId() {
+            return id;
+        }
+    }
+
+    /**
+     * A delta against another object.
+     */
+    static final class Result {
+        private final ObjectId base;
+        private final byte[] delta;
+
+        public Result(ObjectId base, byte[] delta) {
+            this.base = base;
+            this.delta = delta;
+        }
+
+        /**
+         * @return The base's id.
+         */
+        public ObjectId getBase() {
+            return base;
+        }
+
+        public byte[] getDelta() {
+            return delta;
+        }
+    }
+
+    private static final class WindowEntry {
+        private final Candidate candidate;
+        private final byte[] body;
+        private final int depth;
+        private Delta.Base base = null;
+
+        public WindowEntry(Candidate candidate, byte[] body, int depth) {
+            this.candidate = candidate;
+            this.body = body;
+            this.depth = depth;
+        }
+
+        public Delta.Base getBase() {
+            if (base == null) {
+                base = new Delta.Base(body);
+            }
+            return base;
+        }
+    }
+
+    /**
+     * Hashes a name such that names with a common suffix are sorted next to
+     * each other, as in Git.
+     */
+    static int getNameHash(String name) {
+        int result = 0;
+        for (int i = 0; i < name.length(); ++i) {
+            char c = name.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                result = (result >>> 2) + (c << 24);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Chooses the deltas.
+     *
+     * @return A map from the ids of the objects that should be stored as
+     *         deltas to their deltas. Bases always precede their deltas in the
+     *         sorted order, so there are no cycles.
+     */
+    public static ObjectIdMap<Result> search(List<Candidate> candidates, Source source) throws IOException {
+        List<Candidate> sorted = new ArrayList<>(candidates);
+        sorted.sort(
+            Comparator.<Candidate, String>comparing(candidate -> candidate.type)
+                .thenComparing((x, y) -> Integer.compareUnsigned(x.nameHash, y.nameHash))
+                .thenComparing(Comparator.<Candidate>comparingLong(candidate -> candidate.length).reversed())
+        );
+        ObjectIdMap<Result> result = new ObjectIdMap<>(candidates.size());
+        Deque<WindowEntry> window = new ArrayDeque<>();
+        for (Candidate candidate : sorted) {
+            if (candidate.length > MAX_LENGTH) {
+                continue;
+            }
+            if (!window.isEmpty() && !window.peekLast().candidate.type.equals(candidate.type)) {
+                window.clear();
+            }
+            byte[] body = source.readBody(candidate.id);
+            WindowEntry best = null;
+            byte[] bestDelta = null;
+            for (Iterator<WindowEntry> iterator = window.descendingIterator(); iterator.hasNext(); ) {
+                WindowEntry entry = iterator.next();
+                int limit = bestDelta == null ? body.length / 2 - 20 : bestDelta.length - 1;
+                if (limit <= 0) {
+                    break;
+                }
+                // The delta has to insert at least the bytes that the base lacks.
+                if (entry.depth >= MAX_DEPTH || body.length - entry.body.length >= limit) {
+                    continue;
+                }
+                byte[] delta = Delta.encode(entry.getBase(), body, limit);
+                if (delta != null) {
+                    best = entry;
+                    bestDelta = delta;
+                }
+            }
+            int depth = 0;
+            if (best != null) {
+                result.put(candidate.id, new Result(best.candidate.id, bestDelta));
+                depth = best.depth + 1;
+            }
+            window.addLast(new WindowEntry(candidate, body, depth));
+            if (window.size() > WINDOW) {
+                window.removeFirst();
+            }
+        }
+        return result;
+    }
+}
@@ -5,13 +5,17 @@ package record;
  */
 public final class Directory implements TreeNode {
     private final String name;
-    private final byte[] tree;
+    private final ObjectId tree;
 
-    public Directory(String name, byte[] tree) {
+    public Directory(String name, ObjectId tree) {
         this.name = name;
         this.tree = tree;
     }
 
+    public Directory(String name, byte[] tree) {
+        this(name, ObjectId.fromBytes(tree));
+    }
+
     @Override
     public TreeNodeType getType() {
         return TreeNodeType.DIRECTORY;
@@ -23,7 +27,7 @@ public final class Directory implements TreeNode {
     }
 
     @Override
-    public byte[] getObjectHash() {
+    public ObjectId getObjectId() {
         return tree;
     }
 
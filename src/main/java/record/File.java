@@ -6,14 +6,18 @@ package record;
 public final class File implements TreeNode {
     private final String name;
     private final boolean executable;
-    private final byte[] blob;
+    private final ObjectId blob;
 
-    public File(String name, boolean executable, byte[] blob) {
+    public File(String name, boolean executable, ObjectId blob) {
         this.name = name;
         this.executable = executable;
         this.blob = blob;
     }
 
+    public File(String name, boolean executable, byte[] blob) {
+        this(name, executable, ObjectId.fromBytes(blob));
+    }
+
     public boolean isExecutable() {
         return executable;
     }
@@ -29,7 +33,7 @@ public final class File implements TreeNode {
     }
 
     @Override
-    public byte[] getObjectHash() {
+    public ObjectId getObjectId() {
         return blob;
     }
 
@@ -17,12 +17,11 @@ final class FirstZero {
      * @throws FatalParseException If no such byte exists.
      */
     public static int in(byte[] input, int offset) throws FatalParseException {
-        for (int i = offset; i < input.length; ++i) {
-            if (input[i] == 0) {
-                return i;
-            }
+        int i = ByteSearch.indexOf(input, offset, (byte) 0);
+        if (i == -1) {
+            throw new FatalParseException("No zero!");
         }
-        throw new FatalParseException("No zero!");
+        return i;
     }
 
     /**
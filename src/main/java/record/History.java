@@ -0,0 +1,195 @@
+package record;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.PriorityQueue;
+
+/**
+ * Looks up commits for history walks, and answers ancestry queries.
+ *
+ * <p>Commits are looked up in the {@link CommitGraph} first, which needs
+ * neither inflating nor parsing; only commits that aren't in the graph (yet)
+ * are read from the object store. Commits in the graph have a generation,
+ * which lets ancestry queries skip everything that can't be a descendant of
+ * the commit they're looking for.
+ */
+final class History {
+    /**
+     * The generation of commits that aren't in the commit-graph.
+     */
+    static final int INFINITY = Integer.MAX_VALUE;
+
+    /**
+     * Where commits that aren't in the commit-graph are read from.
+     */
+    interface Source {
+        /**
+         * Returns the inflated content of the commit {@code id}.
+         */
+        byte[] read(ObjectId id) throws IOException;
+    }
+
+    /**
+     * The parts of a commit that history walks need.
+     */
+    static final class Node {
+        private final ObjectId id;
+        private final ObjectId tree;
+        private final long commitTime;
+        private final int generation;
+        private final ObjectId[] parents;
+        /**
+         * The parsed commit if it had to be read, and {@code null} otherwise.
+         */
+        private final CommitView commit;
+
+        private Node(ObjectId id, ObjectId tree, long commitTime, int generation, ObjectId[] parents, CommitView commit) {
+            this.id = id;
+            this.tree = tree;
+            this.commitTime = commitTime;
+            this.generation = generation;
+            this.parents = parents;
+            this.commit = commit;
+        }
+
+        public ObjectId getId() {
+            return id;
+        }
+
+        public ObjectId getTree() {
+            return tree;
+        }
+
+        public long getCommitTime() {
+            return commitTime;
+        }
+
+        /**
+         * @return The commit's generation, or {@link #INFINITY} if it's not in the commit-graph.
+         */
+        public int getGeneration() {
+            return generation;
+        }
+
+        public ObjectId[] getParents() {
+            return parents;
+        }
+    }
+
+    private final Source source;
+    private final CommitGraph graph;
+
+    /**
+     * @param graph The commit-graph, or {@code null} if there is none.
+     */
+    public History(Source source, CommitGraph graph) {
+        this.source = source;
+        this.graph = graph;
+    }
+
+    public Node lookup(ObjectId id) throws IOException {
+        int position = graph == null ? -1 : graph.find(id);
+        if (position != -1) {
+            ObjectId[] parents = new ObjectId[graph.getParentCount(position)];
+            for (int i = 0; i < parents.length; ++i) {
+                parents[i] = graph.getId(graph.getParent(position, i));
+            }
+            return new Node(id, graph.getTree(position), graph.getCommitTime(position), graph.getGeneration(position), parents, null);
+        }
+        CommitView commit = CommitView.parse(source.read(id));
+        ObjectId[] parents = new ObjectId[commit.getParentCount()];
+        for (int i = 0; i < parents.length; ++i) {
+            parents[i] = commit.getParent(i);
+        }
+        return new Node(id, commit.getTree(), commit.getCommitTime(), INFINITY, parents, commit);
+    }
+
+    /**
+     * Returns the full commit of {@code node}, reading it if necessary.
+     */
+    public CommitView read(Node node) throws IOException {
+        return node.commit != null ? node.commit : CommitView.parse(source.read(node.id));
+    }
+
+    /**
+     * Returns whether {@code node} can't be {@code target} or one of its descendants.
+     */
+    private static boolean isBelow(Node node, Node target) {
+        // Graph commits never have ancestors outside the graph, and a
+        // descendant's generation is larger than its ancestors'.
+        return node.generation < target.generation
+            || node.generation == target.generation && node.generation != INFINITY && !node.id.equals(target.id);
+    }
+
+    /**
+     * Returns whether {@code ancestor} is {@code descendant} or one of its ancestors.
+     */
+    public boolean isAncestor(ObjectId ancestor, ObjectId descendant) throws IOException {
+        Node target = lookup(ancestor);
+        ObjectIdMap<Boolean> seen = new ObjectIdMap<>();
+        Deque<ObjectId> pending = new ArrayDeque<>();
+        pending.push(descendant);
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.pop();
+            if (id.equals(ancestor)) {
+                return true;
+            }
+            if (seen.put(id, true) != null) {
+                continue;
+            }
+            Node node = lookup(id);
+            if (isBelow(node, target)) {
+                continue;
+            }
+            for (ObjectId parent : node.parents) {
+                pending.push(parent);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds a best common ancestor of {@code a} and {@code b}, i.e., a common
+     * ancestor that isn't an ancestor of another common ancestor.
+     *
+     * <p>Commits are visited in order of decreasing generation, so that a
+     * commit is only visited after all of its descendants; the first commit
+     * that is reachable from both sides is then a best common ancestor.
+     * Commits that aren't in the commit-graph come first, newest first, like
+     * in a walk without a commit-graph.
+     *
+     * @return The common ancestor, or {@code null} if there is none.
+     */
+    public ObjectId findMergeBase(ObjectId a, ObjectId b) throws IOException {
+        if (a.equals(b)) {
+            return a;
+        }
+        // Which of a and b reach each commit, as bits 1 and 2.
+        ObjectIdMap<Integer> flags = new ObjectIdMap<>();
+        PriorityQueue<Node> queue = new PriorityQueue<>((x, y) -> {
+            int result = Integer.compare(y.generation, x.generation);
+            return result != 0 ? result : Long.compare(y.commitTime, x.commitTime);
+        });
+        flags.put(a, 1);
+        flags.put(b, 2);
+        queue.add(lookup(a));
+        queue.add(lookup(b));
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            int flag = flags.get(node.id);
+            if (flag == 3) {
+                return node.id;
+            }
+            for (ObjectId parent : node.parents) {
+                Integer previous = flags.get(parent);
+                int next = previous == null ? flag : previous | flag;
+                if (previous == null || next != previous) {
+                    flags.put(parent, next);
+                    queue.add(lookup(parent));
+                }
+            }
+        }
+        return null;
+    }
+}
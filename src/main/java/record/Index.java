@@ -0,0 +1,253 @@
+package record;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stat cache for the working directory.
+ *
+ * <p>The index maps paths (relative to the working directory) to the
+ * {@link Stat} of the file or directory at the time it was last frozen,
+ * together with the id of the resulting {@link Blob} or {@link Tree}. If a
+ * path's current {@link Stat} agrees with the cached one, the cached id can
+ * be reused without reading the file.
+ *
+ * <p>It is serialized according to the following schema:
+ * <pre><code>
+ * +-------+---------+-------+---------+-----+---------+
+ * | magic | version | count | entry 1 | ... | entry n |
+ * +-------+---------+-------+---------+-----+---------+
+ * </code></pre>
+ * where each entry consists of the path, the {@link Stat} fields and the id.
+ *
+ * <p>Note that this is not Git's index format; it lives in its own file so
+ * that Git itself is not confused by it. Instances are safe to use from
+ * multiple threads.
+ */
+final class Index {
+    private static final int MAGIC = 0x52494458;
+    private static final int VERSION = 1;
+
+    private final ConcurrentSkipListMap<String, Entry> entries;
+    private final long timestamp;
+
+    private Index(ConcurrentSkipListMap<String, Entry> entries, long timestamp) {
+        this.entries = entries;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Creates an empty index.
+     */
+    public Index() {
+        this(new ConcurrentSkipListMap<>(), Long.MAX_VALUE);
+    }
+
+    /**
+     * The stat data that is used to detect changes to a path.
+     */
+    public static final class Stat {
+        private final long size;
+        private final long modified;
+        private final long inode;
+        private final int mode;
+
+        public Stat(long size, long modified, long inode, int mode) {
+            this.size = size;
+            this.modified = modified;
+            this.inode = inode;
+            this.mode = mode;
+        }
+
+        /**
+         * Reads the stat data of {@code path}, without following symbolic links.
+         */
+        public static Stat of(Path path) throws IOException {
+            Map<String, Object> attributes =
+                Files.readAttributes(path, "unix:size,lastModifiedTime,ino,mode", LinkOption.NOFOLLOW_LINKS);
+            return new Stat(
+                (Long) attributes.get("size"),
+                ((FileTime) attributes.get("lastModifiedTime")).to(TimeUnit.NANOSECONDS),
+                (Long) attributes.get("ino"),
+                (Integer) attributes.get("mode")
+            );
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+
+        public int getMode() {
+            return mode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Stat)) {
+                return false;
+            }
+            Stat other = (Stat) o;
+            return other.size == size && other.modified == modified && other.inode == inode && other.mode == mode;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, modified, inode, mode);
+        }
+    }
+
+    /**
+     * A cached {@link Stat} together with the id of the corresponding object.
+     */
+    public static final class Entry {
+        private final Stat stat;
+        private final ObjectId id;
+
+        public Entry(Stat stat, ObjectId id) {
+            this.stat = stat;
+            this.id = id;
+        }
+
+        public Stat getStat() {
+            return stat;
+        }
+
+        public ObjectId getId() {
+            return id;
+        }
+    }
+
+    /**
+     * Reads the index from {@code file}.
+     *
+     * <p>A missing, unreadable or corrupt file yields an empty index, because
+     * the index is only a cache: everything is hashed again, and the next
+     * commit writes a good index.
+     */
+    public static Index read(Path file) {
+        long timestamp;
+        try {
+            timestamp = Files.getLastModifiedTime(file).to(TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            return new Index();
+        }
+        ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (stream.readInt() != MAGIC || stream.readInt() != VERSION) {
+                return new Index();
+            }
+            int count = stream.readInt();
+            for (int i = 0; i < count; ++i) {
+                String path = stream.readUTF();
+                Stat stat = new Stat(stream.readLong(), stream.readLong(), stream.readLong(), stream.readInt());
+                byte[] id = new byte[ObjectId.LENGTH];
+                stream.readFully(id);
+                entries.put(path, new Entry(stat, ObjectId.fromBytes(id)));
+            }
+        } catch (IOException e) {
+            // E.g., truncated, or with a path that isn't modified UTF-8.
+            return new Index();
+        }
+        return new Index(entries, timestamp);
+    }
+
+    /**
+     * Writes the index to {@code file}.
+     *
+     * <p>The index is first written to a temporary file of its own, which is
+     * then moved into place; this way, readers never observe a partially
+     * written index, and concurrent writers don't interfere: the last one
+     * wins, and each one writes a complete index.
+     */
+    public void write(Path file) throws IOException {
+        Path temporary = Files.createTempFile(file.getParent(), "tmp_index_", null);
+        try {
+            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                stream.writeInt(MAGIC);
+                stream.writeInt(VERSION);
+                stream.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    Stat stat = entry.getValue().getStat();
+                    stream.writeUTF(entry.getKey());
+                    stream.writeLong(stat.size);
+                    stream.writeLong(stat.modified);
+                    stream.writeLong(stat.inode);
+                    stream.writeInt(stat.mode);
+                    stream.write(entry.getValue().getId().toBytes());
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Returns the entry for {@code path}, or {@code null} if there is none.
+     */
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Returns the cached id of {@code path} if its stat data is unchanged.
+     *
+     * <p>Entries that were modified no earlier than the index itself are
+     * considered racy: the path may have changed again within the timestamp
+     * granularity, so they are never trusted.
+     *
+     * @return The cached id, or {@code null} if {@code path} has to be hashed.
+     */
+    public ObjectId lookup(String path, Stat stat) {
+        Entry entry = entries.get(path);
+        if (entry == null || !entry.getStat().equals(stat) || stat.getModified() >= timestamp) {
+            return null;
+        }
+        return entry.getId();
+    }
+
+    public void put(String path, Stat stat, ObjectId id) {
+        entries.put(path, new Entry(stat, id));
+    }
+
+    /**
+     * Copies the entries of the paths below {@code path} from {@code other}.
+     *
+     * @param path A directory, relative to the working directory; the empty
+     *             string stands for the working directory itself.
+     */
+    public void putAllBelow(Index other, String path) {
+        if (path.isEmpty()) {
+            entries.putAll(other.entries);
+        } else {
+            // Paths below `path` are exactly the ones from "path/" up to "path0".
+            entries.putAll(other.entries.subMap(path + "/", path + "0"));
+        }
+    }
+
+    /**
+     * Returns whether {@code entry} records the same object and mode as {@code id} and {@code stat}.
+     */
+    public static boolean sameObject(Entry entry, Stat stat, ObjectId id) {
+        return entry != null && entry.getStat().getMode() == stat.getMode() && entry.getId().equals(id);
+    }
+}
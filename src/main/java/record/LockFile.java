@@ -0,0 +1,107 @@
+package record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Git lock file, i.e., {@code <file>.lock}.
+ *
+ * <p>A file is locked by creating its lock file exclusively (like
+ * {@code O_EXCL}), so at most one process or thread holds the lock at a time;
+ * Git honors the same locks. The new content of the file is written to the
+ * lock file, which is then synced and moved over the file. A lock that isn't
+ * {@link #commit committed} is released by {@link #close()}, leaving the file
+ * as it was.
+ */
+final class LockFile implements Closeable {
+    static final String SUFFIX = ".lock";
+    /**
+     * How long to wait for a lock, in milliseconds.
+     */
+    private static final long TIMEOUT = 1000;
+    /**
+     * The longest pause between attempts to take a lock, in milliseconds.
+     */
+    private static final long MAX_BACKOFF = 64;
+
+    private final Path path;
+    private final Path lock;
+    private boolean committed = false;
+
+    private LockFile(Path path, Path lock) {
+        this.path = path;
+        this.lock = lock;
+    }
+
+    /**
+     * Locks {@code path}.
+     *
+     * <p>If another process holds the lock, it's retried with jittered
+     * exponential backoff, since locks are only held for as long as it takes
+     * to write and sync one file.
+     *
+     * @throws FileAlreadyExistsException If the lock is still held after
+     *                                    {@link #TIMEOUT} milliseconds.
+     */
+    public static LockFile acquire(Path path) throws IOException {
+        Path lock = path.resolveSibling(path.getFileName() + SUFFIX);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+        long backoff = 1;
+        while (true) {
+            try {
+                return new LockFile(path, Files.createFile(lock));
+            } catch (FileAlreadyExistsException e) {
+                if (System.nanoTime() >= deadline) {
+                    throw new FileAlreadyExistsException(
+                        lock.toString(),
+                        null,
+                        "another update is in progress, or the file was left behind by one that crashed"
+                    );
+                }
+            }
+            try {
+                Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + lock + ".");
+            }
+            backoff = Math.min(2 * backoff, MAX_BACKOFF);
+        }
+    }
+
+    /**
+     * Returns the lock file, which the new content is written to.
+     */
+    public Path getPath() {
+        return lock;
+    }
+
+    /**
+     * Makes the content of the lock file durable and moves it over the file,
+     * which releases the lock.
+     */
+    public void commit() throws IOException {
+        ObjectBatch.sync(lock);
+        Files.move(lock, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        committed = true;
+        ObjectBatch.sync(path.getParent());
+    }
+
+    /**
+     * Releases the lock, unless it was committed.
+     */
+    @Override
+    public void close() throws IOException {
+        // Once committed, the name may already belong to the next lock.
+        if (!committed) {
+            Files.deleteIfExists(lock);
+        }
+    }
+}
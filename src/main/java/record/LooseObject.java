@@ -1,5 +1,7 @@
 package record;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -31,25 +33,66 @@ public interface LooseObject {
      */
     byte[] getBody();
 
+    /**
+     * Serialize the object's body into {@code buffer}.
+     *
+     * <p>Objects whose body isn't held in memory anyway should override this,
+     * so that they're serialized without intermediate arrays.
+     */
+    default void writeBody(ObjectBuffer buffer) {
+        buffer.write(getBody());
+    }
+
+    /**
+     * Get the header of a loose object's content.
+     *
+     * @param type   A string representing the object's type.
+     * @param length The length of the object's body.
+     * @return A byte array containing the header, including the trailing
+     *         {@code NUL}.
+     */
+    static byte[] getHeader(String type, long length) {
+        return (type + ' ' + length + '\0').getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the header of a loose object's content.
+     *
+     * @param input A stream of the object's content; afterwards, it is
+     *              positioned at the start of the body.
+     * @return The header without the trailing {@code NUL}, e.g.,
+     *         {@code "blob 2"}.
+     * @throws FatalParseException If the header is malformed.
+     */
+    static String readHeader(InputStream input) throws IOException {
+        byte[] buffer = new byte[32];
+        int i = 0;
+        for (int b = input.read(); b != 0; b = input.read()) {
+            if (b == -1 || i == buffer.length) {
+                throw new FatalParseException("Malformed header.");
+            }
+            buffer[i++] = (byte) b;
+        }
+        return new String(buffer, 0, i, StandardCharsets.UTF_8);
+    }
+
     /**
      * Get the object's uncompressed content.
      *
      * @return A byte array containing the object's content.
      */
     default byte[] getBytes() {
-        byte[] body = getBody();
-        byte[] header = String
-            .format("%s %d\0", getType(), body.length)
-            .getBytes(StandardCharsets.UTF_8);
-        byte[] result = new byte[header.length + body.length];
-        System.arraycopy(header, 0, result, 0, header.length);
-        System.arraycopy(body, 0, result, header.length, body.length);
-        return result;
+        ObjectBuffer buffer = new ObjectBuffer();
+        buffer.writeObject(this);
+        return buffer.copyContent();
     }
 
     /**
      * Get the object's hash.
      *
+     * <p>The object is serialized into a buffer of its own, not into
+     * {@link ObjectBuffer#get()}, whose content a caller may still be using.
+     *
      * @return A byte array containing the SHA-1 digest of the object's content.
      */
     default byte[] getHash() {
@@ -59,6 +102,18 @@ public interface LooseObject {
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("SHA-1 is broken!");
         }
-        return md.digest(getBytes());
+        ObjectBuffer buffer = new ObjectBuffer();
+        buffer.writeObject(this);
+        md.update(buffer.getArray(), buffer.getStart(), buffer.getEnd() - buffer.getStart());
+        return md.digest();
+    }
+
+    /**
+     * Get the object's id.
+     *
+     * @return The {@link ObjectId} corresponding to {@link #getHash()}.
+     */
+    default ObjectId getId() {
+        return ObjectId.fromBytes(getHash());
     }
 }
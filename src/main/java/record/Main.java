@@ -1,6 +1,10 @@
 package record;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -9,8 +13,15 @@ public class Main {
         System.err.print("Usage:");
         System.err.println("\trecord init");
         System.err.println("\trecord commit -m <message>");
+        System.err.println("\trecord branch [--list]");
         System.err.println("\trecord branch <branch>");
         System.err.println("\trecord checkout <branch or commit>");
+        System.err.println("\trecord log [-n <number>] [<branch or commit>]");
+        System.err.println("\trecord diff <branch or commit> <branch or commit> [--name-status]");
+        System.err.println("\trecord merge-base [--is-ancestor] <branch or commit> <branch or commit>");
+        System.err.println("\trecord repack");
+        System.err.println("\trecord gc");
+        System.err.println("\trecord watch");
         System.exit(-1);
     }
 
@@ -29,6 +40,51 @@ public class Main {
         throw new RuntimeException("No .git repository found.");
     }
 
+    /**
+     * Opens the repository in {@code directory}, configured from the environment.
+     */
+    private static Repository open(Path directory) {
+        Repository repository = new Repository(directory);
+        String workers = System.getenv("RECORD_WORKERS");
+        if (workers != null) {
+            repository.setFreezeWorkers(Integer.parseInt(workers));
+            repository.setThawWorkers(Integer.parseInt(workers));
+        }
+        return repository;
+    }
+
+    /**
+     * Runs {@code record log [-n <number>] [<branch or commit>]}.
+     */
+    private static void log(Path directory, String... args) throws IOException {
+        long limit = Long.MAX_VALUE;
+        String name = "HEAD";
+        int i = 1;
+        if (i + 1 < args.length && args[i].equals("-n")) {
+            limit = Long.parseLong(args[i + 1]);
+            i += 2;
+        }
+        if (i < args.length) {
+            name = args[i++];
+        }
+        if (i < args.length) {
+            usage();
+        }
+        // Buffer the output, but keep it streaming: it's flushed whenever the buffer is full.
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        open(directory).log(name, limit, out);
+        out.flush();
+    }
+
+    /**
+     * Runs {@code record diff <from> <to> [--name-status]}.
+     */
+    private static void diff(Path directory, String from, String to, boolean nameStatus) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        open(directory).diff(from, to, nameStatus, out);
+        out.flush();
+    }
+
     public static void main(String... args) throws IOException {
         Path directory = Path.of(".").toRealPath();
         if (args.length == 1 && args[0].equals("init")) {
@@ -39,11 +95,37 @@ public class Main {
             if (name == null || email == null) {
                 throw new RuntimeException("Need GIT_COMMITTER_NAME and GIT_COMMITTER_EMAIL set.");
             }
-            new Repository(findWorkingDirectory(directory)).commit(new User(name, email), Timestamp.now(), args[2]);
+            open(findWorkingDirectory(directory)).commit(new User(name, email), Timestamp.now(), args[2]);
+        } else if (args.length >= 1 && args[0].equals("branch") && (args.length == 1 || args[1].equals("--list"))) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            open(findWorkingDirectory(directory)).listBranches(out);
+            out.flush();
         } else if (args.length == 2 && args[0].equals("branch")) {
-            new Repository(findWorkingDirectory(directory)).branch(args[1]);
+            open(findWorkingDirectory(directory)).branch(args[1]);
         } else if (args.length == 2 && args[0].equals("checkout")) {
-            new Repository(findWorkingDirectory(directory)).checkout(args[1]);
+            open(findWorkingDirectory(directory)).checkout(args[1]);
+        } else if (args.length >= 1 && args[0].equals("log")) {
+            log(findWorkingDirectory(directory), args);
+        } else if (args.length == 3 && args[0].equals("diff")) {
+            diff(findWorkingDirectory(directory), args[1], args[2], false);
+        } else if (args.length == 4 && args[0].equals("diff") && args[3].equals("--name-status")) {
+            diff(findWorkingDirectory(directory), args[1], args[2], true);
+        } else if (args.length == 3 && args[0].equals("merge-base")) {
+            ObjectId base = open(findWorkingDirectory(directory)).mergeBase(args[1], args[2]);
+            if (base == null) {
+                System.exit(1);
+            }
+            System.out.println(base);
+        } else if (args.length == 4 && args[0].equals("merge-base") && args[1].equals("--is-ancestor")) {
+            System.exit(open(findWorkingDirectory(directory)).isAncestor(args[2], args[3]) ? 0 : 1);
+        } else if (args.length == 1 && args[0].equals("repack")) {
+            open(findWorkingDirectory(directory)).repack();
+        } else if (args.length == 1 && args[0].equals("gc")) {
+            open(findWorkingDirectory(directory)).gc();
+        } else if (args.length == 1 && args[0].equals("watch")) {
+            try (Watcher watcher = new Watcher(findWorkingDirectory(directory))) {
+                watcher.run();
+            }
         } else {
             usage();
         }
@@ -0,0 +1,184 @@
+package record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Collects the objects written during one operation, so that they can be made
+ * durable together.
+ *
+ * <p>Syncing every object as it is written would make a commit of many small
+ * files dramatically slower, and not syncing at all means that a crash can
+ * leave objects behind that are empty or truncated, but already referenced.
+ * Instead, {@link ObjectWriter} leaves the objects of a batch in their
+ * temporary files, and {@link #commit()}
+ *
+ * <ol>
+ *     <li>syncs the temporary files, several at a time, so that the file
+ *     system can combine them into a few journal commits;</li>
+ *     <li>moves them to their final locations;</li>
+ *     <li>syncs each fan-out directory once, which makes the moves durable.</li>
+ * </ol>
+ *
+ * <p>Once {@link #commit()} returns, the objects can safely be referenced. A
+ * crash before that leaves only temporary files behind.
+ *
+ * <p>Whether an object needs to be written at all is decided by
+ * {@link #contains}, which asks an {@link ObjectSet} instead of the file
+ * system.
+ *
+ * <p>This class is thread-safe, except for {@link #commit()} and
+ * {@link #close()}, which must not run concurrently with anything else.
+ */
+final class ObjectBatch implements Closeable {
+    /**
+     * How many files are synced at the same time; syncing waits for the disk,
+     * not for the processor, so this is independent of the number of cores.
+     */
+    private static final int SYNC_WORKERS = 8;
+
+    private final Path objectDirectory;
+    private final ObjectSet objects;
+    /**
+     * The temporary files of the objects in the batch.
+     */
+    private final Map<ObjectId, Path> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param objectDirectory The object store's root directory.
+     * @param objects         The objects in the store; committed objects are
+     *                        added to it.
+     */
+    public ObjectBatch(Path objectDirectory, ObjectSet objects) {
+        this.objectDirectory = objectDirectory;
+        this.objects = objects;
+    }
+
+    /**
+     * Syncs {@code path}, which may be a file or a directory.
+     */
+    static void sync(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Returns whether the object {@code id} is in the batch or in the store.
+     */
+    public boolean contains(ObjectId id) throws IOException {
+        return pending.containsKey(id) || objects.contains(id);
+    }
+
+    /**
+     * Adds an object whose content has been written to {@code temporary}.
+     *
+     * <p>If the batch contains the object already, {@code temporary} is
+     * deleted instead.
+     */
+    public void add(ObjectId id, Path temporary) throws IOException {
+        if (pending.putIfAbsent(id, temporary) != null) {
+            Files.delete(temporary);
+        }
+    }
+
+    private Path getPath(ObjectId id) {
+        String encodedHash = id.toString();
+        return objectDirectory.resolve(encodedHash.substring(0, 2)).resolve(encodedHash.substring(2));
+    }
+
+    private void syncAll(List<Path> files) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(SYNC_WORKERS);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(executor.submit(() -> {
+                    sync(file);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while syncing objects.");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Makes the objects in the batch durable, and moves them to their final
+     * locations.
+     *
+     * <p>The batch is empty afterwards, and can be reused.
+     */
+    public void commit() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Path> files = new ArrayList<>(pending.values());
+        if (files.size() == 1) {
+            sync(files.get(0));
+        } else {
+            syncAll(files);
+        }
+        Set<Path> directories = new HashSet<>();
+        for (Map.Entry<ObjectId, Path> entry : pending.entrySet()) {
+            Path path = getPath(entry.getKey());
+            Files.createDirectories(path.getParent());
+            Files.setPosixFilePermissions(entry.getValue(), PosixFilePermissions.fromString("r--r--r--"));
+            // If another process wrote the object in the meantime, this
+            // replaces it with identical content.
+            Files.move(entry.getValue(), path, StandardCopyOption.ATOMIC_MOVE);
+            directories.add(path.getParent());
+        }
+        for (Path directory : directories) {
+            sync(directory);
+        }
+        // New fan-out directories are entries of the object store's root.
+        sync(objectDirectory);
+        for (ObjectId id : pending.keySet()) {
+            objects.add(id);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Discards the objects that haven't been committed.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Path temporary : pending.values()) {
+            Files.deleteIfExists(temporary);
+        }
+        pending.clear();
+    }
+}
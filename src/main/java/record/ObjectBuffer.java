@@ -0,0 +1,218 @@
+package record;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A growable byte array that {@link LooseObject}s are serialized into.
+ *
+ * <p>An object's header contains the length of its body, which is only known
+ * once the body has been serialized. Hence the body is serialized first,
+ * behind a gap that is large enough for any header, and then the header is
+ * written into the end of the gap. The content ends up in one piece, and can
+ * be hashed and deflated straight from {@link #getArray()}:
+ * <pre><code>
+ * +-----+--------+------+
+ * | gap | header | body |
+ * +-----+--------+------+
+ *       ^        ^      ^
+ *   getStart()   |   getEnd()
+ *          getBodyStart()
+ * </code></pre>
+ *
+ * <p>Buffers are meant to be reused; the array only ever grows, so once it's
+ * large enough, serializing an object allocates nothing.
+ *
+ * <p>Instances are not safe to use from multiple threads; {@link #get()}
+ * returns one per thread.
+ */
+final class ObjectBuffer {
+    /**
+     * Room for the longest header, e.g., {@code "commit 1234567890123456789\0"}.
+     */
+    private static final int GAP = 32;
+
+    private static final ThreadLocal<ObjectBuffer> BUFFERS = ThreadLocal.withInitial(ObjectBuffer::new);
+
+    private byte[] array = new byte[256];
+    private int start = GAP;
+    private int end = GAP;
+    private String type = null;
+
+    /**
+     * Returns the calling thread's buffer.
+     *
+     * <p>Its content is replaced by the next object that is serialized on the
+     * same thread.
+     */
+    public static ObjectBuffer get() {
+        return BUFFERS.get();
+    }
+
+    private void ensureCapacity(int additional) {
+        if (array.length - end < additional) {
+            array = Arrays.copyOf(array, Math.max(2 * array.length, end + additional));
+        }
+    }
+
+    public void write(int b) {
+        ensureCapacity(1);
+        array[end++] = (byte) b;
+    }
+
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, array, end, len);
+        end += len;
+    }
+
+    public void write(byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    /**
+     * Writes {@code s} in UTF-8.
+     *
+     * <p>ASCII characters are copied one by one, so that names and messages,
+     * which are almost always ASCII, don't need an intermediate array.
+     */
+    public void writeUtf8(String s) {
+        int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; ++i) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                write(s.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            array[end++] = (byte) c;
+        }
+    }
+
+    /**
+     * Writes the raw bytes of {@code id}.
+     */
+    public void writeId(ObjectId id) {
+        ensureCapacity(ObjectId.LENGTH);
+        id.copyTo(array, end);
+        end += ObjectId.LENGTH;
+    }
+
+    /**
+     * Writes {@code id} in Base16.
+     */
+    public void writeHex(ObjectId id) {
+        ensureCapacity(3 * ObjectId.LENGTH);
+        // Put the raw bytes behind the digits, and expand them from the front.
+        int raw = end + 2 * ObjectId.LENGTH;
+        id.copyTo(array, raw);
+        Base16.encode(array, raw, ObjectId.LENGTH, array, end);
+        end += 2 * ObjectId.LENGTH;
+    }
+
+    /**
+     * Discards the content, keeping the array.
+     */
+    public void clear() {
+        start = GAP;
+        end = GAP;
+        type = null;
+    }
+
+    /**
+     * Writes the header in front of the body.
+     */
+    private void finish(String type) {
+        int i = GAP;
+        array[--i] = 0;
+        long length = end - GAP;
+        do {
+            array[--i] = (byte) ('0' + length % 10);
+            length /= 10;
+        } while (length != 0);
+        array[--i] = ' ';
+        for (int j = type.length() - 1; j >= 0; --j) {
+            array[--i] = (byte) type.charAt(j);
+        }
+        this.start = i;
+        this.type = type;
+    }
+
+    /**
+     * Replaces the content by {@code object}'s.
+     */
+    public void writeObject(LooseObject object) {
+        clear();
+        object.writeBody(this);
+        finish(object.getType());
+    }
+
+    /**
+     * Replaces the content by that of a {@link Blob} holding {@code file}'s data.
+     *
+     * @param size The file's expected size; the file is read in full regardless.
+     */
+    public void writeBlob(Path file, long size) throws IOException {
+        clear();
+        try (InputStream stream = Files.newInputStream(file)) {
+            ensureCapacity(Math.toIntExact(size) + 1);
+            int n;
+            while ((n = stream.read(array, end, array.length - end)) != -1) {
+                end += n;
+                ensureCapacity(1);
+            }
+        }
+        finish("blob");
+    }
+
+    public byte[] getArray() {
+        return array;
+    }
+
+    /**
+     * Returns where the header starts.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Returns where the body starts.
+     */
+    public int getBodyStart() {
+        return GAP;
+    }
+
+    /**
+     * Returns where the content ends.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the type of the object, or {@code null} if no object was written.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Returns a copy of what has been written since the last {@link #clear()},
+     * without a header.
+     */
+    public byte[] copyBody() {
+        return Arrays.copyOfRange(array, GAP, end);
+    }
+
+    /**
+     * Returns a copy of the content, including the header.
+     */
+    public byte[] copyContent() {
+        return Arrays.copyOfRange(array, start, end);
+    }
+}
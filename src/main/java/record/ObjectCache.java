@@ -0,0 +1,91 @@
+package record;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A cache of parsed objects, keyed by their ids.
+ *
+ * <p>The cache is bounded by the total size of the cached objects, which is
+ * approximated by the size of their inflated content; the least recently used
+ * objects are evicted first. Instances are safe to use from multiple threads.
+ */
+final class ObjectCache {
+    private static final class Entry {
+        private final Object value;
+        private final long size;
+
+        public Entry(Object value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    private final LinkedHashMap<ObjectId, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long capacity;
+    private long size = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param capacity The maximal total size of the cached objects, in bytes.
+     */
+    public ObjectCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the cached object, or {@code null} if there is none.
+     */
+    public synchronized Object get(ObjectId id) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            ++misses;
+            return null;
+        }
+        ++hits;
+        return entry.value;
+    }
+
+    /**
+     * Caches an object.
+     *
+     * @param size The size of the object's inflated content.
+     */
+    public synchronized void put(ObjectId id, Object value, long size) {
+        if (size > capacity) {
+            return;
+        }
+        Entry previous = entries.put(id, new Entry(value, size));
+        if (previous != null) {
+            this.size -= previous.size;
+        }
+        this.size += size;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > capacity) {
+            size -= iterator.next().size;
+            iterator.remove();
+        }
+    }
+
+    public synchronized void setCapacity(long capacity) {
+        this.capacity = capacity;
+        evict();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
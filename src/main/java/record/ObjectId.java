@@ -0,0 +1,181 @@
+package record;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The name of a Git object, i.e., the SHA-1 digest of its content.
+ *
+ * <p>The 20 bytes of the digest are kept in two {@code long}s and an
+ * {@code int}, so that comparisons don't have to go through an array or a
+ * Base16-encoded string. Instances are immutable.
+ */
+public final class ObjectId implements Comparable<ObjectId> {
+    /**
+     * The length of an object id in bytes.
+     */
+    public static final int LENGTH = 20;
+
+    private final long first;
+    private final long second;
+    private final int third;
+
+    private ObjectId(long first, long second, int third) {
+        this.first = first;
+        this.second = second;
+        this.third = third;
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long result = 0;
+        for (int i = offset; i < offset + 8; ++i) {
+            result = (result << 8) | (bytes[i] & 0xff);
+        }
+        return result;
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        int result = 0;
+        for (int i = offset; i < offset + 4; ++i) {
+            result = (result << 8) | (bytes[i] & 0xff);
+        }
+        return result;
+    }
+
+    /**
+     * Reads an object id from {@code bytes}, starting at {@code offset}.
+     */
+    public static ObjectId fromBytes(byte[] bytes, int offset) {
+        if (offset < 0 || offset + LENGTH > bytes.length) {
+            throw new IllegalArgumentException("Object ids consist of 20 bytes.");
+        }
+        return new ObjectId(getLong(bytes, offset), getLong(bytes, offset + 8), getInt(bytes, offset + 16));
+    }
+
+    /**
+     * Converts a SHA-1 digest into an object id.
+     *
+     * @param bytes An array of exactly 20 bytes.
+     */
+    public static ObjectId fromBytes(byte[] bytes) {
+        if (bytes.length != LENGTH) {
+            throw new IllegalArgumentException("Object ids consist of 20 bytes.");
+        }
+        return fromBytes(bytes, 0);
+    }
+
+    /**
+     * Reads an object id from {@code buffer}, starting at the absolute position {@code index}.
+     */
+    public static ObjectId fromBuffer(ByteBuffer buffer, int index) {
+        return new ObjectId(buffer.getLong(index), buffer.getLong(index + 8), buffer.getInt(index + 16));
+    }
+
+    /**
+     * Parses a Base16-encoded object id.
+     *
+     * @param encoded A string of 40 hexadecimal digits.
+     * @throws FatalParseException If {@code encoded} is malformed.
+     */
+    public static ObjectId parse(String encoded) throws FatalParseException {
+        if (encoded.length() != 2 * LENGTH) {
+            throw new FatalParseException("Object ids consist of 40 hexadecimal digits.");
+        }
+        return fromBytes(Base16.decode(encoded));
+    }
+
+    /**
+     * Parses a Base16-encoded object id from ASCII bytes.
+     *
+     * @param bytes  An array containing 40 hexadecimal digits at {@code offset}.
+     * @param offset The position of the first digit.
+     * @throws FatalParseException If the digits are malformed or truncated.
+     */
+    public static ObjectId parse(byte[] bytes, int offset) throws FatalParseException {
+        if (offset < 0 || offset + 2 * LENGTH > bytes.length) {
+            throw new FatalParseException("Object ids consist of 40 hexadecimal digits.");
+        }
+        return fromBytes(Base16.decode(bytes, offset, 2 * LENGTH));
+    }
+
+    /**
+     * Writes the object id into {@code bytes}, starting at {@code offset}.
+     */
+    public void copyTo(byte[] bytes, int offset) {
+        for (int i = 0; i < 8; ++i) {
+            bytes[offset + i] = (byte) (first >>> (56 - 8 * i));
+            bytes[offset + 8 + i] = (byte) (second >>> (56 - 8 * i));
+        }
+        for (int i = 0; i < 4; ++i) {
+            bytes[offset + 16 + i] = (byte) (third >>> (24 - 8 * i));
+        }
+    }
+
+    /**
+     * @return A new array containing the object id's 20 bytes.
+     */
+    public byte[] toBytes() {
+        byte[] result = new byte[LENGTH];
+        copyTo(result, 0);
+        return result;
+    }
+
+    /**
+     * @return The first byte of the object id, as an unsigned value.
+     */
+    public int getFirstByte() {
+        return (int) (first >>> 56);
+    }
+
+    /**
+     * Compares the object id with the 20 bytes of {@code buffer} at the
+     * absolute position {@code index}, as unsigned numbers.
+     */
+    public int compareTo(ByteBuffer buffer, int index) {
+        int result = Long.compareUnsigned(first, buffer.getLong(index));
+        if (result == 0) {
+            result = Long.compareUnsigned(second, buffer.getLong(index + 8));
+        }
+        if (result == 0) {
+            result = Integer.compareUnsigned(third, buffer.getInt(index + 16));
+        }
+        return result;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int result = Long.compareUnsigned(first, other.first);
+        if (result == 0) {
+            result = Long.compareUnsigned(second, other.second);
+        }
+        if (result == 0) {
+            result = Integer.compareUnsigned(third, other.third);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) o;
+        return other.first == first && other.second == second && other.third == third;
+    }
+
+    @Override
+    public int hashCode() {
+        // The bytes of a digest are uniformly distributed already.
+        return (int) second;
+    }
+
+    /**
+     * @return The Base16-encoded object id.
+     */
+    @Override
+    public String toString() {
+        return Base16.encode(toBytes());
+    }
+}
@@ -0,0 +1,116 @@
+package record;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from {@link ObjectId}s to values.
+ *
+ * <p>Keys and values are kept in two flat arrays with linear probing, so that
+ * entries don't need a node object each; since object ids are uniformly
+ * distributed, their {@link ObjectId#hashCode()} can be used as the slot
+ * directly. There is no removal, because none of the users need it.
+ *
+ * <p>Instances are not safe to use from multiple threads.
+ *
+ * @param <V> The type of the values.
+ */
+final class ObjectIdMap<V> {
+    private ObjectId[] keys;
+    private Object[] values;
+    private int size = 0;
+
+    public ObjectIdMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize The number of entries that can be added without resizing.
+     */
+    public ObjectIdMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2 * expectedSize, 2) - 1) << 1;
+        this.keys = new ObjectId[capacity];
+        this.values = new Object[capacity];
+    }
+
+    private int slot(ObjectId key) {
+        int mask = keys.length - 1;
+        int i = key.hashCode() & mask;
+        while (keys[i] != null && !keys[i].equals(key)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(ObjectId key) {
+        return keys[slot(key)] != null;
+    }
+
+    /**
+     * @return The value for {@code key}, or {@code null} if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(ObjectId key) {
+        return (V) values[slot(key)];
+    }
+
+    /**
+     * Associates {@code value} with {@code key}.
+     *
+     * @return The previous value for {@code key}, or {@code null} if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(ObjectId key, V value) {
+        int i = slot(key);
+        if (keys[i] != null) {
+            V previous = (V) values[i];
+            values[i] = value;
+            return previous;
+        }
+        keys[i] = key;
+        values[i] = value;
+        ++size;
+        // Keep the load factor at most one half, so that probe sequences stay short.
+        if (2 * size > keys.length) {
+            resize();
+        }
+        return null;
+    }
+
+    /**
+     * Associates {@code value} with {@code key} unless there already is a value for it.
+     *
+     * @return The existing value for {@code key}, or {@code null} if there was none.
+     */
+    public V putIfAbsent(ObjectId key, V value) {
+        V existing = get(key);
+        return existing == null ? put(key, value) : existing;
+    }
+
+    private void resize() {
+        ObjectId[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new ObjectId[2 * oldKeys.length];
+        values = new Object[2 * oldValues.length];
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != null) {
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+}
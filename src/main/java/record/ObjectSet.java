@@ -0,0 +1,99 @@
+package record;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Knows which objects exist in the object store, so that writers can skip
+ * objects that are already present without a file system call per object.
+ *
+ * <p>Loose objects are listed one fan-out directory at a time, when an id in
+ * that directory is first looked up, and kept as a sorted array. A commit that
+ * writes only a few objects thus lists only a few directories, and one that
+ * writes many lists each directory at most once, which is far cheaper than a
+ * {@code stat} per object. Packed objects are looked up in the packs, whose
+ * indexes are memory-mapped already. Objects that are written afterwards have
+ * to be {@link #add added}.
+ *
+ * <p>If another process writes objects at the same time, an object may be
+ * reported as missing although it exists; it is then simply written again.
+ *
+ * <p>This class is thread-safe.
+ */
+final class ObjectSet {
+    /**
+     * Where packed objects are looked up.
+     */
+    interface Packs {
+        boolean contains(ObjectId id) throws IOException;
+    }
+
+    private final Path objectDirectory;
+    private final Packs packs;
+    /**
+     * The sorted loose objects of each fan-out directory, or {@code null} for
+     * directories that haven't been listed yet.
+     */
+    private final AtomicReferenceArray<ObjectId[]> loose = new AtomicReferenceArray<>(256);
+    private final Set<ObjectId> added = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param objectDirectory The object store's root directory.
+     */
+    public ObjectSet(Path objectDirectory, Packs packs) {
+        this.objectDirectory = objectDirectory;
+        this.packs = packs;
+    }
+
+    /**
+     * Lists the loose objects in the fan-out directory for {@code firstByte}.
+     */
+    private ObjectId[] list(int firstByte) throws IOException {
+        String prefix = Base16.encode(new byte[]{(byte) firstByte});
+        List<ObjectId> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(objectDirectory.resolve(prefix))) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                // Skip temporary files.
+                if (name.length() == 2 * ObjectId.LENGTH - 2 && !name.startsWith("tmp_")) {
+                    result.add(ObjectId.parse(prefix + name));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // No object starts with this byte yet.
+        }
+        ObjectId[] ids = result.toArray(new ObjectId[0]);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    public boolean contains(ObjectId id) throws IOException {
+        if (added.contains(id)) {
+            return true;
+        }
+        int firstByte = id.getFirstByte();
+        ObjectId[] ids = loose.get(firstByte);
+        if (ids == null) {
+            // Concurrent callers may both list the directory; either result will do.
+            ids = list(firstByte);
+            loose.compareAndSet(firstByte, null, ids);
+        }
+        return Arrays.binarySearch(ids, id) >= 0 || packs.contains(id);
+    }
+
+    /**
+     * Records that the object {@code id} has been written.
+     */
+    public void add(ObjectId id) {
+        added.add(id);
+    }
+}
@@ -0,0 +1,159 @@
+package record;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes {@link LooseObject}s to the object store, as part of an
+ * {@link ObjectBatch}.
+ *
+ * <p>Objects are always written to a temporary file first, which stays there
+ * until the batch is committed and is then atomically moved to its final
+ * location; this way, a crash never leaves a truncated object behind. The
+ * batch also decides which objects are present already.
+ *
+ * <p>An instance of this class writes a single object whose body is not held
+ * in memory: its content is fed into a SHA-1 digest and a deflater at the
+ * same time, and the temporary file is added to the batch by
+ * {@link #publish()} once the hash is known. Objects that are held in an
+ * {@link ObjectBuffer} are written by {@link #write(Path, ObjectBatch, ObjectBuffer, int)}.
+ */
+final class ObjectWriter extends OutputStream {
+    private final ObjectBatch batch;
+    private final Path temporary;
+    private final MessageDigest digest;
+    private final DeflaterOutputStream stream;
+    private final long length;
+    private long written = 0;
+    private boolean closed = false;
+
+    /**
+     * @param objectDirectory The object store's root directory.
+     * @param batch           The batch to add the object to.
+     * @param type            The object's type (e.g., {@code "blob"}).
+     * @param length          The length of the object's body.
+     * @param level           The zlib level (see {@link CompressionPolicy}).
+     */
+    public ObjectWriter(Path objectDirectory, ObjectBatch batch, String type, long length, int level) throws IOException {
+        this.batch = batch;
+        this.length = length;
+        this.digest = newDigest();
+        this.temporary = Files.createTempFile(objectDirectory, "tmp_obj_", null);
+        this.stream = Zlib.deflate(new BufferedOutputStream(Files.newOutputStream(temporary)), level);
+        byte[] header = LooseObject.getHeader(type, length);
+        digest.update(header);
+        stream.write(header);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 is broken!");
+        }
+    }
+
+    private static Path getPath(Path objectDirectory, ObjectId id) {
+        String encodedHash = id.toString();
+        return objectDirectory.resolve(encodedHash.substring(0, 2)).resolve(encodedHash.substring(2));
+    }
+
+    /**
+     * Writes the object that {@code buffer} holds.
+     *
+     * <p>The content is hashed first, straight from the buffer's array, so
+     * that objects that are already present aren't deflated at all;
+     * otherwise, the deflated content is written to a temporary file in the
+     * object's fan-out directory, which is added to {@code batch}.
+     *
+     * @param objectDirectory The object store's root directory.
+     * @param batch           The batch to add the object to.
+     * @param buffer          The buffer holding the object's content.
+     * @param level           The zlib level (see {@link CompressionPolicy}).
+     * @return The object's id.
+     */
+    public static ObjectId write(Path objectDirectory, ObjectBatch batch, ObjectBuffer buffer, int level) throws IOException {
+        byte[] content = buffer.getArray();
+        int offset = buffer.getStart();
+        int length = buffer.getEnd() - offset;
+        MessageDigest digest = newDigest();
+        digest.update(content, offset, length);
+        ObjectId id = ObjectId.fromBytes(digest.digest());
+        if (batch.contains(id)) {
+            return id;
+        }
+        Path path = getPath(objectDirectory, id);
+        Files.createDirectories(path.getParent());
+        Path temporary = Files.createTempFile(path.getParent(), "tmp_obj_", null);
+        try {
+            try (DeflaterOutputStream stream = Zlib.deflate(new BufferedOutputStream(Files.newOutputStream(temporary)), level)) {
+                stream.write(content, offset, length);
+            }
+            batch.add(id, temporary);
+            temporary = null;
+        } finally {
+            if (temporary != null) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+        return id;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        digest.update((byte) b);
+        stream.write(b);
+        ++written;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        digest.update(b, off, len);
+        stream.write(b, off, len);
+        written += len;
+    }
+
+    /**
+     * Adds the object to the batch.
+     *
+     * <p>If the object store already contains the object, the temporary file
+     * is discarded instead.
+     *
+     * @return The object's id.
+     * @throws IOException If the body's length differs from the announced one,
+     *                     e.g., because the underlying file changed.
+     */
+    public ObjectId publish() throws IOException {
+        stream.close();
+        closed = true;
+        if (written != length) {
+            Files.delete(temporary);
+            throw new IOException("Object changed while it was being written.");
+        }
+        ObjectId id = ObjectId.fromBytes(digest.digest());
+        if (batch.contains(id)) {
+            Files.delete(temporary);
+        } else {
+            batch.add(id, temporary);
+        }
+        return id;
+    }
+
+    /**
+     * Discards the object unless it has been published.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            stream.close();
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package record;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A Git pack file together with its version 2 index.
+ *
+ * <p>The index is of the form
+ * <pre><code>
+ * +-------+---------+--------+--------+--------+---------+---------------+---------------+----------------+
+ * | magic | version | fanout | hashes | CRC-32 | offsets | large offsets | pack checksum | index checksum |
+ * +-------+---------+--------+--------+--------+---------+---------------+---------------+----------------+
+ * </code></pre>
+ * where {@code fanout} contains, for every byte value {@code b}, the number of
+ * objects whose hash starts with a byte of at most {@code b}, and
+ * {@code hashes} is sorted. An object's entry in the pack is found by looking
+ * up its hash in {@code hashes}; its offset is at the same position in
+ * {@code offsets}.
+ *
+ * <p>The index is memory-mapped, and the pack is read with positional reads
+ * on a single channel; hence instances are safe to use from multiple threads.
+ *
+ * <p>Entries of type {@code OFS_DELTA} or {@code REF_DELTA} contain a
+ * {@link Delta} against another entry of the same pack. Resolving a chain of
+ * deltas requires all the bases on the chain, so recently resolved objects are
+ * kept in a {@link DeltaBaseCache}.
+ */
+final class PackFile implements Closeable {
+    static final int PACK_SIGNATURE = 0x5041434b;
+    static final int INDEX_SIGNATURE = 0xff744f63;
+    static final int OFS_DELTA = 6;
+    static final int REF_DELTA = 7;
+
+    private static final int FANOUT_OFFSET = 8;
+    private static final int HASHES_OFFSET = FANOUT_OFFSET + 256 * 4;
+
+    /**
+     * The longest possible entry header: a type, a 64-bit length, and either a
+     * 64-bit distance or a hash.
+     */
+    private static final int MAX_HEADER_LENGTH = 30;
+    /**
+     * The default capacity of the {@link DeltaBaseCache}, in bytes.
+     */
+    private static final long DELTA_BASE_CACHE_SIZE = 32 << 20;
+
+    private final Path pack;
+    private final MappedByteBuffer index;
+    private final int count;
+    private final FileChannel channel;
+    private final DeltaBaseCache cache = new DeltaBaseCache(DELTA_BASE_CACHE_SIZE);
+
+    /**
+     * @param indexPath The path of the index; the pack is expected next to it.
+     */
+    public PackFile(Path indexPath) throws IOException {
+        String name = indexPath.getFileName().toString();
+        this.pack = indexPath.resolveSibling(name.substring(0, name.length() - ".idx".length()) + ".pack");
+        try (FileChannel indexChannel = FileChannel.open(indexPath)) {
+            this.index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+        }
+        if (index.getInt(0) != INDEX_SIGNATURE || index.getInt(4) != 2) {
+            throw new FatalParseException("Unsupported pack index.");
+        }
+        this.count = index.getInt(FANOUT_OFFSET + 255 * 4);
+        this.channel = FileChannel.open(pack);
+        ByteBuffer header = ByteBuffer.allocate(8);
+        channel.read(header, 0);
+        if (header.getInt(0) != PACK_SIGNATURE || header.getInt(4) != 2) {
+            channel.close();
+            throw new FatalParseException("Unsupported pack.");
+        }
+    }
+
+    /**
+     * Reads a pack with positional reads, i.e., without moving the channel's
+     * position.
+     */
+    private final class ChannelInputStream extends InputStream {
+        private long position;
+
+        public ChannelInputStream(long position) {
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Returns the pack's numeric code for an object type.
+     */
+    static int getTypeCode(String type) {
+        switch (type) {
+            case "commit":
+                return 1;
+            case "tree":
+                return 2;
+            case "blob":
+                return 3;
+            case "tag":
+                return 4;
+            default:
+                throw new IllegalArgumentException("Illegal object type.");
+        }
+    }
+
+    /**
+     * Returns the object type for one of the pack's numeric codes.
+     */
+    static String getType(int code) {
+        switch (code) {
+            case 1:
+                return "commit";
+            case 2:
+                return "tree";
+            case 3:
+                return "blob";
+            case 4:
+                return "tag";
+            default:
+                throw new FatalParseException("Unsupported pack entry type.");
+        }
+    }
+
+    public Path getPath() {
+        return pack;
+    }
+
+    /**
+     * Returns the position of {@code id} in the index, or {@code -1}.
+     */
+    private int find(ObjectId id) {
+        int first = id.getFirstByte();
+        int low = first == 0 ? 0 : index.getInt(FANOUT_OFFSET + (first - 1) * 4);
+        int high = index.getInt(FANOUT_OFFSET + first * 4);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = -id.compareTo(index, HASHES_OFFSET + middle * 20);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private long getOffset(int position) {
+        int offset = index.getInt(HASHES_OFFSET + count * 24 + position * 4);
+        if (offset >= 0) {
+            return offset;
+        }
+        return index.getLong(HASHES_OFFSET + count * 28 + (offset & 0x7fffffff) * 8);
+    }
+
+    public boolean contains(ObjectId id) {
+        return find(id) != -1;
+    }
+
+    /**
+     * A bounded cache of resolved pack entries, keyed by offset.
+     *
+     * <p>The capacity is measured in bytes of entry bodies; the least recently
+     * used entries are evicted first.
+     */
+    private static final class DeltaBaseCache {
+        private final long capacity;
+        private final LinkedHashMap<Long, Resolved> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long size = 0;
+
+        public DeltaBaseCache(long capacity) {
+            this.capacity = capacity;
+        }
+
+        public synchronized Resolved get(long offset) {
+            return entries.get(offset);
+        }
+
+        public synchronized void put(long offset, Resolved resolved) {
+            if (resolved.body.length > capacity || entries.containsKey(offset)) {
+                return;
+            }
+            entries.put(offset, resolved);
+            size += resolved.body.length;
+            Iterator<Resolved> iterator = entries.values().iterator();
+            while (size > capacity) {
+                size -= iterator.next().body.length;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * An entry whose deltas have been applied.
+     */
+    private static final class Resolved {
+        private final int type;
+        private final byte[] body;
+
+        public Resolved(int type, byte[] body) {
+            this.type = type;
+            this.body = body;
+        }
+    }
+
+    /**
+     * The header of an entry in the pack.
+     */
+    private static final class EntryHeader {
+        private final int type;
+        private final long length;
+        private final long dataOffset;
+        private final long baseOffset;
+
+        public EntryHeader(int type, long length, long dataOffset, long baseOffset) {
+            this.type = type;
+            this.length = length;
+            this.dataOffset = dataOffset;
+            this.baseOffset = baseOffset;
+        }
+
+        public boolean isDelta() {
+            return type == OFS_DELTA || type == REF_DELTA;
+        }
+    }
+
+    private EntryHeader readEntryHeader(long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_HEADER_LENGTH);
+        // A header near the end of the pack may be shorter than the buffer.
+        if (channel.read(buffer, offset) <= 0) {
+            throw new FatalParseException("Malformed pack entry header.");
+        }
+        int end = buffer.position();
+        int i = 0;
+        int b = buffer.get(i++);
+        int type = (b >>> 4) & 0x07;
+        long length = b & 0x0f;
+        for (int shift = 4; (b & 0x80) != 0; shift += 7) {
+            if (i == end) {
+                throw new FatalParseException("Malformed pack entry header.");
+            }
+            b = buffer.get(i++);
+            length |= (long) (b & 0x7f) << shift;
+        }
+        long baseOffset = -1;
+        if (type == OFS_DELTA) {
+            // The distance is big-endian, and every continuation adds one.
+            if (i == end) {
+                throw new FatalParseException("Malformed pack entry header.");
+            }
+            b = buffer.get(i++);
+            long distance = b & 0x7f;
+            while ((b & 0x80) != 0) {
+                if (i == end) {
+                    throw new FatalParseException("Malformed pack entry header.");
+                }
+                b = buffer.get(i++);
+                distance = ((distance + 1) << 7) | (b & 0x7f);
+            }
+            baseOffset = offset - distance;
+        } else if (type == REF_DELTA) {
+            if (i + 20 > end) {
+                throw new FatalParseException("Malformed pack entry header.");
+            }
+            ObjectId baseId = ObjectId.fromBuffer(buffer, i);
+            i += 20;
+            int position = find(baseId);
+            if (position == -1) {
+                throw new FatalParseException("Delta base is not in the pack.");
+            }
+            baseOffset = getOffset(position);
+        }
+        return new EntryHeader(type, length, offset + i, baseOffset);
+    }
+
+    /**
+     * Returns a stream of the inflated data that starts at {@code offset}.
+     */
+    private InputStream inflate(long offset) {
+        return Zlib.inflate(new ChannelInputStream(offset), 8192);
+    }
+
+    /**
+     * Reads and inflates the data of an entry.
+     */
+    private byte[] inflate(EntryHeader header) throws IOException {
+        byte[] result = new byte[Math.toIntExact(header.length)];
+        try (InputStream stream = inflate(header.dataOffset)) {
+            if (stream.readNBytes(result, 0, result.length) != result.length || stream.read() != -1) {
+                throw new FatalParseException("Pack entry has incorrect length.");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resolves the entry at {@code offset}, applying deltas as necessary.
+     */
+    private Resolved resolve(long offset) throws IOException {
+        Deque<EntryHeader> deltas = new ArrayDeque<>();
+        Resolved base = cache.get(offset);
+        while (base == null) {
+            EntryHeader header = readEntryHeader(offset);
+            if (!header.isDelta()) {
+                base = new Resolved(header.type, inflate(header));
+                break;
+            }
+            deltas.push(header);
+            offset = header.baseOffset;
+            base = cache.get(offset);
+        }
+        // Cache the base of every delta on the chain, but not the result.
+        while (!deltas.isEmpty()) {
+            EntryHeader delta = deltas.pop();
+            cache.put(delta.baseOffset, base);
+            base = new Resolved(base.type, Delta.apply(base.body, inflate(delta)));
+        }
+        return base;
+    }
+
+    /**
+     * Opens an object in the pack.
+     *
+     * <p>Objects that are stored as a whole are streamed; deltas are resolved
+     * in memory.
+     *
+     * @return A stream of the object's uncompressed content, as in a loose
+     *         object, or {@code null} if the pack doesn't contain the object.
+     */
+    public InputStream open(ObjectId id) throws IOException {
+        int position = find(id);
+        if (position == -1) {
+            return null;
+        }
+        long offset = getOffset(position);
+        EntryHeader header = readEntryHeader(offset);
+        if (header.isDelta()) {
+            Resolved resolved = resolve(offset);
+            return new SequenceInputStream(
+                new ByteArrayInputStream(LooseObject.getHeader(getType(resolved.type), resolved.body.length)),
+                new ByteArrayInputStream(resolved.body)
+            );
+        }
+        return new SequenceInputStream(
+            new ByteArrayInputStream(LooseObject.getHeader(getType(header.type), header.length)),
+            inflate(header.dataOffset)
+        );
+    }
+
+    /**
+     * Reads an object from the pack.
+     *
+     * @return The object's uncompressed content, as in a loose object, or
+     *         {@code null} if the pack doesn't contain the object.
+     */
+    public byte[] read(ObjectId id) throws IOException {
+        int position = find(id);
+        if (position == -1) {
+            return null;
+        }
+        Resolved resolved = resolve(getOffset(position));
+        byte[] header = LooseObject.getHeader(getType(resolved.type), resolved.body.length);
+        byte[] result = new byte[header.length + resolved.body.length];
+        System.arraycopy(header, 0, result, 0, header.length);
+        System.arraycopy(resolved.body, 0, result, header.length, resolved.body.length);
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
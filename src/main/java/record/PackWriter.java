@@ -0,0 +1,318 @@
+package record;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a Git pack file together with its version 2 index.
+ *
+ * <p>The pack file is of the form
+ * <pre><code>
+ * +------+---------+-------+---------+-----+---------+----------+
+ * | PACK | version | count | entry 1 | ... | entry n | checksum |
+ * +------+---------+-------+---------+-----+---------+----------+
+ * </code></pre>
+ * where every entry consists of a variable-length header encoding the
+ * object's type and body length, followed by the deflated body. Entries of
+ * type {@code OFS_DELTA} instead contain a {@link Delta} against an earlier
+ * entry, whose distance follows the header. The index
+ * maps the objects' hashes to the offsets of their entries; see
+ * {@link PackFile} for its layout.
+ *
+ * <p>Both files are written to temporary files first and moved into place by
+ * {@link #finish()}, the index last; readers only look for packs that have an
+ * index, so they never observe a partially written pack.
+ */
+final class PackWriter implements Closeable {
+    private static final class Entry {
+        private final ObjectId id;
+        private final long offset;
+        private final int crc;
+
+        public Entry(ObjectId id, long offset, int crc) {
+            this.id = id;
+            this.offset = offset;
+            this.crc = crc;
+        }
+    }
+
+    /**
+     * Counts the bytes written to the underlying stream.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private final Path packDirectory;
+    private final Path temporaryPack;
+    private final Path temporaryIndex;
+    private final int count;
+    private final MessageDigest digest = newDigest();
+    private final CRC32 crc = new CRC32();
+    private final CountingOutputStream stream;
+    private final Deflater deflater = new Deflater();
+    private final List<Entry> entries = new ArrayList<>();
+    private final ObjectIdMap<Long> offsets = new ObjectIdMap<>();
+    private boolean closed = false;
+
+    /**
+     * @param packDirectory The directory containing the packs, usually
+     *                      {@code .git/objects/pack}.
+     * @param count         The number of objects that will be written.
+     */
+    public PackWriter(Path packDirectory, int count) throws IOException {
+        this.packDirectory = packDirectory;
+        this.count = count;
+        Files.createDirectories(packDirectory);
+        this.temporaryPack = Files.createTempFile(packDirectory, "tmp_pack_", null);
+        this.temporaryIndex = Files.createTempFile(packDirectory, "tmp_idx_", null);
+        this.stream = new CountingOutputStream(
+            new CheckedOutputStream(new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPack)), digest), crc)
+        );
+        DataOutputStream header = new DataOutputStream(stream);
+        header.writeInt(PackFile.PACK_SIGNATURE);
+        header.writeInt(2);
+        header.writeInt(count);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 is broken!");
+        }
+    }
+
+    /**
+     * Writes an entry's header, i.e., its type and the length of its body.
+     */
+    private void writeEntryHeader(int type, long length) throws IOException {
+        int b = (type << 4) | (int) (length & 0x0f);
+        length >>>= 4;
+        while (length != 0) {
+            stream.write(b | 0x80);
+            b = (int) (length & 0x7f);
+            length >>>= 7;
+        }
+        stream.write(b);
+    }
+
+    private void writeDeflated(byte[] data, int offset, int length) throws IOException {
+        deflater.reset();
+        DeflaterOutputStream deflated = new DeflaterOutputStream(stream, deflater);
+        deflated.write(data, offset, length);
+        deflated.finish();
+    }
+
+    private void startEntry() {
+        if (entries.size() == count) {
+            throw new IllegalStateException("Too many objects.");
+        }
+        crc.reset();
+    }
+
+    private void finishEntry(ObjectId id, long offset) {
+        entries.add(new Entry(id, offset, (int) crc.getValue()));
+        offsets.put(id, offset);
+    }
+
+    /**
+     * Adds an object to the pack.
+     *
+     * @param content The object's uncompressed content, as returned by
+     *                {@link LooseObject#getBytes()}.
+     */
+    public void write(byte[] content) throws IOException {
+        startEntry();
+        int i = FirstZero.in(content);
+        String[] header = new String(content, 0, i, StandardCharsets.UTF_8).split(" ");
+        int type = PackFile.getTypeCode(header[0]);
+        // Move to the start of the body.
+        ++i;
+        ObjectId id = ObjectId.fromBytes(newDigest().digest(content));
+        long offset = stream.count;
+        writeEntryHeader(type, content.length - i);
+        writeDeflated(content, i, content.length - i);
+        finishEntry(id, offset);
+    }
+
+    /**
+     * Adds an object to the pack, streaming its body, so that objects of any
+     * size can be packed.
+     *
+     * @param id     The object's id.
+     * @param type   The object's type.
+     * @param length The length of the object's body.
+     * @param body   The object's uncompressed body, i.e., its content without
+     *               the header.
+     * @throws FatalParseException If {@code body} isn't {@code length} bytes
+     *                             long.
+     */
+    public void write(ObjectId id, String type, long length, InputStream body) throws IOException {
+        startEntry();
+        long offset = stream.count;
+        writeEntryHeader(PackFile.getTypeCode(type), length);
+        deflater.reset();
+        DeflaterOutputStream deflated = new DeflaterOutputStream(stream, deflater);
+        if (body.transferTo(deflated) != length) {
+            throw new FatalParseException("Header contains incorrect length.");
+        }
+        deflated.finish();
+        finishEntry(id, offset);
+    }
+
+    /**
+     * Adds an object to the pack as a {@link Delta} against an object that
+     * has already been added.
+     *
+     * @param id     The object's id.
+     * @param baseId The id of the delta's base.
+     * @param delta  The delta.
+     */
+    public void writeDelta(ObjectId id, ObjectId baseId, byte[] delta) throws IOException {
+        Long baseOffset = offsets.get(baseId);
+        if (baseOffset == null) {
+            throw new IllegalStateException("Delta base hasn't been written.");
+        }
+        startEntry();
+        long offset = stream.count;
+        writeEntryHeader(PackFile.OFS_DELTA, delta.length);
+        // The distance is big-endian, and every continuation adds one.
+        long distance = offset - baseOffset;
+        byte[] buffer = new byte[10];
+        int position = buffer.length - 1;
+        buffer[position] = (byte) (distance & 0x7f);
+        while ((distance >>>= 7) != 0) {
+            --distance;
+            buffer[--position] = (byte) (0x80 | (distance & 0x7f));
+        }
+        stream.write(buffer, position, buffer.length - position);
+        writeDeflated(delta, 0, delta.length);
+        finishEntry(id, offset);
+    }
+
+    private void writeIndex(byte[] packChecksum) throws IOException {
+        entries.sort(Comparator.comparing(entry -> entry.id));
+        MessageDigest indexDigest = newDigest();
+        try (DataOutputStream index = new DataOutputStream(new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryIndex)), indexDigest))) {
+            index.writeInt(PackFile.INDEX_SIGNATURE);
+            index.writeInt(2);
+            int[] fanout = new int[256];
+            for (Entry entry : entries) {
+                ++fanout[entry.id.getFirstByte()];
+            }
+            int total = 0;
+            for (int i = 0; i < 256; ++i) {
+                total += fanout[i];
+                index.writeInt(total);
+            }
+            byte[] id = new byte[ObjectId.LENGTH];
+            for (Entry entry : entries) {
+                entry.id.copyTo(id, 0);
+                index.write(id);
+            }
+            for (Entry entry : entries) {
+                index.writeInt(entry.crc);
+            }
+            List<Long> largeOffsets = new ArrayList<>();
+            for (Entry entry : entries) {
+                if (entry.offset < 0x80000000L) {
+                    index.writeInt((int) entry.offset);
+                } else {
+                    index.writeInt(0x80000000 | largeOffsets.size());
+                    largeOffsets.add(entry.offset);
+                }
+            }
+            for (long offset : largeOffsets) {
+                index.writeLong(offset);
+            }
+            index.write(packChecksum);
+            index.flush();
+            index.write(indexDigest.digest());
+        }
+    }
+
+    /**
+     * Writes the checksum and the index, and moves both files into place.
+     *
+     * <p>Like the objects of an {@link ObjectBatch}, both files are synced
+     * before they're moved, and the directory is synced afterwards; hence the
+     * pack is durable once this returns, and the objects in it may be
+     * deleted elsewhere.
+     *
+     * @return The path of the pack file.
+     */
+    public Path finish() throws IOException {
+        if (entries.size() != count) {
+            throw new IllegalStateException("Too few objects.");
+        }
+        stream.flush();
+        byte[] checksum = digest.digest();
+        stream.write(checksum);
+        stream.close();
+        closed = true;
+        deflater.end();
+        writeIndex(checksum);
+        String name = "pack-" + Base16.encode(checksum);
+        Path pack = packDirectory.resolve(name + ".pack");
+        ObjectBatch.sync(temporaryPack);
+        ObjectBatch.sync(temporaryIndex);
+        Files.setPosixFilePermissions(temporaryPack, PosixFilePermissions.fromString("r--r--r--"));
+        Files.setPosixFilePermissions(temporaryIndex, PosixFilePermissions.fromString("r--r--r--"));
+        Files.move(temporaryPack, pack, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(temporaryIndex, packDirectory.resolve(name + ".idx"), StandardCopyOption.ATOMIC_MOVE);
+        ObjectBatch.sync(packDirectory);
+        return pack;
+    }
+
+    /**
+     * Discards the pack unless it has been finished.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            stream.close();
+            deflater.end();
+        }
+        Files.deleteIfExists(temporaryPack);
+        Files.deleteIfExists(temporaryIndex);
+    }
+}
@@ -0,0 +1,261 @@
+package record;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Git {@code packed-refs} file.
+ *
+ * <p>The file is of the form
+ * <pre><code>
+ * # pack-refs with: peeled fully-peeled sorted
+ * 3d55094ecc4dc83fccdeac612207d3f313b570ce refs/heads/master
+ * 9b1f4e6fb3b1d43d9e2ec3a4f5ad8f0cb36d9ba4 refs/tags/v1.0
+ * ^3d55094ecc4dc83fccdeac612207d3f313b570ce
+ * </code></pre>
+ * i.e., an optional header listing the file's traits, followed by one line
+ * per reference with its target and its name. A line starting with {@code ^}
+ * holds the commit that the annotated tag on the line before points to; those
+ * lines are skipped here.
+ *
+ * <p>If the header has the {@code sorted} trait, which Git has written for a
+ * long time, the lines are sorted by name. The file is then memory-mapped and
+ * searched in place: a byte in the middle of the range is moved back to the
+ * start of its line, and the name on that line decides which half to continue
+ * in. Hence looking up a reference neither reads nor parses the whole file,
+ * however many references it holds. Files without the trait are sorted into
+ * memory once.
+ *
+ * <p>Instances are safe to use from multiple threads.
+ */
+final class PackedRefs {
+    interface Visitor {
+        void visit(String name, ObjectId id) throws IOException;
+    }
+
+    /**
+     * The order of the lines: by the bytes of the names' UTF-8 encodings.
+     */
+    static final Comparator<String> ORDER = (a, b) ->
+        Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+
+    /**
+     * The header that {@link #write} writes; the lines it writes don't peel
+     * tags, so it doesn't claim the {@code peeled} traits.
+     */
+    private static final String HEADER = "# pack-refs with: sorted \n";
+
+    /**
+     * The length of the target and the following space.
+     */
+    private static final int NAME_OFFSET = 2 * ObjectId.LENGTH + 1;
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int end;
+
+    private PackedRefs(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Opens the file at {@code path}.
+     *
+     * @return The file, or {@code null} if it doesn't exist.
+     */
+    public static PackedRefs open(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        int start = 0;
+        boolean sorted = false;
+        if (buffer.limit() > 0 && buffer.get(0) == '#') {
+            start = lineEnd(buffer, 0, buffer.limit());
+            byte[] header = new byte[start];
+            buffer.get(0, header);
+            String traits = new String(header, StandardCharsets.UTF_8);
+            sorted = traits.startsWith("# pack-refs with:") && (traits + " ").contains(" sorted ");
+            start = Math.min(start + 1, buffer.limit());
+        }
+        PackedRefs result = new PackedRefs(buffer, start, buffer.limit());
+        return sorted ? result : result.sort();
+    }
+
+    /**
+     * Writes the references {@code refs} to {@code path}.
+     *
+     * <p>The file isn't synced; callers write to a lock file and move it into
+     * place (see {@link RefDatabase}).
+     */
+    public static void write(Path path, Map<String, ObjectId> refs) throws IOException {
+        List<String> names = new ArrayList<>(refs.keySet());
+        names.sort(ORDER);
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            for (String name : names) {
+                out.write(refs.get(name).toString());
+                out.write(' ');
+                out.write(name);
+                out.write('\n');
+            }
+        }
+    }
+
+    private static int lineEnd(ByteBuffer buffer, int offset, int end) {
+        while (offset < end && buffer.get(offset) != '\n') {
+            ++offset;
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the start of the line after the one at {@code offset}.
+     */
+    private int nextLine(int offset) {
+        return Math.min(lineEnd(buffer, offset, end) + 1, end);
+    }
+
+    /**
+     * Returns the start of the record that the byte at {@code offset} belongs
+     * to; {@code low} has to be the start of a record.
+     */
+    private int recordStart(int low, int offset) {
+        while (offset > low && buffer.get(offset - 1) != '\n') {
+            --offset;
+        }
+        // Peeled lines belong to the record before them.
+        while (offset > low && buffer.get(offset) == '^') {
+            do {
+                --offset;
+            } while (offset > low && buffer.get(offset - 1) != '\n');
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the start of the record after the one at {@code record}.
+     */
+    private int recordEnd(int record) {
+        int offset = nextLine(record);
+        while (offset < end && buffer.get(offset) == '^') {
+            offset = nextLine(offset);
+        }
+        return offset;
+    }
+
+    /**
+     * Compares the name of the record at {@code record} with {@code key}, or
+     * with the first {@code key.length} bytes of it if {@code prefix} is set.
+     */
+    private int compare(int record, byte[] key, boolean prefix) throws FatalParseException {
+        int nameStart = record + NAME_OFFSET;
+        int nameEnd = lineEnd(buffer, record, end);
+        if (nameEnd <= nameStart || buffer.get(nameStart - 1) != ' ') {
+            throw new FatalParseException("Malformed packed-refs.");
+        }
+        for (int i = 0; i < key.length; ++i) {
+            if (nameStart + i == nameEnd) {
+                return -1;
+            }
+            int result = Integer.compare(buffer.get(nameStart + i) & 0xff, key[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return prefix || nameStart + key.length == nameEnd ? 0 : 1;
+    }
+
+    /**
+     * Returns the start of the first record whose name is not less than
+     * {@code key}, or the end of the file.
+     */
+    private int lowerBound(byte[] key) throws FatalParseException {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int record = recordStart(low, (low + high) >>> 1);
+            if (compare(record, key, false) < 0) {
+                low = recordEnd(record);
+            } else {
+                high = record;
+            }
+        }
+        return low;
+    }
+
+    private ObjectId getId(int record) throws FatalParseException {
+        byte[] encoded = new byte[2 * ObjectId.LENGTH];
+        buffer.get(record, encoded);
+        return ObjectId.parse(encoded, 0);
+    }
+
+    private String getName(int record) {
+        byte[] name = new byte[lineEnd(buffer, record, end) - record - NAME_OFFSET];
+        buffer.get(record + NAME_OFFSET, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the target of the reference {@code name}, or {@code null}.
+     */
+    public ObjectId find(String name) throws FatalParseException {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int record = lowerBound(key);
+        if (record < end && compare(record, key, false) == 0) {
+            return getId(record);
+        }
+        return null;
+    }
+
+    /**
+     * Visits the references whose names start with {@code prefix}, in
+     * {@link #ORDER}.
+     */
+    public void forEach(String prefix, Visitor visitor) throws IOException {
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        for (int record = lowerBound(key); record < end && compare(record, key, true) == 0; record = recordEnd(record)) {
+            visitor.visit(getName(record), getId(record));
+        }
+    }
+
+    /**
+     * Returns a copy whose records are sorted, without peeled lines.
+     */
+    private PackedRefs sort() throws FatalParseException {
+        List<byte[]> records = new ArrayList<>();
+        for (int record = start; record < end; record = recordEnd(record)) {
+            int lineEnd = lineEnd(buffer, record, end);
+            if (lineEnd - record <= NAME_OFFSET) {
+                throw new FatalParseException("Malformed packed-refs.");
+            }
+            byte[] line = new byte[lineEnd - record + 1];
+            buffer.get(record, line, 0, line.length - 1);
+            line[line.length - 1] = '\n';
+            records.add(line);
+        }
+        records.sort((a, b) -> Arrays.compareUnsigned(a, NAME_OFFSET, a.length - 1, b, NAME_OFFSET, b.length - 1));
+        byte[] sorted = new byte[records.stream().mapToInt(line -> line.length).sum()];
+        int offset = 0;
+        for (byte[] line : records) {
+            System.arraycopy(line, 0, sorted, offset, line.length);
+            offset += line.length;
+        }
+        return new PackedRefs(ByteBuffer.wrap(sorted), 0, sorted.length);
+    }
+}
@@ -0,0 +1,392 @@
+package record;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * The references of a repository.
+ *
+ * <p>A reference is either loose, i.e., stored in its own file below
+ * {@code .git}, or packed into {@link PackedRefs}; if it's both, the loose
+ * file wins. {@code HEAD} and other symbolic references are always loose.
+ *
+ * <p>Parsed references are cached, together with the inode, modification time
+ * and size of the file they were read from. A cached reference is used for as
+ * long as its file's {@code stat} matches, so resolving {@code HEAD} over and
+ * over costs a {@code stat} per step instead of a read. The {@code stat}
+ * alone can't tell all versions of a file apart, though: references are
+ * always 41 bytes long, inodes are reused, and timestamps are coarse. Like
+ * the racy entries of {@link Index}, files that were modified within
+ * {@link #RACY_WINDOW} of being read are therefore never trusted, so a
+ * reference that was just updated is read again until its file has aged; a
+ * later update always changes the modification time of an older file. The
+ * {@code packed-refs} file is memory-mapped and kept mapped until it changes
+ * in the same way.
+ *
+ * <p>Updates go through Git's lock files (see {@link LockFile}): a reference
+ * is locked by creating {@code <name>.lock} exclusively, and the new value is
+ * written to the lock file and moved into place. Git doesn't allow
+ * {@code .lock} at the end of reference names, so listings skip lock files.
+ *
+ * <p>This class is thread-safe.
+ */
+final class RefDatabase {
+    interface Visitor {
+        void visit(Reference reference) throws IOException;
+    }
+
+    static final String PACKED_REFS = "packed-refs";
+    private static final String REFERENCE_PREFIX = "refs/";
+    /**
+     * Git's limit on chains of symbolic references.
+     */
+    private static final int MAX_DEPTH = 5;
+    /**
+     * How long a file's {@code stat} may still be shared by a newer version
+     * of the file, in milliseconds; this covers file systems whose timestamps
+     * are only precise to a second or two.
+     */
+    private static final long RACY_WINDOW = 2000;
+
+    /**
+     * Something that was read from a file, and the file's {@code stat}.
+     */
+    private static final class Snapshot<T> {
+        private final Object key;
+        private final FileTime modified;
+        private final long size;
+        private final boolean racy;
+        private final T value;
+
+        /**
+         * @param checked When {@code attributes} were read, in milliseconds
+         *                since the epoch; taken before reading them.
+         */
+        public Snapshot(BasicFileAttributes attributes, long checked, T value) {
+            this.key = attributes.fileKey();
+            this.modified = attributes.lastModifiedTime();
+            this.size = attributes.size();
+            this.racy = checked - modified.toMillis() < RACY_WINDOW;
+            this.value = value;
+        }
+
+        /**
+         * Returns whether the file still holds {@link #value}; racy snapshots
+         * never match.
+         */
+        public boolean matches(BasicFileAttributes attributes) {
+            return !racy
+                && Objects.equals(key, attributes.fileKey())
+                && modified.equals(attributes.lastModifiedTime())
+                && size == attributes.size();
+        }
+    }
+
+    private final Path gitDirectory;
+    private final Map<String, Snapshot<Reference>> loose = new ConcurrentHashMap<>();
+    private Snapshot<PackedRefs> packed = null;
+
+    /**
+     * @param gitDirectory The repository's {@code .git} directory.
+     */
+    public RefDatabase(Path gitDirectory) {
+        this.gitDirectory = gitDirectory;
+    }
+
+    private static BasicFileAttributes stat(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private synchronized PackedRefs getPacked() throws IOException {
+        Path path = gitDirectory.resolve(PACKED_REFS);
+        long checked = System.currentTimeMillis();
+        BasicFileAttributes attributes = stat(path);
+        if (attributes == null) {
+            packed = null;
+            return null;
+        }
+        if (packed == null || !packed.matches(attributes)) {
+            packed = new Snapshot<>(attributes, checked, PackedRefs.open(path));
+        }
+        return packed.value;
+    }
+
+    private Reference readPacked(String name) throws IOException {
+        if (!name.startsWith(REFERENCE_PREFIX)) {
+            return null;
+        }
+        PackedRefs refs = getPacked();
+        ObjectId id = refs == null ? null : refs.find(name);
+        return id == null ? null : new Reference(name, id);
+    }
+
+    /**
+     * Reads a reference.
+     *
+     * @param name A fully qualified reference name such as {@code "HEAD"} or
+     *             {@code "refs/heads/master"}.
+     * @return The reference, or {@code null} if it doesn't exist.
+     */
+    public Reference read(String name) throws IOException {
+        Path path = gitDirectory.resolve(name);
+        long checked = System.currentTimeMillis();
+        BasicFileAttributes attributes = stat(path);
+        if (attributes == null || !attributes.isRegularFile()) {
+            loose.remove(name);
+            return readPacked(name);
+        }
+        Snapshot<Reference> cached = loose.get(name);
+        if (cached != null && cached.matches(attributes)) {
+            return cached.value;
+        }
+        Reference reference;
+        try {
+            reference = Reference.of(name, Files.readString(path, StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            // Deleted since the stat, e.g., by packing.
+            loose.remove(name);
+            return readPacked(name);
+        }
+        // If the file was replaced since the stat, the next read notices.
+        loose.put(name, new Snapshot<>(attributes, checked, reference));
+        return reference;
+    }
+
+    /**
+     * Follows symbolic references, starting at {@code name}.
+     *
+     * @return The name of the first reference that isn't symbolic; it may not
+     *         exist, e.g., if {@code HEAD} points to a branch without commits.
+     * @throws FatalParseException If the chain is too long.
+     */
+    public String follow(String name) throws IOException {
+        for (int depth = 0; depth <= MAX_DEPTH; ++depth) {
+            Reference reference = read(name);
+            if (reference == null || !reference.isSymbolic()) {
+                return name;
+            }
+            name = reference.getTarget();
+        }
+        throw new FatalParseException("Too many levels of symbolic references.");
+    }
+
+    /**
+     * Returns the id that {@code name} points to, following symbolic
+     * references, or {@code null} if there is none.
+     */
+    public ObjectId resolve(String name) throws IOException {
+        Reference reference = read(follow(name));
+        return reference == null ? null : reference.getObjectId();
+    }
+
+    /**
+     * Locks {@code path}, see {@link LockFile#acquire}.
+     *
+     * @throws RefUpdateException If the lock stayed held.
+     */
+    private static LockFile lock(Path path) throws IOException {
+        try {
+            return LockFile.acquire(path);
+        } catch (FileAlreadyExistsException e) {
+            throw new RefUpdateException("Unable to create " + e.getFile() + ": " + e.getReason() + ".");
+        }
+    }
+
+    /**
+     * Replaces a reference with {@code reference}, but only if it has the
+     * value {@code expected}.
+     *
+     * <p>This is a transaction on the reference's lock file: the lock is
+     * created exclusively, the current value is compared while it's held, and
+     * the new value is written to the lock file, synced and moved into place.
+     * Hence updates of the same reference are serialized, and one that raced
+     * with another one fails instead of overwriting its result. Updates of
+     * different references don't contend at all.
+     *
+     * @param expected The id that the reference has to point to, or
+     *                 {@code null} if it must not exist.
+     * @throws RefUpdateException If the reference has a different value, or
+     *                            if it stayed locked.
+     */
+    public void compareAndSet(Reference reference, ObjectId expected) throws IOException {
+        update(reference, true, expected);
+    }
+
+    /**
+     * Replaces a reference with {@code reference}, whatever its value.
+     *
+     * <p>Like {@link #compareAndSet}, the update is atomic and durable once
+     * this returns.
+     *
+     * @throws RefUpdateException If the reference stayed locked.
+     */
+    public void write(Reference reference) throws IOException {
+        update(reference, false, null);
+    }
+
+    private void update(Reference reference, boolean check, ObjectId expected) throws IOException {
+        String name = reference.getName();
+        Path path = gitDirectory.resolve(name);
+        Files.createDirectories(path.getParent());
+        try (LockFile lock = lock(path)) {
+            if (check) {
+                // Don't trust the cache while holding the lock.
+                loose.remove(name);
+                Reference current = read(name);
+                ObjectId actual = current == null || current.isSymbolic() ? null : current.getObjectId();
+                if (current != null && current.isSymbolic() || !Objects.equals(actual, expected)) {
+                    throw new RefUpdateException(
+                        "Unable to update " + name + ": expected " + (expected == null ? "no reference" : expected)
+                            + ", but found " + (current == null ? "none" : current.getTarget()) + "."
+                    );
+                }
+            }
+            Files.writeString(lock.getPath(), reference.toString(), StandardCharsets.UTF_8);
+            lock.commit();
+        }
+        // The new file is racy, so it's read again rather than cached.
+        loose.remove(name);
+    }
+
+    /**
+     * Reads the loose references whose names start with {@code prefix}.
+     */
+    private TreeMap<String, Reference> readLoose(String prefix) throws IOException {
+        TreeMap<String, Reference> result = new TreeMap<>(PackedRefs.ORDER);
+        Path root = gitDirectory.resolve(prefix);
+        if (!Files.isDirectory(root)) {
+            return result;
+        }
+        try (Stream<Path> stream = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) stream.filter(Files::isRegularFile)::iterator) {
+                String name = gitDirectory.relativize(path).toString();
+                if (!name.endsWith(LockFile.SUFFIX)) {
+                    Reference reference = read(name);
+                    if (reference != null) {
+                        result.put(name, reference);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merges the sorted loose references into the packed ones.
+     */
+    private static final class Merger implements PackedRefs.Visitor {
+        private final Iterator<Reference> loose;
+        private final Visitor visitor;
+        private Reference next;
+
+        public Merger(Iterator<Reference> loose, Visitor visitor) {
+            this.loose = loose;
+            this.visitor = visitor;
+            this.next = loose.hasNext() ? loose.next() : null;
+        }
+
+        /**
+         * Visits the loose references that come before {@code name}, if any,
+         * and returns whether there is one named {@code name}.
+         */
+        private boolean advance(String name) throws IOException {
+            while (next != null) {
+                int comparison = name == null ? -1 : PackedRefs.ORDER.compare(next.getName(), name);
+                if (comparison > 0) {
+                    return false;
+                }
+                visitor.visit(next);
+                next = loose.hasNext() ? loose.next() : null;
+                if (comparison == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void visit(String name, ObjectId id) throws IOException {
+            if (!advance(name)) {
+                visitor.visit(new Reference(name, id));
+            }
+        }
+
+        public void finish() throws IOException {
+            advance(null);
+        }
+    }
+
+    /**
+     * Visits the references whose names start with {@code prefix} (e.g.,
+     * {@code "refs/heads/"}), in {@link PackedRefs#ORDER}.
+     *
+     * <p>The loose references are listed up front, but the packed ones are
+     * streamed from the mapped file.
+     */
+    public void forEach(String prefix, Visitor visitor) throws IOException {
+        Merger merger = new Merger(readLoose(prefix).values().iterator(), visitor);
+        PackedRefs refs = getPacked();
+        if (refs != null) {
+            refs.forEach(prefix, merger);
+        }
+        merger.finish();
+    }
+
+    /**
+     * Moves the loose references below {@code refs/} into {@code packed-refs},
+     * like {@code git pack-refs --all}.
+     *
+     * <p>Symbolic references stay loose. {@code packed-refs} is replaced under
+     * its lock, and each loose file is removed under its own lock, and only if
+     * it still holds what was packed; references that are locked by other
+     * updates are simply left loose.
+     */
+    public synchronized void pack() throws IOException {
+        Map<String, Reference> looseRefs = readLoose(REFERENCE_PREFIX);
+        looseRefs.values().removeIf(Reference::isSymbolic);
+        if (looseRefs.isEmpty()) {
+            return;
+        }
+        try (LockFile lock = lock(gitDirectory.resolve(PACKED_REFS))) {
+            Map<String, ObjectId> refs = new TreeMap<>(PackedRefs.ORDER);
+            forEach(REFERENCE_PREFIX, reference -> {
+                if (!reference.isSymbolic()) {
+                    refs.put(reference.getName(), reference.getObjectId());
+                }
+            });
+            PackedRefs.write(lock.getPath(), refs);
+            lock.commit();
+        }
+        for (Reference reference : looseRefs.values()) {
+            Path path = gitDirectory.resolve(reference.getName());
+            LockFile lock;
+            try {
+                lock = lock(path);
+            } catch (RefUpdateException e) {
+                continue;
+            }
+            try (lock) {
+                if (Files.readString(path, StandardCharsets.UTF_8).equals(reference.toString())) {
+                    Files.delete(path);
+                }
+            }
+            loose.remove(reference.getName());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package record;
+
+import java.io.IOException;
+
+/**
+ * Thrown if a reference couldn't be updated because another update got in
+ * the way: either the reference was locked for too long, or it no longer had
+ * the expected value.
+ */
+public class RefUpdateException extends IOException {
+    private static final long serialVersionUID = 5830279271934178163L;
+
+    public RefUpdateException(String message) {
+        super(message);
+    }
+}
@@ -8,22 +8,42 @@ package record;
  */
 public final class Reference {
     private final String name;
-    private final boolean symbolic;
-    private final String target;
+    /**
+     * The name of the reference this one points to, if it's symbolic.
+     */
+    private final String symbolicTarget;
+    /**
+     * The id this reference points to, unless it's symbolic.
+     */
+    private final ObjectId id;
 
     public Reference(String name, Commit commit) {
-        this.name = name;
-        this.symbolic = false;
-        this.target = Base16.encode(commit.getHash());
+        this(name, commit.getId());
+    }
+
+    public Reference(String name, ObjectId target) {
+        this(name, null, target);
     }
 
-    public Reference(String name, boolean symbolic, String target) {
+    /**
+     * @throws FatalParseException If the reference isn't symbolic and
+     *                             {@code target} is not an object id.
+     */
+    public Reference(String name, boolean symbolic, String target) throws FatalParseException {
+        this(name, symbolic ? target : null, symbolic ? null : ObjectId.parse(target));
+    }
+
+    private Reference(String name, String symbolicTarget, ObjectId id) {
         this.name = name;
-        this.symbolic = symbolic;
-        this.target = target;
+        this.symbolicTarget = symbolicTarget;
+        this.id = id;
     }
 
-    public static Reference of(String name, String content) {
+    /**
+     * @throws FatalParseException If the content is neither a symbolic
+     *                             reference nor an object id.
+     */
+    public static Reference of(String name, String content) throws FatalParseException {
         // Remove trailing '\n'.
         content = content.stripTrailing();
         boolean symbolic = content.startsWith("ref: ");
@@ -35,15 +55,30 @@ public final class Reference {
     }
 
     public boolean isSymbolic() {
-        return symbolic;
+        return symbolicTarget != null;
     }
 
+    /**
+     * @return The name of the reference that this one points to if it's
+     *         symbolic, and the Base16-encoded id otherwise.
+     */
     public String getTarget() {
-        return target;
+        return symbolicTarget != null ? symbolicTarget : id.toString();
+    }
+
+    /**
+     * @return The id of the object that the reference points to.
+     * @throws IllegalStateException If the reference is symbolic.
+     */
+    public ObjectId getObjectId() {
+        if (symbolicTarget != null) {
+            throw new IllegalStateException("Symbolic references don't point to objects.");
+        }
+        return id;
     }
 
     @Override
     public String toString() {
-        return symbolic ? "ref: " + target + "\n" : target + "\n";
+        return symbolicTarget != null ? "ref: " + symbolicTarget + "\n" : id + "\n";
     }
 }
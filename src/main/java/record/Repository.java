@@ -1,22 +1,38 @@
 package record;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * A Git repository.
@@ -28,32 +44,58 @@ import java.util.zip.InflaterInputStream;
  */
 public final class Repository {
     private static final String OBJECT_PREFIX = "objects/";
+    private static final String PACK_PREFIX = "objects/pack/";
+    private static final String REFERENCE_PREFIX = "refs/";
     private static final String BRANCH_PREFIX = "refs/heads/";
     private static final String HEAD = "HEAD";
+    private static final String INDEX = "record-index";
+    private static final String COMMIT_GRAPH = "objects/info/commit-graph";
+    /**
+     * What {@link #diff} prints for the id of a missing entry.
+     */
+    private static final String ZERO_ID = "0".repeat(2 * ObjectId.LENGTH);
+    /**
+     * Files larger than this many bytes are streamed into the object store.
+     */
+    private static final long STREAMING_THRESHOLD = 1 << 20;
+    /**
+     * How long to wait for a {@link Watcher} to report changes, in milliseconds.
+     */
+    private static final long WATCHER_TIMEOUT = 1000;
+    /**
+     * The default capacity of the {@link ObjectCache}, in bytes.
+     */
+    private static final long CACHE_CAPACITY = 32 << 20;
 
     private final Path directory;
     private final Path gitDirectory;
+    private final RefDatabase refs;
+    private final ObjectCache cache = new ObjectCache(CACHE_CAPACITY);
+    private List<PackFile> packs = null;
+    private ObjectSet objects = null;
+    private CommitGraph commitGraph = null;
+    private boolean commitGraphLoaded = false;
+    private CompressionPolicy compression = CompressionPolicy.DEFAULT;
+    private int freezeWorkers = 1;
+    private int thawWorkers = 1;
 
     public Repository(Path directory) {
         this.directory = directory;
         this.gitDirectory = directory.resolve(".git");
+        this.refs = new RefDatabase(gitDirectory);
     }
 
     /**
-     * Reads a reference.
+     * Returns the id of the commit that {@code HEAD} points to.
      *
-     * @param name A fully qualified reference name such as {@code "HEAD"} or
-     *             {@code "refs/heads/master"}.
-     */
-    private Reference readReference(String name) throws IOException {
-        return Reference.of(name, Files.readString(gitDirectory.resolve(name), StandardCharsets.UTF_8));
-    }
-
-    /**
-     * Writes a reference.
+     * @throws IllegalStateException If there is no commit yet.
      */
-    private void writeReference(Reference reference) throws IOException {
-        Files.writeString(gitDirectory.resolve(reference.getName()), reference.toString(), StandardCharsets.UTF_8);
+    private ObjectId resolveHead() throws IOException {
+        ObjectId id = refs.resolve(HEAD);
+        if (id == null) {
+            throw new IllegalStateException("HEAD doesn't point to a commit yet.");
+        }
+        return id;
     }
 
     /**
@@ -66,19 +108,130 @@ public final class Repository {
         if (!Files.exists(gitDirectory)) {
             Files.createDirectories(gitDirectory.resolve(OBJECT_PREFIX));
             Files.createDirectories(gitDirectory.resolve(BRANCH_PREFIX));
-            writeReference(new Reference(HEAD, true, BRANCH_PREFIX + "master"));
+            refs.write(new Reference(HEAD, true, BRANCH_PREFIX + "master"));
         }
     }
 
-    private Path getObjectPath(String encodedHash) {
+    private Path getObjectPath(ObjectId id) {
+        String encodedHash = id.toString();
         return gitDirectory
             .resolve(OBJECT_PREFIX)
             .resolve(encodedHash.substring(0, 2))
             .resolve(encodedHash.substring(2));
     }
 
-    private Path getObjectPath(byte[] hash) {
-        return getObjectPath(Base16.encode(hash));
+    /**
+     * Looks for packs in the object store.
+     *
+     * <p>Packs that were already open are kept; packs that have disappeared
+     * (e.g., because of {@link #repack()}) are closed.
+     */
+    private synchronized void scanPacks() throws IOException {
+        Map<Path, PackFile> existing = new HashMap<>();
+        if (packs != null) {
+            for (PackFile pack : packs) {
+                existing.put(pack.getPath(), pack);
+            }
+        }
+        List<PackFile> result = new ArrayList<>();
+        Path packDirectory = gitDirectory.resolve(PACK_PREFIX);
+        if (Files.isDirectory(packDirectory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(packDirectory, "pack-*.idx")) {
+                for (Path index : stream) {
+                    String name = index.getFileName().toString();
+                    PackFile pack = existing.remove(index.resolveSibling(name.substring(0, name.length() - ".idx".length()) + ".pack"));
+                    result.add(pack == null ? new PackFile(index) : pack);
+                }
+            }
+        }
+        for (PackFile pack : existing.values()) {
+            pack.close();
+        }
+        packs = result;
+    }
+
+    /**
+     * Returns the packs in the object store, looking for them on first use.
+     */
+    private synchronized List<PackFile> getPacks() throws IOException {
+        if (packs == null) {
+            scanPacks();
+        }
+        return packs;
+    }
+
+    /**
+     * Returns the pack that contains {@code id}, or {@code null}.
+     *
+     * <p>If none of the known packs contains the object, the object store is
+     * scanned for new packs once, because another process may have repacked.
+     */
+    private PackFile findPack(ObjectId id) throws IOException {
+        List<PackFile> known = getPacks();
+        for (PackFile pack : known) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        synchronized (this) {
+            if (packs == known) {
+                scanPacks();
+            }
+            known = packs;
+        }
+        for (PackFile pack : known) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    private boolean isPacked(ObjectId id) throws IOException {
+        for (PackFile pack : getPacks()) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the objects in the object store, creating the set on first use.
+     */
+    private synchronized ObjectSet getObjects() {
+        if (objects == null) {
+            objects = new ObjectSet(gitDirectory.resolve(OBJECT_PREFIX), this::isPacked);
+        }
+        return objects;
+    }
+
+    /**
+     * Starts a batch of object writes.
+     */
+    private ObjectBatch newBatch() {
+        return new ObjectBatch(gitDirectory.resolve(OBJECT_PREFIX), getObjects());
+    }
+
+    /**
+     * Opens a {@link LooseObject} in the object store.
+     *
+     * <p>Note that the returned stream yields the inflated (i.e.,
+     * decompressed) content. Objects that aren't loose are looked up in the
+     * packs.
+     *
+     * @param id The object's id.
+     */
+    private InputStream openObject(ObjectId id) throws IOException {
+        try {
+            return Zlib.inflate(new BufferedInputStream(Files.newInputStream(getObjectPath(id))));
+        } catch (NoSuchFileException e) {
+            PackFile pack = findPack(id);
+            if (pack == null) {
+                throw e;
+            }
+            return pack.open(id);
+        }
     }
 
     /**
@@ -86,57 +239,355 @@ public final class Repository {
      *
      * <p>Note that this returns the inflated (i.e., decompressed) content.
      *
-     * @param encodedHash The object's Base16-encoded hash.
+     * @param id The object's id.
      */
-    private byte[] readObject(String encodedHash) throws IOException {
-        try (InputStream file = Files.newInputStream(getObjectPath(encodedHash)); InflaterInputStream stream = new InflaterInputStream(file)) {
+    private byte[] readObject(ObjectId id) throws IOException {
+        try (InputStream stream = Zlib.inflate(new BufferedInputStream(Files.newInputStream(getObjectPath(id))))) {
             return stream.readAllBytes();
+        } catch (NoSuchFileException e) {
+            PackFile pack = findPack(id);
+            if (pack == null) {
+                throw e;
+            }
+            return pack.read(id);
         }
     }
 
     /**
-     * Reads a {@link LooseObject} from the object store.
+     * Reads a {@link Tree}, consulting the {@link ObjectCache} first.
      *
-     * <p>Note that this returns the inflated (i.e., decompressed) content.
+     * @param id The tree's id.
+     */
+    private Tree readTree(ObjectId id) throws IOException {
+        Tree tree = (Tree) cache.get(id);
+        if (tree == null) {
+            byte[] content = readObject(id);
+            tree = Tree.parse(content);
+            cache.put(id, tree, content.length);
+        }
+        return tree;
+    }
+
+    /**
+     * Reads a {@link Commit}, consulting the {@link ObjectCache} first.
+     *
+     * @param id The commit's id.
+     */
+    private Commit readCommit(ObjectId id) throws IOException {
+        Commit commit = (Commit) cache.get(id);
+        if (commit == null) {
+            byte[] content = readObject(id);
+            commit = Commit.parse(content);
+            cache.put(id, commit, content.length);
+        }
+        return commit;
+    }
+
+    /**
+     * Returns the commit-graph, opening it on first use.
+     *
+     * @return The commit-graph, or {@code null} if there is none.
+     */
+    private synchronized CommitGraph getCommitGraph() throws IOException {
+        if (!commitGraphLoaded) {
+            Path path = gitDirectory.resolve(COMMIT_GRAPH);
+            commitGraph = Files.exists(path) ? new CommitGraph(path) : null;
+            commitGraphLoaded = true;
+        }
+        return commitGraph;
+    }
+
+    /**
+     * Replaces the commit-graph: it's written to its lock file, which is
+     * then moved into place, so readers never map a partially written graph.
+     */
+    private synchronized void writeCommitGraph(CommitGraphWriter writer) throws IOException {
+        Path path = gitDirectory.resolve(COMMIT_GRAPH);
+        Files.createDirectories(path.getParent());
+        try (LockFile lock = LockFile.acquire(path)) {
+            writer.write(lock.getPath());
+            lock.commit();
+        } finally {
+            commitGraphLoaded = false;
+        }
+    }
+
+    private History getHistory() throws IOException {
+        return new History(this::readObject, getCommitGraph());
+    }
+
+    /**
+     * Sets the capacity of the cache of parsed trees and commits.
      *
-     * @param hash The object's hash.
+     * @param capacity The maximal total size of the cached objects' inflated
+     *                 content, in bytes.
+     */
+    public void setCacheCapacity(long capacity) {
+        cache.setCapacity(capacity);
+    }
+
+    /**
+     * Returns how often a tree or commit was found in the cache.
      */
-    private byte[] readObject(byte[] hash) throws IOException {
-        return readObject(Base16.encode(hash));
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * Returns how often a tree or commit had to be read from the object store.
+     */
+    public long getCacheMisses() {
+        return cache.getMisses();
     }
 
     /**
      * Writes a {@link LooseObject} to the object store.
      *
-     * <p>Note that this deflates (i.e., compresses) the content.
+     * <p>Note that this deflates (i.e., compresses) the content. The object is
+     * serialized only once, into the calling thread's {@link ObjectBuffer},
+     * and it is published atomically when {@code batch} is committed.
+     *
+     * @return The object's id.
      */
-    private void writeObject(LooseObject object) throws IOException {
-        Path path = getObjectPath(object.getHash());
-        if (!Files.exists(path)) {
-            Files.createDirectories(path.getParent());
-            try (OutputStream file = Files.newOutputStream(path); DeflaterOutputStream stream = new DeflaterOutputStream(file)) {
-                stream.write(object.getBytes());
+    private ObjectId writeObject(ObjectBatch batch, LooseObject object) throws IOException {
+        ObjectBuffer buffer = ObjectBuffer.get();
+        buffer.writeObject(object);
+        return writeBuffer(batch, buffer, null);
+    }
+
+    /**
+     * Writes the object in {@code buffer} to the object store.
+     *
+     * @param name The name of the file that the object comes from, or
+     *             {@code null}; the {@link CompressionPolicy} may take it
+     *             into account.
+     * @return The object's id.
+     */
+    private ObjectId writeBuffer(ObjectBatch batch, ObjectBuffer buffer, String name) throws IOException {
+        int bodyStart = buffer.getBodyStart();
+        int length = buffer.getEnd() - bodyStart;
+        int level = compression.getLevel(buffer.getType(), name, buffer.getArray(), bodyStart, length, length);
+        return ObjectWriter.write(gitDirectory.resolve(OBJECT_PREFIX), batch, buffer, level);
+    }
+
+    /**
+     * Writes the content of {@code file} to the object store as a {@link Blob}.
+     *
+     * <p>Unlike {@link #writeBuffer}, this streams the file; its content is
+     * never held in memory.
+     *
+     * @param size The file's size.
+     * @return The blob's id.
+     */
+    private ObjectId writeBlob(ObjectBatch batch, Path file, long size) throws IOException {
+        try (InputStream stream = Files.newInputStream(file)) {
+            byte[] sample = new byte[CompressionPolicy.SAMPLE_LENGTH];
+            int sampleLength = stream.readNBytes(sample, 0, sample.length);
+            int level = compression.getLevel("blob", file.getFileName().toString(), sample, 0, sampleLength, size);
+            try (ObjectWriter writer = new ObjectWriter(gitDirectory.resolve(OBJECT_PREFIX), batch, "blob", size, level)) {
+                writer.write(sample, 0, sampleLength);
+                stream.transferTo(writer);
+                return writer.publish();
             }
-            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("r--r--r--"));
         }
     }
 
-    private class TreeFreezer extends SimpleFileVisitor<Path> {
-        private final Path target;
-        private final Map<Path, TreeNode> store = new HashMap<>();
-        private String result = null;
+    /**
+     * A path that has been turned into a {@link TreeNode}.
+     */
+    private static final class Frozen {
+        private final TreeNode node;
+        private final boolean changed;
+
+        /**
+         * @param node    The tree node.
+         * @param changed Whether the node differs from what the {@link Index}
+         *                recorded for its path.
+         */
+        public Frozen(TreeNode node, boolean changed) {
+            this.node = node;
+            this.changed = changed;
+        }
+    }
+
+    /**
+     * Turns files and directories into objects, consulting the {@link Index}.
+     *
+     * <p>Instances are safe to use from multiple threads, as long as every
+     * directory is frozen after all of its entries.
+     */
+    private class TreeFreezer {
+        private final Index previous;
+        private final Index next = new Index();
+        /**
+         * The directories that have to be walked, or {@code null} if all of
+         * them have to.
+         */
+        private final Set<String> walked;
+        private final Watcher.Changes changes;
+        private final ObjectBatch batch;
+
+        /**
+         * @param changes What the {@link Watcher} saw change.
+         * @param batch   The batch to write objects to.
+         */
+        public TreeFreezer(Index previous, Watcher.Changes changes, ObjectBatch batch) {
+            this.previous = previous;
+            this.changes = changes;
+            this.batch = batch;
+            Set<String> changed = changes.getDirectories();
+            if (changed == null) {
+                this.walked = null;
+            } else {
+                // A directory has to be walked if it changed itself, or if
+                // one of the directories below it did.
+                this.walked = new HashSet<>();
+                for (String key : changed) {
+                    walked.add(key);
+                    for (int i = key.lastIndexOf('/'); i != -1; i = key.lastIndexOf('/', i - 1)) {
+                        walked.add(key.substring(0, i));
+                    }
+                    walked.add("");
+                }
+            }
+        }
+
+        /**
+         * Returns the index describing the frozen working directory.
+         */
+        public Index getIndex() {
+            return next;
+        }
+
+        /**
+         * Returns what the {@link Watcher} reported before the freeze.
+         */
+        public Watcher.Changes getChanges() {
+            return changes;
+        }
+
+        private String getKey(Path path) {
+            return directory.relativize(path).toString();
+        }
+
+        /**
+         * Records {@code node} in the next index.
+         *
+         * @param clean Whether the node was taken from the previous index.
+         */
+        private Frozen record(Path path, Index.Stat stat, TreeNode node, boolean clean) {
+            String key = getKey(path);
+            boolean changed = !clean && !Index.sameObject(previous.get(key), stat, node.getObjectId());
+            next.put(key, stat, node.getObjectId());
+            return new Frozen(node, changed);
+        }
+
+        /**
+         * Freezes a file or symbolic link.
+         */
+        public Frozen freezeFile(Path file) throws IOException {
+            Index.Stat stat = Index.Stat.of(file);
+            ObjectId id = previous.lookup(getKey(file), stat);
+            boolean clean = id != null;
+            if (Files.isSymbolicLink(file)) {
+                if (!clean) {
+                    id = writeObject(batch, new Blob(Files.readSymbolicLink(file).toString().getBytes(StandardCharsets.UTF_8)));
+                }
+                return record(file, stat, new SymbolicLink(file.getFileName().toString(), id), clean);
+            }
+            if (!clean) {
+                if (stat.getSize() > STREAMING_THRESHOLD) {
+                    id = writeBlob(batch, file, stat.getSize());
+                } else {
+                    ObjectBuffer buffer = ObjectBuffer.get();
+                    buffer.writeBlob(file, stat.getSize());
+                    id = writeBuffer(batch, buffer, file.getFileName().toString());
+                }
+            }
+            return record(file, stat, new File(file.getFileName().toString(), Files.isExecutable(file), id), clean);
+        }
+
+        /**
+         * Freezes a directory without walking it, if the {@link Watcher} saw
+         * no changes in it or below it.
+         *
+         * @return The frozen directory, or {@code null} if it has to be walked.
+         */
+        public Frozen reuseDirectory(Path dir) throws IOException {
+            String key = getKey(dir);
+            if (walked == null || walked.contains(key)) {
+                return null;
+            }
+            Index.Stat stat = Index.Stat.of(dir);
+            ObjectId id = previous.lookup(key, stat);
+            if (id == null) {
+                return null;
+            }
+            next.putAllBelow(previous, key);
+            return record(dir, stat, new Directory(dir.getFileName().toString(), id), true);
+        }
 
-        public TreeFreezer(Path target) {
-            this.target = target;
+        /**
+         * Freezes a directory.
+         *
+         * <p>A directory whose entries are all unchanged reuses its previous
+         * tree.
+         *
+         * @param children The directory's frozen entries, excluding hidden ones.
+         */
+        public Frozen freezeDirectory(Path dir, List<Frozen> children) throws IOException {
+            Index.Stat stat = Index.Stat.of(dir);
+            boolean dirty = children.stream().anyMatch(child -> child.changed);
+            ObjectId id = dirty ? null : previous.lookup(getKey(dir), stat);
+            boolean clean = id != null;
+            if (!clean) {
+                List<TreeNode> nodes = new ArrayList<>(children.size());
+                for (Frozen child : children) {
+                    nodes.add(child.node);
+                }
+                id = writeObject(batch, new Tree(nodes));
+            }
+            return record(dir, stat, new Directory(dir.getFileName().toString(), id), clean);
         }
+    }
 
-        public String getResult() {
+    /**
+     * Freezes the working directory on the current thread.
+     */
+    private static class SerialFreezer extends SimpleFileVisitor<Path> {
+        private final TreeFreezer freezer;
+        private final Map<Path, List<Frozen>> store = new HashMap<>();
+        private Frozen result = null;
+
+        public SerialFreezer(TreeFreezer freezer) {
+            this.freezer = freezer;
+        }
+
+        public Frozen getResult() {
             return result;
         }
 
         @Override
         public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-            return Files.isHidden(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            if (Files.isHidden(dir)) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            Frozen reused = freezer.reuseDirectory(dir);
+            if (reused != null) {
+                add(dir, reused);
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            store.put(dir, new ArrayList<>());
+            return FileVisitResult.CONTINUE;
+        }
+
+        private void add(Path dir, Frozen frozen) {
+            List<Frozen> siblings = store.get(dir.getParent());
+            if (siblings == null) {
+                result = frozen;
+            } else {
+                siblings.add(frozen);
+            }
         }
 
         @Override
@@ -144,60 +595,147 @@ public final class Repository {
             if (exc != null) {
                 throw exc;
             }
-            List<TreeNode> children = new ArrayList<>();
-            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
-                for (Path child : stream) {
-                    if (!Files.isHidden(child)) {
-                        TreeNode node = store.get(child);
-                        if (node == null) {
-                            throw new RuntimeException("The algorithm is broken!");
-                        }
-                        children.add(node);
-                        store.remove(child);
-                    }
-                }
-            }
-            Tree tree = new Tree(children);
-            writeObject(tree);
-            byte[] treeHash = tree.getHash();
-            store.put(dir, new Directory(dir.getFileName().toString(), treeHash));
-            if (dir.equals(target)) {
-                result = Base16.encode(treeHash);
-            }
+            add(dir, freezer.freezeDirectory(dir, store.remove(dir)));
             return FileVisitResult.CONTINUE;
         }
 
         @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
             if (!Files.isHidden(file)) {
-                Blob blob;
-                TreeNode node;
-                if (Files.isSymbolicLink(file)) {
-                    blob = new Blob(Files.readSymbolicLink(file).toString().getBytes(StandardCharsets.UTF_8));
-                    node = new SymbolicLink(file.getFileName().toString(), blob.getHash());
-                } else {
-                    blob = new Blob(Files.readAllBytes(file));
-                    node = new File(file.getFileName().toString(), Files.isExecutable(file), blob.getHash());
-                }
-                writeObject(blob);
-                store.put(file, node);
+                store.get(file.getParent()).add(freezer.freezeFile(file));
             }
             return FileVisitResult.CONTINUE;
         }
     }
 
+    /**
+     * Freezes a path on a {@link ForkJoinPool}, forking a subtask for every
+     * directory entry.
+     *
+     * <p>Since {@link Tree}s sort their children, the result is the same as
+     * that of {@link SerialFreezer}.
+     */
+    private static class FreezeTask extends RecursiveTask<Frozen> {
+        private static final long serialVersionUID = 5473102582296375307L;
+
+        private final transient TreeFreezer freezer;
+        private final transient Path path;
+
+        public FreezeTask(TreeFreezer freezer, Path path) {
+            this.freezer = freezer;
+            this.path = path;
+        }
+
+        @Override
+        protected Frozen compute() {
+            try {
+                if (Files.isHidden(path)) {
+                    return null;
+                }
+                if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    return freezer.freezeFile(path);
+                }
+                Frozen reused = freezer.reuseDirectory(path);
+                if (reused != null) {
+                    return reused;
+                }
+                List<FreezeTask> tasks = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                    for (Path child : stream) {
+                        tasks.add(new FreezeTask(freezer, child));
+                    }
+                }
+                List<Frozen> children = new ArrayList<>(tasks.size());
+                for (FreezeTask task : invokeAll(tasks)) {
+                    Frozen child = task.join();
+                    if (child != null) {
+                        children.add(child);
+                    }
+                }
+                return freezer.freezeDirectory(path, children);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Sets how {@link #commit} compresses the objects it writes.
+     */
+    public void setCompressionPolicy(CompressionPolicy compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Sets the number of threads used by {@link #commit}.
+     *
+     * @param workers The number of threads; {@code 1} (the default) freezes
+     *                the working directory on the calling thread.
+     */
+    public void setFreezeWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Need at least one worker.");
+        }
+        this.freezeWorkers = workers;
+    }
+
+    /**
+     * Sets the number of threads used by {@link #checkout} to write files.
+     *
+     * @param workers The number of threads; {@code 1} (the default) writes
+     *                the files on the calling thread.
+     */
+    public void setThawWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Need at least one worker.");
+        }
+        this.thawWorkers = workers;
+    }
+
     /**
      * Takes a snapshot of the working directory.
      *
      * <p>Note that this writes the resulting Git objects to the file system.
+     * Files and directories whose stat data matches the {@link Index} are not
+     * read again; the index is updated afterwards. If a {@link Watcher} is
+     * running, directories that it saw no changes in aren't even walked.
      *
-     * @return The Base16-encoded hash of the {@link Tree} corresponding to the
-     *         current state of the working directory.
+     * <p>The objects are only added to the freezer's batch; the caller has to
+     * commit the batch before calling {@link #writeIndex}, because the index
+     * must never refer to objects that may not have been written.
+     *
+     * @return The id of the {@link Tree} corresponding to the current state of
+     *         the working directory.
+     */
+    private ObjectId freezeTree(TreeFreezer freezer) throws IOException {
+        Frozen result;
+        if (freezeWorkers > 1) {
+            ForkJoinPool pool = new ForkJoinPool(freezeWorkers);
+            try {
+                result = pool.invoke(new FreezeTask(freezer, directory));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            SerialFreezer visitor = new SerialFreezer(freezer);
+            Files.walkFileTree(directory, visitor);
+            result = visitor.getResult();
+        }
+        return result == null ? null : result.node.getObjectId();
+    }
+
+    private TreeFreezer newFreezer(ObjectBatch batch) throws IOException {
+        return new TreeFreezer(Index.read(gitDirectory.resolve(INDEX)), Watcher.sync(directory, WATCHER_TIMEOUT), batch);
+    }
+
+    /**
+     * Saves the index of a freeze whose objects have been committed.
      */
-    private String freezeTree() throws IOException {
-        TreeFreezer visitor = new TreeFreezer(directory);
-        Files.walkFileTree(directory, visitor);
-        return visitor.getResult();
+    private void writeIndex(TreeFreezer freezer) throws IOException {
+        freezer.getIndex().write(gitDirectory.resolve(INDEX));
+        Watcher.acknowledge(directory, freezer.getChanges());
     }
 
     /**
@@ -207,21 +745,37 @@ public final class Repository {
      * working directory, writes the commit object to the object store, and
      * then advances {@code HEAD}.
      *
+     * <p>All new objects are made durable together before {@code HEAD} is
+     * advanced, so a crash never leaves a branch pointing at a commit whose
+     * objects are missing or truncated.
+     *
+     * <p>The branch is only advanced if it still points to the new commit's
+     * parent; if another commit to the same branch got there first, this one
+     * fails instead of discarding the other one. Its objects are written but
+     * unreferenced. Commits to different branches don't interfere.
+     *
      * @param committer Who is creating the commit.
      * @param timestamp When the commit is being created.
      * @param message   The commit message.
-     * @throws IOException If one of the steps failed.
+     * @throws RefUpdateException If the branch was advanced concurrently.
+     * @throws IOException        If one of the steps failed.
      */
     public void commit(User committer, Timestamp timestamp, String message) throws IOException {
-        Reference head = readReference(HEAD);
-        String resolvedName = head.isSymbolic() ? head.getTarget() : HEAD;
-        List<String> parents = new ArrayList<>();
-        if (Files.exists(gitDirectory.resolve(resolvedName))) {
-            parents.add(readReference(resolvedName).getTarget());
+        String resolvedName = refs.follow(HEAD);
+        List<ObjectId> parents = new ArrayList<>();
+        ObjectId parent = refs.resolve(resolvedName);
+        if (parent != null) {
+            parents.add(parent);
         }
-        Commit commit = new Commit(freezeTree(), parents, committer, timestamp, committer, timestamp, message);
-        writeObject(commit);
-        writeReference(new Reference(resolvedName, commit));
+        ObjectId id;
+        try (ObjectBatch batch = newBatch()) {
+            TreeFreezer freezer = newFreezer(batch);
+            Commit commit = new Commit(freezeTree(freezer), parents, committer, timestamp, committer, timestamp, message);
+            id = writeObject(batch, commit);
+            batch.commit();
+            writeIndex(freezer);
+        }
+        refs.compareAndSet(new Reference(resolvedName, id), parent);
     }
 
     /**
@@ -231,23 +785,454 @@ public final class Repository {
      * @throws IOException If the new branch couldn't be created.
      */
     public void branch(String name) throws IOException {
-        Reference head = readReference(HEAD);
-        String encodedHash = head.isSymbolic() ? readReference(head.getTarget()).getTarget() : head.getTarget();
-        writeReference(new Reference(BRANCH_PREFIX + name, false, encodedHash));
+        refs.write(new Reference(BRANCH_PREFIX + name, resolveHead()));
+    }
+
+    /**
+     * Prints the branches, sorted by name, one per line; the current branch is
+     * marked with {@code "* "}, the others are indented by two spaces.
+     *
+     * <p>Packed branches are streamed from the memory-mapped
+     * {@code packed-refs} file, so the output starts right away.
+     */
+    public void listBranches(Appendable out) throws IOException {
+        String current = refs.follow(HEAD);
+        refs.forEach(BRANCH_PREFIX, reference -> {
+            String name = reference.getName();
+            out.append(name.equals(current) ? "* " : "  ");
+            out.append(name, BRANCH_PREFIX.length(), name.length());
+            out.append('\n');
+        });
+    }
+
+    /**
+     * Resolves a revision to the id of a commit.
+     *
+     * @param name {@code "HEAD"}, a branch name or a Base16-encoded commit hash.
+     * @throws FatalParseException If {@code name} is neither a reference nor a
+     *                             commit hash.
+     */
+    private ObjectId resolveRevision(String name) throws IOException {
+        if (name.equals(HEAD)) {
+            return resolveHead();
+        }
+        ObjectId id = refs.resolve(BRANCH_PREFIX + name);
+        return id != null ? id : ObjectId.parse(name);
+    }
+
+    /**
+     * Prints the history of {@code name}, newest commit first, in the format
+     * of {@code git log}.
+     *
+     * <p>Commits are read and printed one at a time, so the history is never
+     * held in memory, and nothing beyond the {@code limit}th commit is read.
+     *
+     * @param name  {@code "HEAD"}, a branch name or a Base16-encoded commit hash.
+     * @param limit The maximal number of commits to print.
+     * @param out   Where to print to.
+     * @throws IOException If one of the commits couldn't be read.
+     */
+    public void log(String name, long limit, Appendable out) throws IOException {
+        RevisionWalker walker = new RevisionWalker(getHistory());
+        walker.push(resolveRevision(name));
+        RevisionWalker.Revision revision;
+        for (long i = 0; i < limit && (revision = walker.next()) != null; ++i) {
+            CommitView commit = revision.getCommit();
+            if (i > 0) {
+                out.append('\n');
+            }
+            out
+                .append("commit ").append(revision.getId().toString()).append('\n')
+                .append("Author: ").append(commit.getAuthor().toString()).append('\n')
+                .append("Date:   ").append(commit.getAuthorDate().toDisplayString()).append('\n')
+                .append('\n');
+            for (String line : (Iterable<String>) commit.getMessage().lines()::iterator) {
+                out.append("    ").append(line).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Prints the paths that differ between two commits.
+     *
+     * <p>Only the trees on the paths to changed files are read (see
+     * {@link TreeDiff}). Every change is printed on its own line, either in
+     * the format of {@code git diff --raw}, e.g.,
+     * <pre><code>
+     * :100644 100755 78981922613b2afb6025042ff6bd878ac1994e85 78981922613b2afb6025042ff6bd878ac1994e85 M	a
+     * </code></pre>
+     * or, with {@code nameStatus}, in the format of
+     * {@code git diff --name-status}, e.g., {@code "M\ta"}.
+     *
+     * @param from       {@code "HEAD"}, a branch name or a Base16-encoded commit hash.
+     * @param to         {@code "HEAD"}, a branch name or a Base16-encoded commit hash.
+     * @param nameStatus Whether to only print the status and path of each change.
+     * @param out        Where to print to.
+     * @throws IOException If one of the objects couldn't be read.
+     */
+    public void diff(String from, String to, boolean nameStatus, Appendable out) throws IOException {
+        Tree oldTree = readTree(readCommit(resolveRevision(from)).getTree());
+        Tree newTree = readTree(readCommit(resolveRevision(to)).getTree());
+        new TreeDiff(this::readTree).diff(oldTree, newTree, change -> {
+            if (!nameStatus) {
+                TreeNode oldNode = change.getOldNode();
+                TreeNode newNode = change.getNewNode();
+                out
+                    .append(String.format(":%06o %06o ", oldNode == null ? 0 : oldNode.getType().getBits(), newNode == null ? 0 : newNode.getType().getBits()))
+                    .append(oldNode == null ? ZERO_ID : oldNode.getObjectId().toString()).append(' ')
+                    .append(newNode == null ? ZERO_ID : newNode.getObjectId().toString()).append(' ');
+            }
+            out.append(change.getStatus().getCode()).append('\t').append(change.getPath()).append('\n');
+        });
+    }
+
+    /**
+     * Returns whether {@code ancestor} is {@code descendant} or one of its
+     * ancestors.
+     *
+     * @param ancestor   {@code "HEAD"}, a branch name or a Base16-encoded commit hash.
+     * @param descendant {@code "HEAD"}, a branch name or a Base16-encoded commit hash.
+     * @throws IOException If one of the commits couldn't be read.
+     */
+    public boolean isAncestor(String ancestor, String descendant) throws IOException {
+        return getHistory().isAncestor(resolveRevision(ancestor), resolveRevision(descendant));
+    }
+
+    /**
+     * Finds a best common ancestor of two commits.
+     *
+     * @param a {@code "HEAD"}, a branch name or a Base16-encoded commit hash.
+     * @param b {@code "HEAD"}, a branch name or a Base16-encoded commit hash.
+     * @return The common ancestor's id, or {@code null} if there is none.
+     * @throws IOException If one of the commits couldn't be read.
+     */
+    public ObjectId mergeBase(String a, String b) throws IOException {
+        return getHistory().findMergeBase(resolveRevision(a), resolveRevision(b));
+    }
+
+    /**
+     * Returns the ids of the objects that references point to.
+     */
+    private List<ObjectId> findReferencedObjects() throws IOException {
+        List<ObjectId> result = new ArrayList<>();
+        Reference head = refs.read(HEAD);
+        if (!head.isSymbolic()) {
+            result.add(head.getObjectId());
+        }
+        refs.forEach(REFERENCE_PREFIX, reference -> {
+            if (!reference.isSymbolic()) {
+                result.add(reference.getObjectId());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the ids of the commits that references point to, peeling
+     * annotated tags.
+     */
+    private List<ObjectId> findReferencedCommits() throws IOException {
+        List<ObjectId> result = new ArrayList<>();
+        for (ObjectId id : findReferencedObjects()) {
+            String type = getType(readObjectHeader(id));
+            while (type.equals("tag")) {
+                id = getTagTarget(readObject(id));
+                type = getType(readObjectHeader(id));
+            }
+            if (type.equals("commit")) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the header of an object, e.g., {@code "blob 42"}, without reading
+     * the body.
+     */
+    private String readObjectHeader(ObjectId id) throws IOException {
+        try (InputStream stream = openObject(id)) {
+            return LooseObject.readHeader(stream);
+        }
+    }
+
+    private static String getType(String header) {
+        return header.substring(0, header.indexOf(' '));
+    }
+
+    private static long getLength(String header) {
+        return Long.parseLong(header.substring(header.indexOf(' ') + 1));
+    }
+
+    /**
+     * Returns the id of the object that an annotated tag points to.
+     *
+     * @param content The tag's content; its body starts with the line
+     *                {@code object <hash>}.
+     */
+    private static ObjectId getTagTarget(byte[] content) throws FatalParseException {
+        int i = FirstZero.in(content) + 1;
+        byte[] prefix = "object ".getBytes(StandardCharsets.UTF_8);
+        if (content.length < i + prefix.length + 2 * ObjectId.LENGTH
+            || !Arrays.equals(content, i, i + prefix.length, prefix, 0, prefix.length)) {
+            throw new FatalParseException("Malformed tag.");
+        }
+        return ObjectId.parse(content, i + prefix.length);
+    }
+
+    /**
+     * Reads the body of an object, i.e., its content without the header.
+     */
+    private byte[] readObjectBody(ObjectId id) throws IOException {
+        byte[] content = readObject(id);
+        return Arrays.copyOfRange(content, FirstZero.in(content) + 1, content.length);
+    }
+
+    /**
+     * Returns all objects that are reachable from a reference: first the
+     * annotated tags, then the commits, then their trees and blobs.
+     */
+    private List<DeltaSearch.Candidate> findReachableObjects() throws IOException {
+        List<DeltaSearch.Candidate> result = new ArrayList<>();
+        ObjectIdMap<Boolean> seen = new ObjectIdMap<>();
+        Deque<ObjectId> commits = new ArrayDeque<>();
+        Deque<Map.Entry<ObjectId, String>> trees = new ArrayDeque<>();
+        for (ObjectId id : findReferencedObjects()) {
+            String header = readObjectHeader(id);
+            // Annotated tags are packed, and so is what they point to.
+            while (getType(header).equals("tag") && seen.put(id, true) == null) {
+                result.add(new DeltaSearch.Candidate(id, "tag", "", getLength(header)));
+                id = getTagTarget(readObject(id));
+                header = readObjectHeader(id);
+            }
+            switch (getType(header)) {
+                case "commit":
+                    commits.add(id);
+                    break;
+                case "tree":
+                    trees.add(Map.entry(id, ""));
+                    break;
+                case "blob":
+                    if (seen.put(id, true) == null) {
+                        result.add(new DeltaSearch.Candidate(id, "blob", "", getLength(header)));
+                    }
+                    break;
+                default:
+                    // A tag that has been seen already.
+                    break;
+            }
+        }
+        while (!commits.isEmpty()) {
+            ObjectId id = commits.pop();
+            if (seen.put(id, true) == null) {
+                byte[] content = readObject(id);
+                Commit commit = Commit.parse(content);
+                result.add(new DeltaSearch.Candidate(id, "commit", "", content.length - FirstZero.in(content) - 1));
+                commits.addAll(commit.getParents());
+                trees.add(Map.entry(commit.getTree(), ""));
+            }
+        }
+        while (!trees.isEmpty()) {
+            Map.Entry<ObjectId, String> tree = trees.pop();
+            if (seen.put(tree.getKey(), true) == null) {
+                byte[] content = readObject(tree.getKey());
+                result.add(new DeltaSearch.Candidate(tree.getKey(), "tree", tree.getValue(), content.length - FirstZero.in(content) - 1));
+                // Only names and hashes are needed, so the entries aren't materialized.
+                TreeView view = TreeView.parse(content);
+                for (int i = 0; i < view.size(); ++i) {
+                    ObjectId id = view.getObjectId(i);
+                    if (view.getType(i) == TreeNodeType.DIRECTORY) {
+                        trees.push(Map.entry(id, view.getName(i)));
+                    } else if (seen.put(id, true) == null) {
+                        result.add(new DeltaSearch.Candidate(id, "blob", view.getName(i), getLength(readObjectHeader(id))));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds an object to a pack, preceded by its delta base if necessary.
+     */
+    private void writePacked(PackWriter writer, ObjectId id, ObjectIdMap<DeltaSearch.Result> deltas, ObjectIdMap<Boolean> written) throws IOException {
+        if (written.put(id, true) != null) {
+            return;
+        }
+        DeltaSearch.Result delta = deltas.get(id);
+        if (delta == null) {
+            // Streamed, so that objects needn't fit into memory.
+            try (InputStream stream = openObject(id)) {
+                String header = LooseObject.readHeader(stream);
+                writer.write(id, getType(header), getLength(header), stream);
+            }
+        } else {
+            writePacked(writer, delta.getBase(), deltas, written);
+            writer.writeDelta(id, delta.getBase(), delta.getDelta());
+        }
+    }
+
+    /**
+     * Packs all reachable objects into a single pack.
+     *
+     * <p>Objects are stored as deltas against similar objects where that saves
+     * space (see {@link DeltaSearch}). The new pack replaces all existing
+     * packs; loose objects are left alone (see {@link #gc()}).
+     *
+     * @throws IOException If the pack couldn't be written.
+     */
+    public void repack() throws IOException {
+        List<DeltaSearch.Candidate> reachable = findReachableObjects();
+        ObjectIdMap<DeltaSearch.Result> deltas = DeltaSearch.search(reachable, this::readObjectBody);
+        List<PackFile> existing = getPacks();
+        Path pack = null;
+        if (!reachable.isEmpty()) {
+            try (PackWriter writer = new PackWriter(gitDirectory.resolve(PACK_PREFIX), reachable.size())) {
+                ObjectIdMap<Boolean> written = new ObjectIdMap<>(reachable.size());
+                for (DeltaSearch.Candidate object : reachable) {
+                    writePacked(writer, object.getId(), deltas, written);
+                }
+                pack = writer.finish();
+            }
+        }
+        for (PackFile old : existing) {
+            if (!old.getPath().equals(pack)) {
+                String name = old.getPath().getFileName().toString();
+                // Delete the index first, so that the pack is never used without it.
+                Files.deleteIfExists(old.getPath().resolveSibling(name.substring(0, name.length() - ".pack".length()) + ".idx"));
+                Files.deleteIfExists(old.getPath());
+            }
+        }
+        scanPacks();
+    }
+
+    /**
+     * Packs all reachable objects and removes the loose objects that were
+     * packed; references are packed into {@code packed-refs} as well.
+     *
+     * <p>Loose objects are only deleted once the new pack is durable (see
+     * {@link PackWriter#finish()}), so a crash never loses an object.
+     * Unreachable loose objects are kept. The commit-graph is rewritten to
+     * contain all reachable commits; commits that are already in it aren't
+     * read again.
+     *
+     * @throws IOException If the pack couldn't be written.
+     */
+    public void gc() throws IOException {
+        refs.pack();
+        repack();
+        CommitGraphWriter writer = new CommitGraphWriter();
+        History history = getHistory();
+        Deque<ObjectId> pending = new ArrayDeque<>(findReferencedCommits());
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.pop();
+            if (!writer.contains(id)) {
+                History.Node node = history.lookup(id);
+                writer.add(id, node.getTree(), node.getParents(), node.getCommitTime());
+                pending.addAll(Arrays.asList(node.getParents()));
+            }
+        }
+        if (writer.size() > 0) {
+            writeCommitGraph(writer);
+        }
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(gitDirectory.resolve(OBJECT_PREFIX), "[0-9a-f][0-9a-f]")) {
+            for (Path fanout : directories) {
+                boolean empty = true;
+                try (DirectoryStream<Path> objects = Files.newDirectoryStream(fanout)) {
+                    for (Path object : objects) {
+                        String encodedHash = fanout.getFileName().toString() + object.getFileName();
+                        if (encodedHash.length() == 40 && isPacked(ObjectId.parse(encodedHash))) {
+                            Files.delete(object);
+                        } else {
+                            empty = false;
+                        }
+                    }
+                }
+                if (empty) {
+                    Files.delete(fanout);
+                }
+            }
+        }
+    }
+
+    /**
+     * Performs the file writes of a checkout, either right away or on a pool
+     * of worker threads.
+     *
+     * <p>Directories are always created on the calling thread, before any of
+     * their entries are submitted, so the workers only ever write into
+     * directories that already exist.
+     */
+    private static final class ThawWriter {
+        private interface Write {
+            void run() throws IOException;
+        }
+
+        private final ExecutorService executor;
+        private final List<Future<Void>> pending = new ArrayList<>();
+
+        /**
+         * @param executor The pool to write on, or {@code null} to write on
+         *                 the calling thread.
+         */
+        public ThawWriter(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        public void submit(Write write) throws IOException {
+            if (executor == null) {
+                write.run();
+            } else {
+                pending.add(executor.submit(() -> {
+                    write.run();
+                    return null;
+                }));
+            }
+        }
+
+        /**
+         * Waits for all submitted writes.
+         *
+         * @throws IOException If one of the writes failed.
+         */
+        public void finish() throws IOException {
+            try {
+                for (Future<Void> future : pending) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                for (Future<Void> future : pending) {
+                    future.cancel(false);
+                }
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing files.");
+            }
+        }
     }
 
     private class TreeThawer implements TreeNodeVisitor<IOException> {
+        private final ThawWriter writer;
         private Path currentDirectory;
 
-        public TreeThawer() {
-            this.currentDirectory = directory;
+        public TreeThawer(ThawWriter writer, Path start) {
+            this.writer = writer;
+            this.currentDirectory = start;
         }
 
         @Override
         public void visit(Directory node) throws IOException {
             currentDirectory = currentDirectory.resolve(node.getName());
             Files.createDirectories(currentDirectory);
-            Tree tree = Tree.parse(readObject(node.getObjectHash()));
+            Tree tree = readTree(node.getObjectId());
             tree.accept(this);
             currentDirectory = currentDirectory.getParent();
         }
@@ -255,25 +1240,24 @@ public final class Repository {
         @Override
         public void visit(File node) throws IOException {
             Path path = currentDirectory.resolve(node.getName());
-            byte[] body = Blob.parse(readObject(node.getObjectHash())).getBody();
-            Files.write(path, body);
-            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(node.isExecutable() ? "rwxr-xr-x" : "rw-r--r--"));
+            writer.submit(() -> {
+                try (InputStream input = openObject(node.getObjectId()); OutputStream output = Files.newOutputStream(path)) {
+                    Blob.transfer(input, output);
+                }
+                Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(node.isExecutable() ? "rwxr-xr-x" : "rw-r--r--"));
+            });
         }
 
         @Override
         public void visit(SymbolicLink node) throws IOException {
-            byte[] body = Blob.parse(readObject(node.getObjectHash())).getBody();
-            Files.createSymbolicLink(currentDirectory.resolve(node.getName()), Path.of(new String(body, StandardCharsets.UTF_8)));
+            Path path = currentDirectory.resolve(node.getName());
+            writer.submit(() -> {
+                byte[] body = Blob.parse(readObject(node.getObjectId())).getBody();
+                Files.createSymbolicLink(path, Path.of(new String(body, StandardCharsets.UTF_8)));
+            });
         }
     }
 
-    /**
-     * Replaces the working directory by {@code tree}.
-     */
-    private void thawTree(Tree tree) throws IOException {
-        tree.accept(new TreeThawer());
-    }
-
     private static class TreeClearer extends SimpleFileVisitor<Path> {
         @Override
         public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
@@ -299,11 +1283,96 @@ public final class Repository {
         }
     }
 
+    /**
+     * Applies the changes that {@link TreeDiff} reports to the working
+     * directory.
+     *
+     * <p>Files may be written on other threads (see {@link ThawWriter}), so
+     * directories that lost files are only removed by
+     * {@link #removeEmptyDirectories()}, once all writes are done; otherwise,
+     * a write into a directory could race with its removal.
+     */
+    private final class TreeApplier implements TreeDiff.Visitor {
+        private final ThawWriter writer;
+        private final Set<Path> emptied = new HashSet<>();
+
+        public TreeApplier(ThawWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void visit(TreeDiff.Change change) throws IOException {
+            Path path = directory.resolve(change.getPath());
+            TreeNode oldNode = change.getOldNode();
+            TreeNode newNode = change.getNewNode();
+            if (change.getStatus() == TreeDiff.Status.DELETED) {
+                Files.delete(path);
+                emptied.add(path.getParent());
+                return;
+            }
+            if (change.getStatus() == TreeDiff.Status.ADDED) {
+                // A directory whose files were deleted may still be in the way.
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.walkFileTree(path, new TreeClearer());
+                }
+                Files.createDirectories(path.getParent());
+            } else if (change.getStatus() == TreeDiff.Status.TYPE_CHANGED || newNode.getType() == TreeNodeType.SYMBOLIC_LINK) {
+                Files.delete(path);
+            } else if (oldNode.getObjectId().equals(newNode.getObjectId())) {
+                // Only the executable bit changed.
+                Files.setPosixFilePermissions(
+                    path,
+                    PosixFilePermissions.fromString(newNode.getType() == TreeNodeType.EXECUTABLE ? "rwxr-xr-x" : "rw-r--r--")
+                );
+                return;
+            }
+            // Otherwise, the file is overwritten in place.
+            newNode.accept(new TreeThawer(writer, path.getParent()));
+        }
+
+        /**
+         * Removes the directories that were left empty, and their parents if
+         * they became empty as well.
+         */
+        public void removeEmptyDirectories() throws IOException {
+            // Children sort after their parents, so they come first here.
+            TreeSet<Path> pending = new TreeSet<>(Comparator.reverseOrder());
+            pending.addAll(emptied);
+            while (!pending.isEmpty()) {
+                Path dir = pending.pollFirst();
+                if (dir.equals(directory) || !Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                    if (stream.iterator().hasNext()) {
+                        continue;
+                    }
+                }
+                Files.delete(dir);
+                pending.add(dir.getParent());
+            }
+        }
+    }
+
+    /**
+     * Turns the working directory from {@code from} into {@code to}.
+     *
+     * <p>Only the paths that {@link TreeDiff} reports are touched, so the cost
+     * is proportional to the size of the difference.
+     */
+    private void applyDiff(ThawWriter writer, Tree from, Tree to) throws IOException {
+        TreeApplier applier = new TreeApplier(writer);
+        new TreeDiff(this::readTree).diff(from, to, applier);
+        writer.finish();
+        applier.removeEmptyDirectories();
+    }
+
     /**
      * Restores the working directory to the state of {@code name}.
      *
      * <p>Note this is a destructive operation: it discards the current state of
-     * the working directory.
+     * the working directory. Only paths that differ between the current state
+     * and {@code name} are touched, though; everything else keeps its stat data.
      *
      * @param name The branch name or Base16-encoded commit hash to check out.
      * @throws IOException If the checkout failed.
@@ -311,20 +1380,38 @@ public final class Repository {
     public void checkout(String name) throws IOException {
         String branch = BRANCH_PREFIX + name;
         Reference newHead;
-        String encodedCommitHash;
+        ObjectId commitId;
         // Determine whether we're given a branch or commit. It's not enough to
         // look at the name, because branches can be named after commits.
-        if (Files.exists(gitDirectory.resolve(branch))) {
+        ObjectId branchId = refs.resolve(branch);
+        if (branchId != null) {
             newHead = new Reference(HEAD, true, branch);
-            encodedCommitHash = readReference(branch).getTarget();
+            commitId = branchId;
         } else {
-            newHead = new Reference(HEAD, false, name);
-            encodedCommitHash = name;
-        }
-        Files.walkFileTree(directory, new TreeClearer());
-        byte[] treeHash = Commit.extractTreeHash(readObject(encodedCommitHash));
-        Tree tree = Tree.parse(readObject(treeHash));
-        thawTree(tree);
-        writeReference(newHead);
+            commitId = ObjectId.parse(name);
+            newHead = new Reference(HEAD, commitId);
+        }
+        Tree target = readTree(readCommit(commitId).getTree());
+        // Freezing is cheap for unchanged paths thanks to the index, and it
+        // accounts for any modifications since the last commit.
+        ObjectId currentId;
+        try (ObjectBatch batch = newBatch()) {
+            TreeFreezer freezer = newFreezer(batch);
+            currentId = freezeTree(freezer);
+            batch.commit();
+            writeIndex(freezer);
+        }
+        Tree current = readTree(currentId);
+        if (thawWorkers > 1) {
+            ExecutorService executor = Executors.newFixedThreadPool(thawWorkers);
+            try {
+                applyDiff(new ThawWriter(executor), current, target);
+            } finally {
+                executor.shutdown();
+            }
+        } else {
+            applyDiff(new ThawWriter(null), current, target);
+        }
+        refs.write(newHead);
     }
 }
@@ -0,0 +1,87 @@
+package record;
+
+import java.io.IOException;
+import java.util.PriorityQueue;
+
+/**
+ * Walks the history of one or more commits, newest commit first.
+ *
+ * <p>Only the frontier of the walk is kept in memory: a commit is looked up
+ * when one of its children is returned by {@link #next()}, and dropped once it
+ * has been returned itself. Commits are ordered by their committer's time,
+ * like {@code git log} does; ties go to the commit that was reached first. A
+ * caller that only wants the first few commits can simply stop calling
+ * {@link #next()}, and nothing beyond the frontier is ever looked up.
+ *
+ * <p>Commits are looked up through {@link History}, so commits in the
+ * commit-graph are only read if the caller asks for their
+ * {@link Revision#getCommit() content}.
+ *
+ * <p>Instances are not safe to use from multiple threads.
+ */
+final class RevisionWalker {
+    /**
+     * A commit that the walker has reached.
+     */
+    public final class Revision {
+        private final History.Node node;
+        private final long sequence;
+
+        private Revision(History.Node node, long sequence) {
+            this.node = node;
+            this.sequence = sequence;
+        }
+
+        public ObjectId getId() {
+            return node.getId();
+        }
+
+        /**
+         * Returns the commit's content, reading it if necessary.
+         */
+        public CommitView getCommit() throws IOException {
+            return history.read(node);
+        }
+    }
+
+    private final History history;
+    private final PriorityQueue<Revision> queue = new PriorityQueue<>((a, b) -> {
+        int result = Long.compare(b.node.getCommitTime(), a.node.getCommitTime());
+        return result != 0 ? result : Long.compare(a.sequence, b.sequence);
+    });
+    /**
+     * The commits that were ever added to {@link #queue}; this holds ids only,
+     * so that merges don't make the walker return a commit twice.
+     */
+    private final ObjectIdMap<Boolean> seen = new ObjectIdMap<>();
+    private long sequence = 0;
+
+    public RevisionWalker(History history) {
+        this.history = history;
+    }
+
+    /**
+     * Adds {@code id} and its ancestors to the walk, unless it was added before.
+     */
+    public void push(ObjectId id) throws IOException {
+        if (seen.put(id, true) == null) {
+            queue.add(new Revision(history.lookup(id), sequence++));
+        }
+    }
+
+    /**
+     * Returns the newest commit that hasn't been returned yet.
+     *
+     * @return The commit, or {@code null} if the walk is finished.
+     */
+    public Revision next() throws IOException {
+        Revision revision = queue.poll();
+        if (revision == null) {
+            return null;
+        }
+        for (ObjectId parent : revision.node.getParents()) {
+            push(parent);
+        }
+        return revision;
+    }
+}
@@ -5,13 +5,17 @@ package record;
  */
 public final class SymbolicLink implements TreeNode {
     private final String name;
-    private final byte[] blob;
+    private final ObjectId blob;
 
-    public SymbolicLink(String name, byte[] blob) {
+    public SymbolicLink(String name, ObjectId blob) {
         this.name = name;
         this.blob = blob;
     }
 
+    public SymbolicLink(String name, byte[] blob) {
+        this(name, ObjectId.fromBytes(blob));
+    }
+
     @Override
     public TreeNodeType getType() {
         return TreeNodeType.SYMBOLIC_LINK;
@@ -23,7 +27,7 @@ public final class SymbolicLink implements TreeNode {
     }
 
     @Override
-    public byte[] getObjectHash() {
+    public ObjectId getObjectId() {
         return blob;
     }
 
@@ -4,6 +4,7 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.time.temporal.ChronoField;
+import java.util.Locale;
 
 public final class Timestamp {
     private static final DateTimeFormatter FORMATTER = new DateTimeFormatterBuilder()
@@ -11,6 +12,11 @@ public final class Timestamp {
         .appendLiteral(' ')
         .appendOffset("+HHMM", "+0000")
         .toFormatter();
+    /**
+     * The format that {@code git log} shows dates in.
+     */
+    private static final DateTimeFormatter DISPLAY_FORMATTER =
+        DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z", Locale.ENGLISH);
 
     private final ZonedDateTime timestamp;
 
@@ -26,6 +32,21 @@ public final class Timestamp {
         return new Timestamp(ZonedDateTime.parse(input, FORMATTER));
     }
 
+    /**
+     * @return The number of seconds since the epoch.
+     */
+    public long getEpochSecond() {
+        return timestamp.toEpochSecond();
+    }
+
+    /**
+     * @return The timestamp in the format of {@code git log}, e.g.,
+     *         {@code "Thu Nov 5 08:21:10 2020 +0100"}.
+     */
+    public String toDisplayString() {
+        return timestamp.format(DISPLAY_FORMATTER);
+    }
+
     @Override
     public String toString() {
         return timestamp.format(FORMATTER);
@@ -1,8 +1,6 @@
 package record;
 
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
@@ -16,7 +14,17 @@ public final class Tree implements LooseObject {
     private final List<TreeNode> children;
 
     public Tree(List<TreeNode> children) {
-        children.sort(Comparator.comparing(TreeNode::getName));
+        this(children, false);
+    }
+
+    /**
+     * @param sorted Whether {@code children} are already sorted by name, in
+     *               which case they're not sorted again.
+     */
+    Tree(List<TreeNode> children, boolean sorted) {
+        if (!sorted) {
+            children.sort(Comparator.comparing(TreeNode::getName));
+        }
         this.children = children;
     }
 
@@ -28,35 +36,7 @@ public final class Tree implements LooseObject {
      * @throws FatalParseException If {@code input} is not a valid tree.
      */
     public static Tree parse(byte[] input) throws FatalParseException {
-        int i = FirstZero.in(input);
-        String header = new String(input, 0, i, StandardCharsets.UTF_8);
-        if (!header.startsWith("tree ")) {
-            throw new FatalParseException("Malformed header.");
-        }
-        // Move to the start of the body.
-        ++i;
-        if (Integer.parseInt(header.substring(5)) != input.length - i) {
-            throw new FatalParseException("Header contains incorrect length.");
-        }
-        List<TreeNode> children = new ArrayList<>();
-        while (i < input.length) {
-            int j = FirstZero.in(input, i);
-            String prefix = new String(input, i, j - i, StandardCharsets.UTF_8);
-            int spaceIndex = prefix.indexOf(' ');
-            int bits = Integer.parseInt(prefix.substring(0, spaceIndex), 8);
-            String name = prefix.substring(spaceIndex + 1);
-            // Move to the start of the next entry.
-            i = j + 21;
-            byte[] hash = Arrays.copyOfRange(input, j + 1, i);
-            TreeNode child = switch (TreeNodeType.parse(bits)) {
-                case DIRECTORY -> new Directory(name, hash);
-                case EXECUTABLE -> new File(name, true, hash);
-                case FILE -> new File(name, false, hash);
-                case SYMBOLIC_LINK -> new SymbolicLink(name, hash);
-            };
-            children.add(child);
-        }
-        return new Tree(children);
+        return TreeView.parse(input).toTree();
     }
 
     @Override
@@ -65,21 +45,27 @@ public final class Tree implements LooseObject {
     }
 
     @Override
-    public byte[] getBody() {
-        List<byte[]> entries = new ArrayList<>();
-        int length = 0;
+    public void writeBody(ObjectBuffer buffer) {
         for (TreeNode child : children) {
-            byte[] entry = child.toEntry();
-            entries.add(entry);
-            length += entry.length;
-        }
-        byte[] result = new byte[length];
-        int offset = 0;
-        for (byte[] entry : entries) {
-            System.arraycopy(entry, 0, result, offset, entry.length);
-            offset += entry.length;
+            child.writeEntry(buffer);
         }
-        return result;
+    }
+
+    @Override
+    public byte[] getBody() {
+        ObjectBuffer buffer = new ObjectBuffer();
+        writeBody(buffer);
+        return buffer.copyBody();
+    }
+
+    /**
+     * Get the tree's entries.
+     *
+     * @return An unmodifiable list of the tree's {@link TreeNode}s, sorted by
+     *         name.
+     */
+    public List<TreeNode> getChildren() {
+        return Collections.unmodifiableList(children);
     }
 
     public <E extends Exception> void accept(TreeNodeVisitor<E> visitor) throws E {
@@ -0,0 +1,172 @@
+package record;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes the differences between two {@link Tree}s.
+ *
+ * <p>The entries of both trees are sorted by name, so they're compared with a
+ * merge join. Subdirectories whose hashes agree are identical and are
+ * skipped without being read; hence diffing two trees that differ in a few
+ * files only reads the trees on the paths to those files. Subdirectories
+ * that only exist on one side are read in full, since every file in them is
+ * a change.
+ *
+ * <p>Changes are reported for files and symbolic links only, in the order of
+ * their paths, and with paths relative to the root of the trees.
+ */
+final class TreeDiff {
+    /**
+     * Where subtrees are read from.
+     */
+    interface Source {
+        Tree read(ObjectId id) throws IOException;
+    }
+
+    /**
+     * Receives the changes, one at a time.
+     */
+    interface Visitor {
+        void visit(Change change) throws IOException;
+    }
+
+    public enum Status {
+        ADDED('A'),
+        DELETED('D'),
+        MODIFIED('M'),
+        /**
+         * A file became a symbolic link or vice versa.
+         */
+        TYPE_CHANGED('T');
+
+        private final char code;
+
+        Status(char code) {
+            this.code = code;
+        }
+
+        /**
+         * @return The letter that {@code git diff --name-status} uses.
+         */
+        public char getCode() {
+            return code;
+        }
+    }
+
+    /**
+     * A changed path.
+     */
+    public static final class Change {
+        private final Status status;
+        private final String path;
+        private final TreeNode oldNode;
+        private final TreeNode newNode;
+
+        private Change(Status status, String path, TreeNode oldNode, TreeNode newNode) {
+            this.status = status;
+            this.path = path;
+            this.oldNode = oldNode;
+            this.newNode = newNode;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return The old entry, or {@code null} if the path was added.
+         */
+        public TreeNode getOldNode() {
+            return oldNode;
+        }
+
+        /**
+         * @return The new entry, or {@code null} if the path was deleted.
+         */
+        public TreeNode getNewNode() {
+            return newNode;
+        }
+    }
+
+    private static final Tree EMPTY = new Tree(new ArrayList<>());
+
+    private final Source source;
+
+    public TreeDiff(Source source) {
+        this.source = source;
+    }
+
+    /**
+     * Reports the changes from {@code from} to {@code to} to {@code visitor}.
+     */
+    public void diff(Tree from, Tree to, Visitor visitor) throws IOException {
+        diff("", from, to, visitor);
+    }
+
+    private void diff(String prefix, Tree from, Tree to, Visitor visitor) throws IOException {
+        List<TreeNode> oldChildren = from.getChildren();
+        List<TreeNode> newChildren = to.getChildren();
+        int i = 0;
+        int j = 0;
+        while (i < oldChildren.size() || j < newChildren.size()) {
+            int order;
+            if (i == oldChildren.size()) {
+                order = 1;
+            } else if (j == newChildren.size()) {
+                order = -1;
+            } else {
+                order = oldChildren.get(i).getName().compareTo(newChildren.get(j).getName());
+            }
+            if (order < 0) {
+                compare(prefix, oldChildren.get(i++), null, visitor);
+            } else if (order > 0) {
+                compare(prefix, null, newChildren.get(j++), visitor);
+            } else {
+                compare(prefix, oldChildren.get(i++), newChildren.get(j++), visitor);
+            }
+        }
+    }
+
+    /**
+     * Compares two entries of the same name, either of which may be missing.
+     */
+    private void compare(String prefix, TreeNode oldNode, TreeNode newNode, Visitor visitor) throws IOException {
+        TreeNodeType oldType = oldNode == null ? null : oldNode.getType();
+        TreeNodeType newType = newNode == null ? null : newNode.getType();
+        if (oldType == newType && oldNode.getObjectId().equals(newNode.getObjectId())) {
+            return;
+        }
+        String path = prefix + (oldNode == null ? newNode : oldNode).getName();
+        boolean oldIsDirectory = oldType == TreeNodeType.DIRECTORY;
+        boolean newIsDirectory = newType == TreeNodeType.DIRECTORY;
+        if (oldIsDirectory || newIsDirectory) {
+            // If a file and a directory trade places, the deletions come first.
+            if (!oldIsDirectory && oldNode != null) {
+                visitor.visit(new Change(Status.DELETED, path, oldNode, null));
+            }
+            diff(
+                path + "/",
+                oldIsDirectory ? source.read(oldNode.getObjectId()) : EMPTY,
+                newIsDirectory ? source.read(newNode.getObjectId()) : EMPTY,
+                visitor
+            );
+            if (!newIsDirectory && newNode != null) {
+                visitor.visit(new Change(Status.ADDED, path, null, newNode));
+            }
+        } else if (oldNode == null) {
+            visitor.visit(new Change(Status.ADDED, path, null, newNode));
+        } else if (newNode == null) {
+            visitor.visit(new Change(Status.DELETED, path, oldNode, null));
+        } else if ((oldType == TreeNodeType.SYMBOLIC_LINK) != (newType == TreeNodeType.SYMBOLIC_LINK)) {
+            visitor.visit(new Change(Status.TYPE_CHANGED, path, oldNode, newNode));
+        } else {
+            visitor.visit(new Change(Status.MODIFIED, path, oldNode, newNode));
+        }
+    }
+}
@@ -1,11 +1,9 @@
 package record;
 
-import java.nio.charset.StandardCharsets;
-
 /**
  * A node in a {@link Tree}, i.e., a named reference to a {@link LooseObject}.
  *
- * <p>It is serialized by {@link #toEntry()} according to the following schema:
+ * <p>It is serialized by {@link #writeEntry} according to the following schema:
  * <pre><code>
  * +------+----+------+-----+------+
  * | type | SP | name | NUL | hash |
@@ -30,13 +28,33 @@ public interface TreeNode {
      */
     String getName();
 
+    /**
+     * Get the {@link LooseObject}'s id.
+     *
+     * @return The {@link ObjectId} of the underlying {@link LooseObject}.
+     */
+    ObjectId getObjectId();
+
     /**
      * Get the {@link LooseObject}'s hash.
      *
      * @return A byte array containing the SHA-1 digest of the underlying
      *         {@link LooseObject}'s content.
      */
-    byte[] getObjectHash();
+    default byte[] getObjectHash() {
+        return getObjectId().toBytes();
+    }
+
+    /**
+     * Serialize the node into {@code buffer}.
+     */
+    default void writeEntry(ObjectBuffer buffer) {
+        buffer.write(getType().getMode());
+        buffer.write(' ');
+        buffer.writeUtf8(getName());
+        buffer.write(0);
+        buffer.writeId(getObjectId());
+    }
 
     /**
      * Serialize the node.
@@ -44,14 +62,9 @@ public interface TreeNode {
      * @return A byte array containing the node's serialization.
      */
     default byte[] toEntry() {
-        byte[] part = String
-            .format("%o %s\0", getType().getBits(), getName())
-            .getBytes(StandardCharsets.UTF_8);
-        byte[] hash = getObjectHash();
-        byte[] result = new byte[part.length + hash.length];
-        System.arraycopy(part, 0, result, 0, part.length);
-        System.arraycopy(hash, 0, result, part.length, hash.length);
-        return result;
+        ObjectBuffer buffer = new ObjectBuffer();
+        writeEntry(buffer);
+        return buffer.copyBody();
     }
 
     <E extends Exception> void accept(TreeNodeVisitor<E> visitor) throws E;
@@ -1,5 +1,7 @@
 package record;
 
+import java.nio.charset.StandardCharsets;
+
 public enum TreeNodeType {
     DIRECTORY(0040000),
     EXECUTABLE(0100755),
@@ -7,9 +9,11 @@ public enum TreeNodeType {
     SYMBOLIC_LINK(0120000);
 
     private final int bits;
+    private final byte[] mode;
 
     TreeNodeType(int bits) {
         this.bits = bits;
+        this.mode = Integer.toOctalString(bits).getBytes(StandardCharsets.US_ASCII);
     }
 
     public static TreeNodeType parse(int bits) {
@@ -24,4 +28,12 @@ public enum TreeNodeType {
     public int getBits() {
         return bits;
     }
+
+    /**
+     * Returns the octal representation of {@link #getBits()}, as it appears in
+     * tree entries; callers must not modify it.
+     */
+    byte[] getMode() {
+        return mode;
+    }
 }
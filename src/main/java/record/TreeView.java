@@ -0,0 +1,251 @@
+package record;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A read-only view of a serialized {@link Tree}.
+ *
+ * <p>Unlike {@link Tree#parse}, this doesn't decode the entries up front: it
+ * only records where each entry's name and hash are in the buffer, and decodes
+ * modes, names and {@link TreeNode}s when they're asked for. This makes it
+ * cheap to look up a few entries of a large tree.
+ *
+ * <p>Entries are compared by the UTF-8 bytes of their names, adjusted so that
+ * the order agrees with the one of {@link String#compareTo}, which is the order
+ * that {@link Tree} keeps its entries in.
+ */
+final class TreeView {
+    private final byte[] input;
+    private final int bodyStart;
+    /**
+     * The offset of the first byte of each entry's name.
+     */
+    private final int[] nameStarts;
+    /**
+     * The offset of the null byte that ends each entry's name.
+     */
+    private final int[] nameEnds;
+    private final int size;
+    private final boolean sorted;
+
+    private TreeView(byte[] input, int bodyStart, int[] nameStarts, int[] nameEnds, int size, boolean sorted) {
+        this.input = input;
+        this.bodyStart = bodyStart;
+        this.nameStarts = nameStarts;
+        this.nameEnds = nameEnds;
+        this.size = size;
+        this.sorted = sorted;
+    }
+
+    /**
+     * Creates a view of a tree's content.
+     *
+     * @param input A byte array containing the tree's content; it is not
+     *              copied, so it must not be modified afterwards.
+     * @return The corresponding {@link TreeView}.
+     * @throws FatalParseException If {@code input} is not a valid tree.
+     */
+    public static TreeView parse(byte[] input) throws FatalParseException {
+        int i = FirstZero.in(input);
+        String header = new String(input, 0, i, StandardCharsets.UTF_8);
+        if (!header.startsWith("tree ")) {
+            throw new FatalParseException("Malformed header.");
+        }
+        // Move to the start of the body.
+        ++i;
+        if (Integer.parseInt(header.substring(5)) != input.length - i) {
+            throw new FatalParseException("Header contains incorrect length.");
+        }
+        int bodyStart = i;
+        // Every entry takes at least 28 bytes: a five digit mode, a space, a
+        // one byte name, a null byte and the hash.
+        int capacity = Math.max((input.length - i) / 28, 1);
+        int[] nameStarts = new int[capacity];
+        int[] nameEnds = new int[capacity];
+        int size = 0;
+        boolean sorted = true;
+        while (i < input.length) {
+            int space = i;
+            while (space < input.length && input[space] != ' ') {
+                ++space;
+            }
+            int j = FirstZero.in(input, i);
+            if (space >= j || space == i) {
+                throw new FatalParseException("Malformed tree entry.");
+            }
+            if (j + 21 > input.length) {
+                throw new FatalParseException("Truncated tree entry.");
+            }
+            if (size == nameStarts.length) {
+                nameStarts = Arrays.copyOf(nameStarts, 2 * size);
+                nameEnds = Arrays.copyOf(nameEnds, 2 * size);
+            }
+            nameStarts[size] = space + 1;
+            nameEnds[size] = j;
+            if (size > 0 && compare(input, nameStarts[size - 1], nameEnds[size - 1], input, space + 1, j) > 0) {
+                sorted = false;
+            }
+            ++size;
+            // Move to the start of the next entry.
+            i = j + 21;
+        }
+        return new TreeView(input, bodyStart, nameStarts, nameEnds, size, sorted);
+    }
+
+    /**
+     * Compares two UTF-8 encoded names in the order of {@link String#compareTo}.
+     *
+     * <p>UTF-8 byte order is code point order, whereas {@link String#compareTo}
+     * compares UTF-16 code units, which puts the characters from U+E000 to
+     * U+FFFF after the supplementary ones. Their lead bytes are {@code 0xee}
+     * and {@code 0xef}, so it suffices to move those two bytes past the lead
+     * bytes of supplementary characters.
+     */
+    private static int compare(byte[] a, int aFrom, int aTo, byte[] b, int bFrom, int bTo) {
+        int i = Arrays.mismatch(a, aFrom, aTo, b, bFrom, bTo);
+        if (i == -1) {
+            return 0;
+        }
+        if (aFrom + i == aTo || bFrom + i == bTo) {
+            return (aTo - aFrom) - (bTo - bFrom);
+        }
+        return adjust(a[aFrom + i] & 0xff) - adjust(b[bFrom + i] & 0xff);
+    }
+
+    private static int adjust(int b) {
+        return b == 0xee || b == 0xef ? b + 0x10 : b;
+    }
+
+    /**
+     * Returns the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the entries are in the order that {@link Tree} keeps them in.
+     */
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    private int entryStart(int index) {
+        return index == 0 ? bodyStart : nameEnds[index - 1] + 21;
+    }
+
+    /**
+     * Returns the mode bits of the entry at {@code index}.
+     *
+     * @throws FatalParseException If the mode isn't an octal number.
+     */
+    public int getBits(int index) throws FatalParseException {
+        int bits = 0;
+        for (int i = entryStart(index); i < nameStarts[index] - 1; ++i) {
+            int digit = input[i] - '0';
+            if (digit < 0 || digit > 7) {
+                throw new FatalParseException("Malformed tree entry.");
+            }
+            bits = 8 * bits + digit;
+        }
+        return bits;
+    }
+
+    public TreeNodeType getType(int index) throws FatalParseException {
+        return TreeNodeType.parse(getBits(index));
+    }
+
+    public String getName(int index) {
+        return new String(input, nameStarts[index], nameEnds[index] - nameStarts[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a copy of the hash of the entry at {@code index}.
+     */
+    public byte[] getObjectHash(int index) {
+        return Arrays.copyOfRange(input, nameEnds[index] + 1, nameEnds[index] + 21);
+    }
+
+    /**
+     * Returns whether the entry at {@code index} refers to {@code hash}, without copying the entry's hash.
+     */
+    public boolean hasObjectHash(int index, byte[] hash) {
+        return Arrays.equals(input, nameEnds[index] + 1, nameEnds[index] + 21, hash, 0, hash.length);
+    }
+
+    public ObjectId getObjectId(int index) {
+        return ObjectId.fromBytes(input, nameEnds[index] + 1);
+    }
+
+    /**
+     * Materializes the entry at {@code index}.
+     */
+    public TreeNode getNode(int index) throws FatalParseException {
+        String name = getName(index);
+        ObjectId hash = getObjectId(index);
+        return switch (getType(index)) {
+            case DIRECTORY -> new Directory(name, hash);
+            case EXECUTABLE -> new File(name, true, hash);
+            case FILE -> new File(name, false, hash);
+            case SYMBOLIC_LINK -> new SymbolicLink(name, hash);
+        };
+    }
+
+    /**
+     * Finds the entry called {@code name}.
+     *
+     * <p>This is a binary search if the entries are sorted, and a linear one
+     * otherwise.
+     *
+     * @return The index of the entry, or {@code -1} if there is none.
+     */
+    public int find(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        if (!sorted) {
+            for (int i = 0; i < size; ++i) {
+                if (compare(input, nameStarts[i], nameEnds[i], key, 0, key.length) == 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = compare(input, nameStarts[middle], nameEnds[middle], key, 0, key.length);
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Materializes the entry called {@code name}.
+     *
+     * @return The entry, or {@code null} if there is none.
+     */
+    public TreeNode lookup(String name) throws FatalParseException {
+        int index = find(name);
+        return index == -1 ? null : getNode(index);
+    }
+
+    /**
+     * Materializes all entries.
+     */
+    public Tree toTree() throws FatalParseException {
+        List<TreeNode> children = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            children.add(getNode(i));
+        }
+        return new Tree(children, sorted);
+    }
+}
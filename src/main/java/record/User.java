@@ -9,6 +9,27 @@ public final class User {
         this.email = email;
     }
 
+    public String getName() {
+        return name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * Parses a user of the form {@code "name <email>"}.
+     *
+     * @throws FatalParseException If {@code input} is malformed.
+     */
+    public static User of(String input) throws FatalParseException {
+        int i = input.lastIndexOf(" <");
+        if (i == -1 || !input.endsWith(">")) {
+            throw new FatalParseException("Malformed user.");
+        }
+        return new User(input.substring(0, i), input.substring(i + 2, input.length() - 1));
+    }
+
     @Override
     public String toString() {
         return String.format("%s <%s>", name, email);
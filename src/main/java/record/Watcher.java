@@ -0,0 +1,411 @@
+package record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records which directories of the working directory change, so that freezing
+ * the working directory only has to walk those.
+ *
+ * <p>A watcher registers every directory with a {@link WatchService}, and
+ * remembers the directories that events are reported for. It holds a lock on
+ * {@code .git/record-watch.lock} while it runs, so that {@link #sync} can
+ * tell whether there is a watcher at all.
+ *
+ * <p>Events are delivered asynchronously, so {@link #sync} first creates a
+ * cookie file in {@code .git}, which is watched too, and waits until the
+ * watcher has seen it. Events are delivered in order; hence once the watcher
+ * has seen the cookie, it has seen all changes that happened before. It then
+ * writes the directories it saw changes in to {@code .git/record-journal},
+ * headed by the cookie's name. The journal accumulates until
+ * {@link #acknowledge} deletes it after a successful freeze, so a failed
+ * freeze doesn't lose any changes. A journal that is headed by a later
+ * cookie holds changes that the freeze may not have seen, and is kept; the
+ * watcher and {@link #acknowledge} both take {@code .git/record-journal.lock}
+ * (see {@link LockFile}), so the journal can't be replaced in between.
+ *
+ * <p>A watcher that has just started, or that missed events because its queue
+ * overflowed, can't tell what changed, and says so in the journal; the next
+ * freeze then walks everything. Like any file system monitor, a watcher
+ * misses changes that don't cause events, e.g., writes through a memory map.
+ */
+final class Watcher implements Closeable {
+    private static final String LOCK = "record-watch.lock";
+    private static final String JOURNAL = "record-journal";
+    private static final String COOKIE_PREFIX = "record-cookie-";
+    /**
+     * The journal line that stands for "every directory may have changed".
+     */
+    private static final String EVERYTHING = "everything";
+    private static final String DIRTY = "dirty ";
+    private static final String COOKIE = "cookie ";
+
+    private final Path directory;
+    private final Path gitDirectory;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final WatchService service;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Map<Path, WatchKey> paths = new HashMap<>();
+    private final Set<String> dirty = new HashSet<>();
+    private boolean everything = true;
+
+    /**
+     * What {@link #sync} found out.
+     */
+    static final class Changes {
+        private final String cookie;
+        private final Set<String> directories;
+
+        private Changes(String cookie, Set<String> directories) {
+            this.cookie = cookie;
+            this.directories = directories;
+        }
+
+        /**
+         * @return The changed directories, relative to the working directory,
+         *         or {@code null} if there is no watcher, it didn't answer in
+         *         time, or it can't tell what changed.
+         */
+        public Set<String> getDirectories() {
+            return directories;
+        }
+    }
+
+    /**
+     * Registers the working directory in {@code directory}.
+     *
+     * @throws IOException If another watcher is already running.
+     */
+    public Watcher(Path directory) throws IOException {
+        this.directory = directory;
+        this.gitDirectory = directory.resolve(".git");
+        this.lockChannel = FileChannel.open(gitDirectory.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            acquired = null;
+        }
+        if (acquired == null) {
+            lockChannel.close();
+            throw new IOException("Another watcher is running.");
+        }
+        this.lock = acquired;
+        this.service = directory.getFileSystem().newWatchService();
+        keys.put(gitDirectory.register(service, StandardWatchEventKinds.ENTRY_CREATE), gitDirectory);
+        register(directory);
+    }
+
+    private String getKey(Path path) {
+        return directory.relativize(path).toString();
+    }
+
+    /**
+     * Registers {@code start} and every directory below it, and marks them as changed.
+     */
+    private void register(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                // The freezer skips hidden directories, and so does the watcher.
+                if (Files.isHidden(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register(
+                    service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY
+                );
+                keys.put(key, dir);
+                paths.put(dir, key);
+                dirty.add(getKey(dir));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // The file disappeared again; the event for that is on its way.
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Records changes until the watcher is closed.
+     */
+    public void run() throws IOException {
+        try {
+            while (true) {
+                List<String> cookies = new ArrayList<>();
+                process(service.take(), cookies);
+                if (!cookies.isEmpty()) {
+                    // Handle everything that was signalled before the cookie.
+                    for (WatchKey key = service.poll(); key != null; key = service.poll()) {
+                        process(key, cookies);
+                    }
+                    writeJournal(cookies.get(cookies.size() - 1));
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // The watcher was closed.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void process(WatchKey key, List<String> cookies) throws IOException {
+        Path dir = keys.get(key);
+        if (dir == null) {
+            // The key was cancelled after it had been signalled.
+            key.pollEvents();
+            return;
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                everything = true;
+                continue;
+            }
+            String name = event.context().toString();
+            if (dir.equals(gitDirectory)) {
+                if (name.startsWith(COOKIE_PREFIX)) {
+                    cookies.add(name);
+                }
+                continue;
+            }
+            dirty.add(getKey(dir));
+            Path child = dir.resolve(name);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && paths.containsKey(child)) {
+                unregister(child);
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                register(child);
+            }
+        }
+        if (!key.reset()) {
+            paths.remove(keys.remove(key));
+        }
+    }
+
+    /**
+     * Stops watching {@code start} and every directory below it.
+     *
+     * <p>Watches follow directories when they're moved, so a directory that
+     * was moved elsewhere in the working directory would otherwise keep
+     * reporting changes for its old path. It is registered again under its new
+     * path when its creation there is reported.
+     */
+    private void unregister(Path start) {
+        List<Path> removed = new ArrayList<>();
+        for (Path path : paths.keySet()) {
+            if (path.startsWith(start)) {
+                removed.add(path);
+            }
+        }
+        for (Path path : removed) {
+            WatchKey key = paths.remove(path);
+            // If the creation at the new path was reported first, the key
+            // already belongs to the new path.
+            if (path.equals(keys.get(key))) {
+                keys.remove(key);
+                key.cancel();
+            }
+        }
+    }
+
+    /**
+     * Adds the recorded changes to the journal, and starts recording anew.
+     *
+     * <p>If the journal stays locked, the changes are kept for the next
+     * cookie; the freeze that is waiting for this one then walks everything.
+     */
+    private void writeJournal(String cookie) throws IOException {
+        Path journal = gitDirectory.resolve(JOURNAL);
+        LockFile lock;
+        try {
+            lock = LockFile.acquire(journal);
+        } catch (FileAlreadyExistsException e) {
+            return;
+        }
+        try (lock) {
+            // The previous journal may not have been acknowledged.
+            Set<String> previous = readJournal(journal, null);
+            if (previous == null) {
+                everything = true;
+            } else {
+                dirty.addAll(previous);
+            }
+            StringBuilder builder = new StringBuilder().append(COOKIE).append(cookie).append('\n');
+            if (everything || dirty.stream().anyMatch(key -> key.indexOf('\n') != -1)) {
+                builder.append(EVERYTHING).append('\n');
+            } else {
+                for (String key : dirty) {
+                    builder.append(DIRTY).append(key).append('\n');
+                }
+            }
+            Files.writeString(lock.getPath(), builder, StandardCharsets.UTF_8);
+            lock.commit();
+        }
+        dirty.clear();
+        everything = false;
+    }
+
+    /**
+     * Returns whether the journal exists and is headed by {@code cookie}.
+     */
+    private static boolean isHeadedBy(Path journal, String cookie) throws IOException {
+        try {
+            return Files.readString(journal, StandardCharsets.UTF_8).startsWith(COOKIE + cookie + "\n");
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the directories in a journal.
+     *
+     * @param cookie The cookie that the journal has to be headed by, or
+     *               {@code null} to accept any journal.
+     * @return The directories, relative to the working directory; an empty
+     *         set if there is no journal and {@code cookie} is {@code null};
+     *         and {@code null} if every directory may have changed or the
+     *         journal isn't headed by {@code cookie}.
+     */
+    private static Set<String> readJournal(Path journal, String cookie) throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(journal, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return cookie == null ? new HashSet<>() : null;
+        }
+        if (lines.isEmpty() || cookie != null && !lines.get(0).equals(COOKIE + cookie)) {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.startsWith(DIRTY)) {
+                result.add(line.substring(DIRTY.length()));
+            } else {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether a watcher holds the lock of the repository in {@code gitDirectory}.
+     */
+    private static boolean isRunning(Path gitDirectory) throws IOException {
+        Path path = gitDirectory.resolve(LOCK);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            // The watcher runs in this process.
+            return true;
+        }
+    }
+
+    /**
+     * Returns the directories that changed since the last {@link #acknowledge}.
+     *
+     * @param directory The working directory.
+     * @param timeout   How long to wait for the watcher, in milliseconds.
+     */
+    public static Changes sync(Path directory, long timeout) throws IOException {
+        Path gitDirectory = directory.resolve(".git");
+        if (!isRunning(gitDirectory)) {
+            return new Changes(null, null);
+        }
+        String cookie = COOKIE_PREFIX + UUID.randomUUID();
+        Path cookiePath = gitDirectory.resolve(cookie);
+        Files.createFile(cookiePath);
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            Path journal = gitDirectory.resolve(JOURNAL);
+            while (System.nanoTime() < deadline) {
+                if (isHeadedBy(journal, cookie)) {
+                    return new Changes(cookie, readJournal(journal, cookie));
+                }
+                Thread.sleep(1);
+            }
+            return new Changes(cookie, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            Files.deleteIfExists(cookiePath);
+        }
+    }
+
+    /**
+     * Discards the journal, after the changes that {@code changes} reported
+     * have been frozen.
+     *
+     * <p>The journal is only discarded if it's still the one that
+     * {@code changes} came from; a later one holds changes that the freeze may
+     * have missed. If the journal stays locked, it's kept too, which only
+     * makes the next freeze walk more.
+     */
+    public static void acknowledge(Path directory, Changes changes) throws IOException {
+        if (changes.cookie == null) {
+            return;
+        }
+        Path journal = directory.resolve(".git").resolve(JOURNAL);
+        LockFile lock;
+        try {
+            lock = LockFile.acquire(journal);
+        } catch (FileAlreadyExistsException e) {
+            return;
+        }
+        try (lock) {
+            if (isHeadedBy(journal, changes.cookie)) {
+                Files.delete(journal);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            service.close();
+            lock.release();
+        } finally {
+            lockChannel.close();
+        }
+    }
+}
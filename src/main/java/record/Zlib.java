@@ -0,0 +1,126 @@
+package record;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Creates deflating and inflating streams whose {@link Deflater}s and
+ * {@link Inflater}s are reused.
+ *
+ * <p>Every deflater and inflater owns a native zlib context, which is costly
+ * to set up and is only released by {@code end()} or by the garbage
+ * collector. Instead, each thread keeps a few of them, and the streams created
+ * here return theirs when they're closed. A stream that is never closed keeps
+ * its instance, which the garbage collector eventually releases.
+ *
+ * <p>Each stream takes its own instance, so streams can be nested, e.g., when
+ * a tree is read while a blob is being inflated.
+ */
+final class Zlib {
+    /**
+     * How many instances of each kind a thread keeps at most.
+     */
+    private static final int POOL_SIZE = 4;
+
+    private static final ThreadLocal<ArrayDeque<Deflater>> DEFLATERS = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final ThreadLocal<ArrayDeque<Inflater>> INFLATERS = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private Zlib() {
+        // No instantiation.
+    }
+
+    private static Deflater acquireDeflater(int level) {
+        Deflater deflater = DEFLATERS.get().poll();
+        if (deflater == null) {
+            return new Deflater(level);
+        }
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    private static void release(Deflater deflater) {
+        ArrayDeque<Deflater> pool = DEFLATERS.get();
+        if (pool.size() < POOL_SIZE) {
+            deflater.reset();
+            pool.push(deflater);
+        } else {
+            deflater.end();
+        }
+    }
+
+    private static Inflater acquireInflater() {
+        Inflater inflater = INFLATERS.get().poll();
+        return inflater == null ? new Inflater() : inflater;
+    }
+
+    private static void release(Inflater inflater) {
+        ArrayDeque<Inflater> pool = INFLATERS.get();
+        if (pool.size() < POOL_SIZE) {
+            inflater.reset();
+            pool.push(inflater);
+        } else {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Returns a stream that deflates into {@code out} at {@code level}.
+     *
+     * @param level A level from {@link Deflater#NO_COMPRESSION} to
+     *              {@link Deflater#BEST_COMPRESSION}, or
+     *              {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public static DeflaterOutputStream deflate(OutputStream out, int level) {
+        return new DeflaterOutputStream(out, acquireDeflater(level)) {
+            private boolean released = false;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!released) {
+                        released = true;
+                        release(def);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a stream that inflates {@code in}.
+     *
+     * @param size The size of the input buffer.
+     */
+    public static InflaterInputStream inflate(InputStream in, int size) {
+        return new InflaterInputStream(in, acquireInflater(), size) {
+            private boolean released = false;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!released) {
+                        released = true;
+                        release(inf);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a stream that inflates {@code in}, with the default buffer size.
+     */
+    public static InflaterInputStream inflate(InputStream in) {
+        return inflate(in, 512);
+    }
+}
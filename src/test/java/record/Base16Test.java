@@ -27,5 +27,6 @@ public class Base16Test {
         Assertions.assertThrows(FatalParseException.class, () -> Base16.decode("a"));
         Assertions.assertThrows(FatalParseException.class, () -> Base16.decode("ax"));
         Assertions.assertThrows(FatalParseException.class, () -> Base16.decode("xa"));
+        Assertions.assertThrows(FatalParseException.class, () -> Base16.decode("a\u00e9"));
     }
 }
@@ -1,5 +1,8 @@
 package record;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 
 import org.junit.jupiter.api.Assertions;
@@ -19,6 +22,17 @@ public class BlobTest {
         }
     }
 
+    @Test
+    void transfer() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Blob.transfer(new ByteArrayInputStream(c.getBytes()), output);
+        Assertions.assertArrayEquals(c.getBody(), output.toByteArray());
+        Assertions.assertThrows(
+            FatalParseException.class,
+            () -> Blob.transfer(new ByteArrayInputStream(new byte[] {'b', 'l', 'o', 'b', ' ', '3', 0, 'a'}), new ByteArrayOutputStream())
+        );
+    }
+
     @Test
     void getHash() {
         Assertions.assertEquals("78981922613b2afb6025042ff6bd878ac1994e85", Base16.encode(a.getHash()));
@@ -0,0 +1,35 @@
+package record;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ByteSearchTest {
+    @Test
+    void indexOf() {
+        byte[] input = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 0, 12};
+
+        Assertions.assertEquals(10, ByteSearch.swarIndexOf(input, 0, (byte) 0));
+        Assertions.assertEquals(9, ByteSearch.swarIndexOf(input, 3, (byte) 10));
+        Assertions.assertEquals(-1, ByteSearch.swarIndexOf(input, 10, (byte) 1));
+        Assertions.assertEquals(-1, ByteSearch.swarIndexOf(input, 12, (byte) 0));
+    }
+
+    @Test
+    void agreesWithScalar() {
+        Random random = new Random(0);
+        // Bytes around the SWAR constants are where carries and borrows could go wrong.
+        byte[] alphabet = {0, 1, 2, (byte) 0x7f, (byte) 0x80, (byte) 0x81, (byte) 0xfe, (byte) 0xff, '\n'};
+        for (int n = 0; n < 10000; ++n) {
+            byte[] input = new byte[random.nextInt(40)];
+            for (int i = 0; i < input.length; ++i) {
+                input[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            int offset = input.length == 0 ? 0 : random.nextInt(input.length);
+            byte value = alphabet[random.nextInt(alphabet.length)];
+
+            Assertions.assertEquals(ByteSearch.scalarIndexOf(input, offset, value), ByteSearch.swarIndexOf(input, offset, value));
+        }
+    }
+}
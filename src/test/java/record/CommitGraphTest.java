@@ -0,0 +1,60 @@
+package record;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CommitGraphTest {
+    private final ObjectId tree = ObjectId.parse("5e1dd7430fe0d9b1678543ae1a318485d69fdd2c");
+
+    private static ObjectId id(int i) {
+        byte[] bytes = new byte[ObjectId.LENGTH];
+        bytes[0] = (byte) (37 * i);
+        bytes[19] = (byte) i;
+        return ObjectId.fromBytes(bytes);
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        Path path = Files.createTempDirectory("record").resolve("info/commit-graph");
+        CommitGraphWriter writer = new CommitGraphWriter();
+        // An octopus merge of three branches on top of a root.
+        writer.add(id(5), tree, new ObjectId[] {id(2), id(3), id(4)}, 3L << 32);
+        writer.add(id(1), tree, new ObjectId[0], 1);
+        writer.add(id(2), tree, new ObjectId[] {id(1)}, 2);
+        writer.add(id(3), tree, new ObjectId[] {id(2)}, 3);
+        writer.add(id(4), tree, new ObjectId[] {id(1)}, 4);
+        writer.write(path);
+
+        CommitGraph graph = new CommitGraph(path);
+
+        Assertions.assertEquals(5, graph.size());
+        Assertions.assertEquals(-1, graph.find(id(6)));
+        int merge = graph.find(id(5));
+        Assertions.assertEquals(id(5), graph.getId(merge));
+        Assertions.assertEquals(tree, graph.getTree(merge));
+        Assertions.assertEquals(3L << 32, graph.getCommitTime(merge));
+        Assertions.assertEquals(4, graph.getGeneration(merge));
+        Assertions.assertEquals(3, graph.getParentCount(merge));
+        for (int i = 0; i < 3; ++i) {
+            Assertions.assertEquals(id(i + 2), graph.getId(graph.getParent(merge, i)));
+        }
+        int root = graph.find(id(1));
+        Assertions.assertEquals(0, graph.getParentCount(root));
+        Assertions.assertEquals(1, graph.getGeneration(root));
+        Assertions.assertEquals(2, graph.getGeneration(graph.find(id(4))));
+    }
+
+    @Test
+    void missingParent() throws IOException {
+        Path path = Files.createTempDirectory("record").resolve("commit-graph");
+        CommitGraphWriter writer = new CommitGraphWriter();
+        writer.add(id(2), tree, new ObjectId[] {id(1)}, 2);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> writer.write(path));
+        Assertions.assertFalse(Files.exists(path));
+    }
+}
@@ -11,7 +11,7 @@ public class CommitTest {
     private final Timestamp firstTimestamp = Timestamp.of("1599568789 +0200");
     private final Commit firstCommit =
         new Commit(
-            "3683f870be446c7cc05ffaef9fa06415276e1828",
+            ObjectId.parse("3683f870be446c7cc05ffaef9fa06415276e1828"),
             new ArrayList<>(),
             user,
             firstTimestamp,
@@ -22,8 +22,8 @@ public class CommitTest {
     private final Timestamp secondTimestamp = Timestamp.of("1599568810 +0200");
     private final Commit secondCommit =
         new Commit(
-            "5e1dd7430fe0d9b1678543ae1a318485d69fdd2c",
-            Collections.singletonList(Base16.encode(firstCommit.getHash())),
+            ObjectId.parse("5e1dd7430fe0d9b1678543ae1a318485d69fdd2c"),
+            Collections.singletonList(firstCommit.getId()),
             user,
             secondTimestamp,
             user,
@@ -31,6 +31,22 @@ public class CommitTest {
             "Add more stuff"
         );
 
+    @Test
+    void parse() {
+        Commit parsed = Commit.parse(secondCommit.getBytes());
+
+        Assertions.assertEquals(ObjectId.parse("5e1dd7430fe0d9b1678543ae1a318485d69fdd2c"), parsed.getTree());
+        Assertions.assertEquals(Collections.singletonList(ObjectId.parse("42a22126b2d4fef6dd6537ecad0e63be1bc4c210")), parsed.getParents());
+        Assertions.assertArrayEquals(secondCommit.getHash(), parsed.getHash());
+        Assertions.assertThrows(FatalParseException.class, () -> Commit.parse(new Blob(new byte[0]).getBytes()));
+    }
+
+    @Test
+    void extractTreeHash() {
+        Assertions.assertEquals(secondCommit.getTree(), Commit.extractTreeHash(secondCommit.getBytes()));
+        Assertions.assertThrows(FatalParseException.class, () -> Commit.extractTreeHash(new Blob(new byte[0]).getBytes()));
+    }
+
     @Test
     void getHash() {
         Assertions.assertEquals("42a22126b2d4fef6dd6537ecad0e63be1bc4c210", Base16.encode(firstCommit.getHash()));
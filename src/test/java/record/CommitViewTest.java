@@ -0,0 +1,71 @@
+package record;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CommitViewTest {
+    private final User user = new User("Jane Doe", "jane@example.com");
+    private final Commit commit =
+        new Commit(
+            ObjectId.parse("5e1dd7430fe0d9b1678543ae1a318485d69fdd2c"),
+            List.of(
+                ObjectId.parse("42a22126b2d4fef6dd6537ecad0e63be1bc4c210"),
+                ObjectId.parse("3683f870be446c7cc05ffaef9fa06415276e1828")
+            ),
+            user,
+            Timestamp.of("1599568789 +0200"),
+            user,
+            Timestamp.of("1599568810 +0200"),
+            "Merge\n\nWith a body.\n"
+        );
+
+    @Test
+    void parse() {
+        CommitView view = CommitView.parse(commit.getBytes());
+
+        Assertions.assertEquals(commit.getTree(), view.getTree());
+        Assertions.assertEquals(2, view.getParentCount());
+        Assertions.assertEquals(commit.getParents().get(1), view.getParent(1));
+        Assertions.assertEquals(user.toString(), view.getAuthor().toString());
+        Assertions.assertEquals("1599568789 +0200", view.getAuthorDate().toString());
+        Assertions.assertEquals(1599568810, view.getCommitTime());
+        Assertions.assertEquals("Merge\n\nWith a body.\n", view.getMessage());
+    }
+
+    @Test
+    void skipsUnknownHeaders() {
+        String body = "tree 5e1dd7430fe0d9b1678543ae1a318485d69fdd2c\n"
+            + "author Jane Doe <jane@example.com> 1599568789 +0200\n"
+            + "committer Jane Doe <jane@example.com> 1599568810 +0200\n"
+            + "gpgsig -----BEGIN PGP SIGNATURE-----\n"
+            + " \n"
+            + " -----END PGP SIGNATURE-----\n"
+            + "\n"
+            + "Signed\n";
+        byte[] header = LooseObject.getHeader("commit", body.length());
+        byte[] input = (new String(header, StandardCharsets.UTF_8) + body).getBytes(StandardCharsets.UTF_8);
+
+        CommitView view = CommitView.parse(input);
+
+        Assertions.assertEquals(0, view.getParentCount());
+        Assertions.assertEquals("Signed\n", view.getMessage());
+    }
+
+    @Test
+    void malformed() {
+        Assertions.assertThrows(FatalParseException.class, () -> CommitView.parse(new Blob(new byte[0]).getBytes()));
+        byte[] header = LooseObject.getHeader("commit", 5);
+        byte[] input = (new String(header, StandardCharsets.UTF_8) + "tree ").getBytes(StandardCharsets.UTF_8);
+        Assertions.assertThrows(FatalParseException.class, () -> CommitView.parse(input));
+        String body = "tree 5e1dd743\n"
+            + "author Jane Doe <jane@example.com> 1599568789 +0200\n"
+            + "committer Jane Doe <jane@example.com> 1599568810 +0200\n"
+            + "\n";
+        byte[] shortHash = (new String(LooseObject.getHeader("commit", body.length()), StandardCharsets.UTF_8) + body).getBytes(StandardCharsets.UTF_8);
+        Assertions.assertThrows(FatalParseException.class, () -> CommitView.parse(shortHash));
+        Assertions.assertThrows(FatalParseException.class, () -> Commit.parse(shortHash));
+    }
+}
@@ -0,0 +1,38 @@
+package record;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CompressionPolicyTest {
+    private final CompressionPolicy policy = new CompressionPolicy(6, 7, 8, Deflater.BEST_SPEED, 100);
+    private final byte[] text = "All work and no play makes Jack a dull boy.\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void levels() {
+        Assertions.assertEquals(Deflater.BEST_SPEED, policy.getLevel("blob", "a.txt", text, 0, 100, 100));
+        Assertions.assertEquals(6, policy.getLevel("blob", "a.txt", text, 0, text.length, text.length));
+        Assertions.assertEquals(6, policy.getLevel("blob", null, text, 0, text.length, text.length));
+        Assertions.assertEquals(7, policy.getLevel("tree", null, text, 0, text.length, text.length));
+        Assertions.assertEquals(8, policy.getLevel("commit", null, text, 0, text.length, text.length));
+    }
+
+    @Test
+    void compressed() {
+        byte[] random = new byte[8192];
+        new Random(0).nextBytes(random);
+
+        Assertions.assertEquals(Deflater.NO_COMPRESSION, policy.getLevel("blob", "logo.PNG", text, 0, text.length, text.length));
+        Assertions.assertEquals(Deflater.NO_COMPRESSION, policy.getLevel("blob", "data", random, 0, random.length, 1 << 20));
+        Assertions.assertEquals(Deflater.BEST_SPEED, policy.getLevel("blob", "data", random, 0, 100, 100));
+    }
+
+    @Test
+    void entropy() {
+        Assertions.assertEquals(0, CompressionPolicy.entropy(new byte[16], 0, 16), 1e-9);
+        Assertions.assertEquals(1, CompressionPolicy.entropy(new byte[]{7, 0, 1, 0, 1}, 1, 4), 1e-9);
+    }
+}
@@ -0,0 +1,47 @@
+package record;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class DeltaTest {
+    @Test
+    void roundTrip() {
+        Random random = new Random(0);
+        byte[] base = new byte[100000];
+        random.nextBytes(base);
+        byte[] target = new byte[base.length + 1000];
+        System.arraycopy(base, 0, target, 0, 50000);
+        byte[] inserted = new byte[1000];
+        random.nextBytes(inserted);
+        System.arraycopy(inserted, 0, target, 50000, inserted.length);
+        System.arraycopy(base, 50000, target, 51000, 50000);
+
+        byte[] delta = Delta.encode(base, target);
+
+        Assertions.assertTrue(delta.length < 2000);
+        Assertions.assertArrayEquals(target, Delta.apply(base, delta));
+    }
+
+    @Test
+    void unrelated() {
+        byte[] base = "a\n".getBytes(StandardCharsets.UTF_8);
+        byte[] target = "more stuff\n".getBytes(StandardCharsets.UTF_8);
+
+        Assertions.assertArrayEquals(target, Delta.apply(base, Delta.encode(base, target)));
+        Assertions.assertNull(Delta.encode(new Delta.Base(base), target, 4));
+    }
+
+    @Test
+    void apply() {
+        // Copy two bytes from offset 1, then insert "c".
+        byte[] delta = {3, 3, (byte) 0x91, 1, 2, 1, 'c'};
+
+        Assertions.assertArrayEquals("bcc".getBytes(StandardCharsets.UTF_8), Delta.apply("abc".getBytes(StandardCharsets.UTF_8), delta));
+        Assertions.assertThrows(FatalParseException.class, () -> Delta.apply("ab".getBytes(StandardCharsets.UTF_8), delta));
+        Assertions.assertThrows(FatalParseException.class, () -> Delta.apply("abc".getBytes(StandardCharsets.UTF_8), Arrays.copyOf(delta, 6)));
+    }
+}
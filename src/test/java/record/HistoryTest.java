@@ -0,0 +1,77 @@
+package record;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HistoryTest {
+    private final User user = new User("Jane Doe", "jane@example.com");
+    private final ObjectId tree = ObjectId.parse("5e1dd7430fe0d9b1678543ae1a318485d69fdd2c");
+    private final Map<ObjectId, byte[]> objects = new HashMap<>();
+    private final List<ObjectId> reads = new ArrayList<>();
+    private final CommitGraphWriter writer = new CommitGraphWriter();
+
+    private ObjectId commit(long time, ObjectId... parents) {
+        Timestamp timestamp = Timestamp.of(time + " +0000");
+        Commit commit = new Commit(tree, List.of(parents), user, timestamp, user, timestamp, Long.toString(time));
+        objects.put(commit.getId(), commit.getBytes());
+        writer.add(commit.getId(), tree, parents, time);
+        return commit.getId();
+    }
+
+    private History history(CommitGraph graph) {
+        return new History(id -> {
+            reads.add(id);
+            return objects.get(id);
+        }, graph);
+    }
+
+    private CommitGraph graph() throws IOException {
+        Path path = Files.createTempDirectory("record").resolve("commit-graph");
+        writer.write(path);
+        return new CommitGraph(path);
+    }
+
+    @Test
+    void ancestry() throws IOException {
+        ObjectId root = commit(1);
+        ObjectId left = commit(2, root);
+        ObjectId right = commit(3, root);
+        ObjectId merge = commit(4, left, right);
+        ObjectId other = commit(5, right);
+
+        for (CommitGraph graph : new CommitGraph[] {null, graph()}) {
+            History history = history(graph);
+
+            Assertions.assertTrue(history.isAncestor(root, merge));
+            Assertions.assertTrue(history.isAncestor(merge, merge));
+            Assertions.assertFalse(history.isAncestor(left, other));
+            Assertions.assertFalse(history.isAncestor(merge, root));
+            Assertions.assertEquals(right, history.findMergeBase(merge, other));
+            Assertions.assertEquals(root, history.findMergeBase(left, right));
+            Assertions.assertEquals(left, history.findMergeBase(left, merge));
+        }
+    }
+
+    @Test
+    void graphAvoidsReads() throws IOException {
+        ObjectId root = commit(1);
+        ObjectId id = root;
+        for (int i = 2; i < 100; ++i) {
+            id = commit(i, id);
+        }
+        History history = history(graph());
+
+        Assertions.assertTrue(history.isAncestor(root, id));
+        Assertions.assertEquals(id, history.findMergeBase(id, id));
+        Assertions.assertEquals(root, history.findMergeBase(root, id));
+        Assertions.assertTrue(reads.isEmpty());
+    }
+}
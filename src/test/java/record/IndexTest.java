@@ -0,0 +1,90 @@
+package record;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class IndexTest {
+    private final ObjectId id = ObjectId.parse("78981922613b2afb6025042ff6bd878ac1994e85");
+
+    @Test
+    void roundTrip() throws IOException {
+        Path file = Files.createTempDirectory("record").resolve("index");
+        Index.Stat stat = new Index.Stat(2, 0, 1, 0100644);
+        Index index = new Index();
+        index.put("src/a", stat, id);
+        index.write(file);
+
+        Index read = Index.read(file);
+
+        Assertions.assertEquals(id, read.lookup("src/a", stat));
+        Assertions.assertNull(read.lookup("src/a", new Index.Stat(3, 0, 1, 0100644)));
+        Assertions.assertNull(read.lookup("src/b", stat));
+    }
+
+    @Test
+    void racy() throws IOException {
+        Path file = Files.createTempDirectory("record").resolve("index");
+        Index.Stat stat = new Index.Stat(2, Long.MAX_VALUE, 1, 0100644);
+        Index index = new Index();
+        index.put("src/a", stat, id);
+        index.write(file);
+
+        Assertions.assertNull(Index.read(file).lookup("src/a", stat));
+    }
+
+    @Test
+    void putAllBelow() {
+        Index.Stat stat = new Index.Stat(2, 0, 1, 0100644);
+        Index index = new Index();
+        index.put("src", stat, id);
+        index.put("src/a", stat, id);
+        index.put("src/b/c", stat, id);
+        index.put("src.txt", stat, id);
+        index.put("srcs/a", stat, id);
+
+        Index below = new Index();
+        below.putAllBelow(index, "src");
+
+        Assertions.assertEquals(id, below.lookup("src/a", stat));
+        Assertions.assertEquals(id, below.lookup("src/b/c", stat));
+        Assertions.assertNull(below.lookup("src", stat));
+        Assertions.assertNull(below.lookup("src.txt", stat));
+        Assertions.assertNull(below.lookup("srcs/a", stat));
+    }
+
+    @Test
+    void missing() throws IOException {
+        Path file = Files.createTempDirectory("record").resolve("index");
+
+        Assertions.assertNull(Index.read(file).lookup("src/a", new Index.Stat(2, 0, 1, 0100644)));
+    }
+
+    @Test
+    void corrupt() throws IOException {
+        Path file = Files.createTempDirectory("record").resolve("index");
+        Index.Stat stat = new Index.Stat(2, 0, 1, 0100644);
+
+        Files.write(file, new byte[] {'g', 'a', 'r', 'b', 'a', 'g', 'e'});
+
+        Assertions.assertNull(Index.read(file).lookup("src/a", stat));
+
+        // The right magic and version, followed by a path that isn't modified UTF-8.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream stream = new DataOutputStream(bytes)) {
+            stream.writeInt(0x52494458);
+            stream.writeInt(1);
+            stream.writeInt(1);
+            stream.writeShort(2);
+            stream.write(new byte[] {(byte) 0xff, (byte) 0xff});
+        }
+        Files.write(file, bytes.toByteArray());
+
+        Assertions.assertNull(Index.read(file).lookup("src/a", stat));
+    }
+}
@@ -0,0 +1,64 @@
+package record;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ObjectBatchTest {
+    private final Blob blob = new Blob("more stuff\n".getBytes(StandardCharsets.UTF_8));
+    private final Path path = Path.of("de/8ed3a567a5e7f2f7eb99365f8b4e144a08ce77");
+
+    private static long countFiles(Path directory) throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            return stream.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    void commit() throws IOException {
+        Path directory = Files.createTempDirectory("record");
+        ObjectSet objects = new ObjectSet(directory, id -> false);
+
+        ObjectBuffer buffer = new ObjectBuffer();
+        buffer.writeObject(blob);
+
+        try (ObjectBatch batch = new ObjectBatch(directory, objects)) {
+            ObjectId id = ObjectWriter.write(directory, batch, buffer, Deflater.DEFAULT_COMPRESSION);
+            try (ObjectWriter writer = new ObjectWriter(directory, batch, blob.getType(), blob.getBody().length, Deflater.DEFAULT_COMPRESSION)) {
+                writer.write(blob.getBody());
+                writer.publish();
+            }
+
+            Assertions.assertTrue(batch.contains(id));
+            Assertions.assertFalse(objects.contains(id));
+            Assertions.assertFalse(Files.exists(directory.resolve(path)));
+            Assertions.assertEquals(1, countFiles(directory));
+
+            batch.commit();
+
+            Assertions.assertTrue(objects.contains(id));
+        }
+
+        Assertions.assertTrue(Files.exists(directory.resolve(path)));
+        Assertions.assertEquals(1, countFiles(directory));
+    }
+
+    @Test
+    void close() throws IOException {
+        Path directory = Files.createTempDirectory("record");
+        ObjectBuffer buffer = new ObjectBuffer();
+        buffer.writeObject(blob);
+
+        try (ObjectBatch batch = new ObjectBatch(directory, new ObjectSet(directory, id -> false))) {
+            ObjectWriter.write(directory, batch, buffer, Deflater.DEFAULT_COMPRESSION);
+        }
+
+        Assertions.assertEquals(0, countFiles(directory));
+    }
+}
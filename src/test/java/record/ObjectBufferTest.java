@@ -0,0 +1,76 @@
+package record;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ObjectBufferTest {
+    private static String content(ObjectBuffer buffer) {
+        return new String(buffer.getArray(), buffer.getStart(), buffer.getEnd() - buffer.getStart(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writeObject() {
+        ObjectBuffer buffer = new ObjectBuffer();
+        Tree tree = new Tree(
+            Arrays.asList(
+                new Directory("d", ObjectId.parse("61780798228d17af2d34fce4cfbdf35556832472")),
+                new File("é", true, ObjectId.parse("78981922613b2afb6025042ff6bd878ac1994e85"))
+            )
+        );
+
+        buffer.writeObject(tree);
+
+        byte[] expected = (
+            "tree 58\0"
+                + "40000 d\0" + new String(Base16.decode("61780798228d17af2d34fce4cfbdf35556832472"), StandardCharsets.ISO_8859_1)
+                + "100755 Ã©\0" + new String(Base16.decode("78981922613b2afb6025042ff6bd878ac1994e85"), StandardCharsets.ISO_8859_1)
+        ).getBytes(StandardCharsets.ISO_8859_1);
+        Assertions.assertArrayEquals(expected, buffer.copyContent());
+        Assertions.assertEquals("tree", buffer.getType());
+        Assertions.assertEquals(buffer.getEnd() - 58, buffer.getBodyStart());
+    }
+
+    @Test
+    void reuse() {
+        ObjectBuffer buffer = new ObjectBuffer();
+        User user = new User("Jane Doe", "jane@example.com");
+        Timestamp timestamp = Timestamp.of("1599568789 +0200");
+        List<ObjectId> parents = new ArrayList<>();
+        parents.add(ObjectId.parse("42a22126b2d4fef6dd6537ecad0e63be1bc4c210"));
+        Commit commit = new Commit(ObjectId.parse("5e1dd7430fe0d9b1678543ae1a318485d69fdd2c"), parents, user, timestamp, user, timestamp, "x".repeat(1000));
+
+        buffer.writeObject(new Blob(new byte[0]));
+        Assertions.assertEquals("blob 0\0", content(buffer));
+
+        buffer.writeObject(commit);
+        Assertions.assertEquals(
+            "commit 1203\0"
+                + "tree 5e1dd7430fe0d9b1678543ae1a318485d69fdd2c\n"
+                + "parent 42a22126b2d4fef6dd6537ecad0e63be1bc4c210\n"
+                + "author Jane Doe <jane@example.com> 1599568789 +0200\n"
+                + "committer Jane Doe <jane@example.com> 1599568789 +0200\n"
+                + "\n"
+                + "x".repeat(1000) + "\n",
+            content(buffer)
+        );
+
+        buffer.writeObject(new Blob("a\n".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals("blob 2\0a\n", content(buffer));
+    }
+
+    @Test
+    void getHashKeepsSharedBuffer() {
+        ObjectBuffer buffer = ObjectBuffer.get();
+        buffer.writeObject(new Blob("a\n".getBytes(StandardCharsets.UTF_8)));
+
+        ObjectId id = new Blob("b\n".getBytes(StandardCharsets.UTF_8)).getId();
+
+        Assertions.assertEquals("61780798228d17af2d34fce4cfbdf35556832472", id.toString());
+        Assertions.assertEquals("blob 2\0a\n", content(buffer));
+    }
+}
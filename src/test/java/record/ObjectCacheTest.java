@@ -0,0 +1,38 @@
+package record;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ObjectCacheTest {
+    private final ObjectId a = new Blob("a\n".getBytes(StandardCharsets.UTF_8)).getId();
+    private final ObjectId b = new Blob("b\n".getBytes(StandardCharsets.UTF_8)).getId();
+    private final ObjectId c = new Blob("c\n".getBytes(StandardCharsets.UTF_8)).getId();
+
+    @Test
+    void evict() {
+        ObjectCache cache = new ObjectCache(10);
+        cache.put(a, "a", 4);
+        cache.put(b, "b", 4);
+        Assertions.assertEquals("a", cache.get(a));
+
+        cache.put(c, "c", 4);
+
+        Assertions.assertEquals(8, cache.getSize());
+        Assertions.assertEquals("a", cache.get(a));
+        Assertions.assertNull(cache.get(b));
+        Assertions.assertEquals("c", cache.get(c));
+        Assertions.assertEquals(3, cache.getHits());
+        Assertions.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void tooLarge() {
+        ObjectCache cache = new ObjectCache(10);
+        cache.put(a, "a", 11);
+
+        Assertions.assertNull(cache.get(a));
+        Assertions.assertEquals(0, cache.getSize());
+    }
+}
@@ -0,0 +1,29 @@
+package record;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ObjectIdMapTest {
+    private static ObjectId id(int i) {
+        return new Blob(Integer.toString(i).getBytes(StandardCharsets.UTF_8)).getId();
+    }
+
+    @Test
+    void put() {
+        ObjectIdMap<Integer> map = new ObjectIdMap<>();
+        for (int i = 0; i < 1000; ++i) {
+            Assertions.assertNull(map.put(id(i), i));
+        }
+
+        Assertions.assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; ++i) {
+            Assertions.assertEquals(i, map.get(id(i)));
+        }
+        Assertions.assertEquals(0, map.put(id(0), -1));
+        Assertions.assertEquals(-1, map.putIfAbsent(id(0), 0));
+        Assertions.assertFalse(map.containsKey(id(1000)));
+        Assertions.assertNull(map.get(id(1000)));
+    }
+}
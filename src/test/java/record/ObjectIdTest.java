@@ -0,0 +1,38 @@
+package record;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ObjectIdTest {
+    private final String encoded = "f078981922613b2afb6025042ff6bd878ac1994e";
+
+    @Test
+    void roundTrip() {
+        ObjectId id = ObjectId.parse(encoded);
+
+        Assertions.assertEquals(encoded, id.toString());
+        Assertions.assertArrayEquals(Base16.decode(encoded), id.toBytes());
+        Assertions.assertEquals(id, ObjectId.fromBytes(Base16.decode(encoded)));
+        Assertions.assertEquals(id.hashCode(), ObjectId.fromBytes(Base16.decode(encoded)).hashCode());
+        Assertions.assertEquals(0xf0, id.getFirstByte());
+    }
+
+    @Test
+    void compareTo() {
+        ObjectId small = ObjectId.parse("0078981922613b2afb6025042ff6bd878ac1994e");
+        ObjectId large = ObjectId.parse(encoded);
+
+        Assertions.assertTrue(small.compareTo(large) < 0);
+        Assertions.assertTrue(large.compareTo(small) > 0);
+        Assertions.assertEquals(0, large.compareTo(ByteBuffer.wrap(Base16.decode(encoded)), 0));
+        Assertions.assertTrue(small.compareTo(ByteBuffer.wrap(Base16.decode(encoded)), 0) < 0);
+    }
+
+    @Test
+    void parseInvalid() {
+        Assertions.assertThrows(FatalParseException.class, () -> ObjectId.parse("f0"));
+        Assertions.assertThrows(FatalParseException.class, () -> ObjectId.parse(encoded.replace('f', 'g')));
+    }
+}
@@ -0,0 +1,47 @@
+package record;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ObjectSetTest {
+    private final ObjectId loose = ObjectId.parse("de8ed3a567a5e7f2f7eb99365f8b4e144a08ce77");
+    private final ObjectId packed = ObjectId.parse("de8ed3a567a5e7f2f7eb99365f8b4e144a08ce78");
+    private final ObjectId added = ObjectId.parse("78981922613b2afb6025042ff6bd878ac1994e85");
+
+    @Test
+    void contains() throws IOException {
+        Path directory = Files.createTempDirectory("record");
+        Files.createDirectories(directory.resolve("de"));
+        Files.createFile(directory.resolve("de/8ed3a567a5e7f2f7eb99365f8b4e144a08ce77"));
+        Files.createFile(directory.resolve("de/tmp_obj_123"));
+
+        ObjectSet objects = new ObjectSet(directory, id -> id.equals(packed));
+
+        Assertions.assertTrue(objects.contains(loose));
+        Assertions.assertTrue(objects.contains(packed));
+        Assertions.assertFalse(objects.contains(added));
+
+        objects.add(added);
+
+        Assertions.assertTrue(objects.contains(added));
+    }
+
+    @Test
+    void listsOnce() throws IOException {
+        Path directory = Files.createTempDirectory("record");
+        ObjectSet objects = new ObjectSet(directory, id -> false);
+
+        Assertions.assertFalse(objects.contains(loose));
+
+        // Objects that other processes write afterwards aren't seen.
+        Files.createDirectories(directory.resolve("de"));
+        Files.createFile(directory.resolve("de/8ed3a567a5e7f2f7eb99365f8b4e144a08ce77"));
+
+        Assertions.assertFalse(objects.contains(loose));
+        Assertions.assertTrue(new ObjectSet(directory, id -> false).contains(loose));
+    }
+}
@@ -0,0 +1,85 @@
+package record;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ObjectWriterTest {
+    private final Blob blob = new Blob("more stuff\n".getBytes(StandardCharsets.UTF_8));
+    private final String encodedHash = "de8ed3a567a5e7f2f7eb99365f8b4e144a08ce77";
+
+    private static byte[] inflate(Path path) throws IOException {
+        try (InputStream stream = new InflaterInputStream(Files.newInputStream(path))) {
+            return stream.readAllBytes();
+        }
+    }
+
+    private static long countFiles(Path directory) throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            return stream.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static ObjectBatch newBatch(Path directory) {
+        return new ObjectBatch(directory, new ObjectSet(directory, id -> false));
+    }
+
+    @Test
+    void write() throws IOException {
+        Path directory = Files.createTempDirectory("record");
+        ObjectBuffer buffer = new ObjectBuffer();
+        buffer.writeObject(blob);
+
+        ObjectId id;
+        try (ObjectBatch batch = newBatch(directory)) {
+            id = ObjectWriter.write(directory, batch, buffer, Deflater.DEFAULT_COMPRESSION);
+            ObjectWriter.write(directory, batch, buffer, Deflater.DEFAULT_COMPRESSION);
+            batch.commit();
+        }
+
+        Assertions.assertEquals(encodedHash, id.toString());
+        Assertions.assertArrayEquals(blob.getBytes(), inflate(directory.resolve("de/8ed3a567a5e7f2f7eb99365f8b4e144a08ce77")));
+        Assertions.assertEquals(1, countFiles(directory));
+    }
+
+    @Test
+    void publish() throws IOException {
+        Path directory = Files.createTempDirectory("record");
+
+        ObjectId id;
+        try (ObjectBatch batch = newBatch(directory)) {
+            try (ObjectWriter writer = new ObjectWriter(directory, batch, blob.getType(), blob.getBody().length, Deflater.DEFAULT_COMPRESSION)) {
+                writer.write(blob.getBody());
+                id = writer.publish();
+            }
+            batch.commit();
+        }
+
+        Assertions.assertEquals(encodedHash, id.toString());
+        Assertions.assertArrayEquals(blob.getBytes(), inflate(directory.resolve("de/8ed3a567a5e7f2f7eb99365f8b4e144a08ce77")));
+        Assertions.assertEquals(1, countFiles(directory));
+    }
+
+    @Test
+    void publishWrongLength() throws IOException {
+        Path directory = Files.createTempDirectory("record");
+
+        try (ObjectBatch batch = newBatch(directory)) {
+            try (ObjectWriter writer = new ObjectWriter(directory, batch, blob.getType(), blob.getBody().length + 1, Deflater.DEFAULT_COMPRESSION)) {
+                writer.write(blob.getBody());
+                Assertions.assertThrows(IOException.class, writer::publish);
+            }
+            batch.commit();
+        }
+
+        Assertions.assertEquals(0, countFiles(directory));
+    }
+}
@@ -0,0 +1,101 @@
+package record;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PackFileTest {
+    private final Blob a = new Blob("a\n".getBytes(StandardCharsets.UTF_8));
+    private final Blob b = new Blob("b\n".getBytes(StandardCharsets.UTF_8));
+    private final Tree tree =
+        new Tree(
+            Arrays.asList(
+                new File("a", false, a.getHash()),
+                new File("b", false, b.getHash())
+            )
+        );
+
+    @Test
+    void delta() throws IOException {
+        byte[] data = new byte[10000];
+        new Random(0).nextBytes(data);
+        Blob base = new Blob(data);
+        byte[] modified = data.clone();
+        modified[5000] ^= 1;
+        Blob first = new Blob(modified);
+        modified = modified.clone();
+        modified[6000] ^= 1;
+        Blob second = new Blob(modified);
+        Path directory = Files.createTempDirectory("record");
+        Path pack;
+        try (PackWriter writer = new PackWriter(directory, 3)) {
+            writer.write(base.getBytes());
+            writer.writeDelta(first.getId(), base.getId(), Delta.encode(base.getBody(), first.getBody()));
+            writer.writeDelta(second.getId(), first.getId(), Delta.encode(first.getBody(), second.getBody()));
+            pack = writer.finish();
+        }
+        String name = pack.getFileName().toString();
+
+        Assertions.assertTrue(Files.size(pack) < 2 * data.length);
+        try (PackFile packFile = new PackFile(pack.resolveSibling(name.replace(".pack", ".idx")))) {
+            Assertions.assertArrayEquals(second.getBytes(), packFile.read(second.getId()));
+            Assertions.assertArrayEquals(first.getBytes(), packFile.read(first.getId()));
+            try (InputStream stream = packFile.open(second.getId())) {
+                Assertions.assertArrayEquals(second.getBytes(), stream.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        Path directory = Files.createTempDirectory("record");
+        Path pack;
+        try (PackWriter writer = new PackWriter(directory, 3)) {
+            writer.write(tree.getBytes());
+            writer.write(a.getBytes());
+            writer.write(b.getBytes());
+            pack = writer.finish();
+        }
+        String name = pack.getFileName().toString();
+
+        try (PackFile packFile = new PackFile(pack.resolveSibling(name.replace(".pack", ".idx")))) {
+            Assertions.assertArrayEquals(a.getBytes(), packFile.read(a.getId()));
+            Assertions.assertArrayEquals(tree.getBytes(), packFile.read(tree.getId()));
+            try (InputStream stream = packFile.open(b.getId())) {
+                Assertions.assertArrayEquals(b.getBytes(), stream.readAllBytes());
+            }
+            Assertions.assertFalse(packFile.contains(new Blob(new byte[0]).getId()));
+            Assertions.assertNull(packFile.read(new Blob(new byte[0]).getId()));
+        }
+    }
+
+    @Test
+    void truncated() throws IOException {
+        Path directory = Files.createTempDirectory("record");
+        Path pack;
+        try (PackWriter writer = new PackWriter(directory, 1)) {
+            writer.write(a.getBytes());
+            pack = writer.finish();
+        }
+        String name = pack.getFileName().toString();
+        Files.setPosixFilePermissions(pack, PosixFilePermissions.fromString("rw-r--r--"));
+        // Only the pack's header is left.
+        try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.WRITE)) {
+            channel.truncate(12);
+        }
+
+        try (PackFile packFile = new PackFile(pack.resolveSibling(name.replace(".pack", ".idx")))) {
+            Assertions.assertThrows(FatalParseException.class, () -> packFile.read(a.getId()));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package record;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PackedRefsTest {
+    private final ObjectId master = ObjectId.parse("3d55094ecc4dc83fccdeac612207d3f313b570ce");
+    private final ObjectId tag = ObjectId.parse("9b1f4e6fb3b1d43d9e2ec3a4f5ad8f0cb36d9ba4");
+
+    private static List<String> list(PackedRefs refs, String prefix) throws IOException {
+        List<String> result = new ArrayList<>();
+        refs.forEach(prefix, (name, id) -> result.add(name));
+        return result;
+    }
+
+    @Test
+    void findSorted() throws IOException {
+        Path path = Files.createTempDirectory("record").resolve("packed-refs");
+        Files.writeString(
+            path,
+            "# pack-refs with: peeled fully-peeled sorted \n"
+                + master + " refs/heads/a\n"
+                + master + " refs/heads/a/b\n"
+                + master + " refs/heads/master\n"
+                + tag + " refs/tags/v1.0\n"
+                + "^" + master + "\n"
+                + tag + " refs/tags/v2.0\n"
+        );
+
+        PackedRefs refs = PackedRefs.open(path);
+
+        Assertions.assertEquals(master, refs.find("refs/heads/master"));
+        Assertions.assertEquals(master, refs.find("refs/heads/a"));
+        Assertions.assertEquals(tag, refs.find("refs/tags/v1.0"));
+        Assertions.assertEquals(tag, refs.find("refs/tags/v2.0"));
+        Assertions.assertNull(refs.find("refs/heads/"));
+        Assertions.assertNull(refs.find("refs/heads/mast"));
+        Assertions.assertNull(refs.find("refs/tags/v3.0"));
+        Assertions.assertNull(refs.find("HEAD"));
+        Assertions.assertEquals(List.of("refs/heads/a", "refs/heads/a/b", "refs/heads/master"), list(refs, "refs/heads/"));
+        Assertions.assertEquals(List.of("refs/tags/v1.0", "refs/tags/v2.0"), list(refs, "refs/tags/"));
+        Assertions.assertEquals(List.of(), list(refs, "refs/remotes/"));
+    }
+
+    @Test
+    void findUnsorted() throws IOException {
+        Path path = Files.createTempDirectory("record").resolve("packed-refs");
+        Files.writeString(path, master + " refs/heads/master\n" + tag + " refs/heads/a");
+
+        PackedRefs refs = PackedRefs.open(path);
+
+        Assertions.assertEquals(master, refs.find("refs/heads/master"));
+        Assertions.assertEquals(tag, refs.find("refs/heads/a"));
+        Assertions.assertEquals(List.of("refs/heads/a", "refs/heads/master"), list(refs, "refs/"));
+    }
+
+    @Test
+    void findMany() throws IOException {
+        Path path = Files.createTempDirectory("record").resolve("packed-refs");
+        Map<String, ObjectId> written = new HashMap<>();
+        for (int i = 0; i < 1000; ++i) {
+            written.put("refs/heads/" + i, i % 2 == 0 ? master : tag);
+        }
+
+        PackedRefs.write(path, written);
+        PackedRefs refs = PackedRefs.open(path);
+
+        for (int i = 0; i < 1000; ++i) {
+            Assertions.assertEquals(i % 2 == 0 ? master : tag, refs.find("refs/heads/" + i));
+        }
+        Assertions.assertNull(refs.find("refs/heads/1000"));
+        Assertions.assertEquals(111, list(refs, "refs/heads/1").size());
+    }
+
+    @Test
+    void openMissing() throws IOException {
+        Assertions.assertNull(PackedRefs.open(Files.createTempDirectory("record").resolve("packed-refs")));
+    }
+}
@@ -0,0 +1,181 @@
+package record;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RefDatabaseTest {
+    private final ObjectId a = ObjectId.parse("3d55094ecc4dc83fccdeac612207d3f313b570ce");
+    private final ObjectId b = ObjectId.parse("9b1f4e6fb3b1d43d9e2ec3a4f5ad8f0cb36d9ba4");
+
+    private Path directory;
+    private RefDatabase refs;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("record");
+        refs = new RefDatabase(directory);
+        refs.write(new Reference("HEAD", true, "refs/heads/master"));
+    }
+
+    private List<String> list(String prefix) throws IOException {
+        List<String> result = new ArrayList<>();
+        refs.forEach(prefix, reference -> result.add(reference.getName() + " " + reference.getTarget()));
+        return result;
+    }
+
+    @Test
+    void resolve() throws IOException {
+        Assertions.assertEquals("refs/heads/master", refs.follow("HEAD"));
+        Assertions.assertNull(refs.resolve("HEAD"));
+
+        refs.write(new Reference("refs/heads/master", a));
+
+        Assertions.assertEquals(a, refs.resolve("HEAD"));
+        Assertions.assertEquals("3d55094ecc4dc83fccdeac612207d3f313b570ce\n", Files.readString(directory.resolve("refs/heads/master")));
+    }
+
+    @Test
+    void readChanged() throws IOException {
+        refs.write(new Reference("refs/heads/master", a));
+        Assertions.assertEquals(a, refs.resolve("HEAD"));
+
+        // Another process replaces the file.
+        Path temporary = directory.resolve("refs/heads/master.lock");
+        Files.writeString(temporary, b + "\n");
+        Files.move(temporary, directory.resolve("refs/heads/master"), StandardCopyOption.ATOMIC_MOVE);
+
+        Assertions.assertEquals(b, refs.resolve("HEAD"));
+    }
+
+    @Test
+    void readRacy() throws IOException {
+        refs.write(new Reference("refs/heads/master", a));
+        Path path = directory.resolve("refs/heads/master");
+        FileTime modified = Files.getLastModifiedTime(path);
+        Assertions.assertEquals(a, refs.resolve("HEAD"));
+
+        // Rewritten in place within the timestamp granularity, so the stat doesn't change.
+        Files.writeString(path, b + "\n");
+        Files.setLastModifiedTime(path, modified);
+
+        Assertions.assertEquals(b, refs.resolve("HEAD"));
+    }
+
+    @Test
+    void loosePrecedesPacked() throws IOException {
+        PackedRefs.write(directory.resolve("packed-refs"), Map.of("refs/heads/master", a, "refs/heads/x", a));
+        refs.write(new Reference("refs/heads/master", b));
+        refs.write(new Reference("refs/heads/y", b));
+
+        Assertions.assertEquals(b, refs.resolve("HEAD"));
+        Assertions.assertEquals(a, refs.resolve("refs/heads/x"));
+        Assertions.assertEquals(
+            List.of("refs/heads/master " + b, "refs/heads/x " + a, "refs/heads/y " + b),
+            list("refs/heads/")
+        );
+    }
+
+    @Test
+    void pack() throws IOException {
+        refs.write(new Reference("refs/heads/master", a));
+        refs.write(new Reference("refs/heads/feature/x", b));
+        refs.write(new Reference("refs/remotes/origin/HEAD", true, "refs/remotes/origin/master"));
+
+        refs.pack();
+
+        Assertions.assertFalse(Files.exists(directory.resolve("refs/heads/master")));
+        Assertions.assertFalse(Files.exists(directory.resolve("refs/heads/feature/x")));
+        Assertions.assertTrue(Files.exists(directory.resolve("refs/remotes/origin/HEAD")));
+        Assertions.assertEquals(
+            "# pack-refs with: sorted \n" + b + " refs/heads/feature/x\n" + a + " refs/heads/master\n",
+            Files.readString(directory.resolve("packed-refs"))
+        );
+        Assertions.assertEquals(a, refs.resolve("HEAD"));
+        Assertions.assertEquals(List.of("refs/heads/feature/x " + b, "refs/heads/master " + a), list("refs/heads/"));
+
+        refs.write(new Reference("refs/heads/master", b));
+
+        Assertions.assertEquals(b, refs.resolve("HEAD"));
+    }
+
+    @Test
+    void compareAndSet() throws IOException {
+        refs.compareAndSet(new Reference("refs/heads/master", a), null);
+
+        Assertions.assertThrows(RefUpdateException.class, () -> refs.compareAndSet(new Reference("refs/heads/master", b), null));
+        Assertions.assertThrows(RefUpdateException.class, () -> refs.compareAndSet(new Reference("refs/heads/master", b), b));
+        Assertions.assertEquals(a, refs.resolve("HEAD"));
+
+        refs.compareAndSet(new Reference("refs/heads/master", b), a);
+
+        Assertions.assertEquals(b, refs.resolve("HEAD"));
+        Assertions.assertFalse(Files.exists(directory.resolve("refs/heads/master.lock")));
+    }
+
+    @Test
+    void compareAndSetRace() throws Exception {
+        refs.write(new Reference("refs/heads/master", a));
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < threads; ++i) {
+                // Each thread uses its own instance, like separate processes.
+                RefDatabase other = new RefDatabase(directory);
+                results.add(executor.submit(() -> {
+                    try {
+                        other.compareAndSet(new Reference("refs/heads/master", b), a);
+                        return true;
+                    } catch (RefUpdateException e) {
+                        return false;
+                    }
+                }));
+            }
+            int succeeded = 0;
+            for (Future<Boolean> result : results) {
+                succeeded += result.get() ? 1 : 0;
+            }
+            Assertions.assertEquals(1, succeeded);
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(b, refs.resolve("HEAD"));
+    }
+
+    @Test
+    void lockHeld() throws Exception {
+        refs.write(new Reference("refs/heads/master", a));
+        Path lock = Files.createFile(directory.resolve("refs/heads/master.lock"));
+
+        Assertions.assertThrows(RefUpdateException.class, () -> refs.write(new Reference("refs/heads/master", b)));
+        Assertions.assertTrue(Files.exists(lock));
+
+        // A lock that is released in time is waited for.
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                Files.delete(lock);
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        refs.compareAndSet(new Reference("refs/heads/master", b), a);
+        thread.join();
+
+        Assertions.assertEquals(b, refs.resolve("HEAD"));
+    }
+}
@@ -1,8 +1,23 @@
 package record;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -19,6 +34,94 @@ public class RepositoryTest {
         Assertions.assertEquals("ref: refs/heads/master\n", Files.readString(directory.resolve(".git/HEAD")));
     }
 
+    /**
+     * Returns the ids that the index records for the working directory's
+     * paths, including the trees of the directories.
+     */
+    private static Map<String, ObjectId> readIndex(Path directory) throws IOException {
+        Index index = Index.read(directory.resolve(".git/record-index"));
+        Map<String, ObjectId> result = new HashMap<>();
+        try (Stream<Path> stream = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) stream::iterator) {
+                String key = directory.relativize(path).toString();
+                if (!key.equals(".git") && !key.startsWith(".git/")) {
+                    result.put(key, index.get(key).getId());
+                }
+            }
+        }
+        return result;
+    }
+
+    @Test
+    void commitParallel() throws IOException {
+        List<Path> directories = new ArrayList<>();
+        for (int workers : new int[] {1, 8}) {
+            Path directory = Files.createTempDirectory("record");
+            Repository repository = new Repository(directory);
+            repository.init();
+            repository.setFreezeWorkers(workers);
+            for (int i = 0; i < 8; ++i) {
+                for (int j = 0; j < 8; ++j) {
+                    Path subdirectory = Files.createDirectories(directory.resolve("src/" + i + "/" + j));
+                    for (int k = 0; k < 8; ++k) {
+                        Files.writeString(subdirectory.resolve(Integer.toString(k)), i + " " + j + " " + k + "\n");
+                    }
+                    // The same blob is frozen by many workers at once.
+                    Files.writeString(subdirectory.resolve("same"), "same\n");
+                }
+            }
+            Files.writeString(directory.resolve("src/a"), "a\n");
+
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560870 +0100"), "Initial commit");
+
+            directories.add(directory);
+        }
+
+        Map<String, ObjectId> sequential = readIndex(directories.get(0));
+        Map<String, ObjectId> parallel = readIndex(directories.get(1));
+        Assertions.assertEquals(8 * 8 * 10 + 8 + 3, sequential.size());
+        Assertions.assertEquals(sequential, parallel);
+        Assertions.assertEquals(
+            Files.readString(directories.get(0).resolve(".git/refs/heads/master")),
+            Files.readString(directories.get(1).resolve(".git/refs/heads/master"))
+        );
+    }
+
+    @Test
+    void checkoutParallel() throws IOException {
+        Path directory = Files.createTempDirectory("record");
+        Repository repository = new Repository(directory);
+        repository.init();
+        repository.setThawWorkers(4);
+        Files.writeString(directory.resolve("a"), "a\n");
+        repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560870 +0100"), "Initial commit");
+        String initial = Files.readString(directory.resolve(".git/refs/heads/master")).strip();
+        for (int i = 0; i < 10; ++i) {
+            Path subdirectory = Files.createDirectories(directory.resolve("src/" + i));
+            for (int j = 0; j < 10; ++j) {
+                Files.writeString(subdirectory.resolve(Integer.toString(j)), i + " " + j + "\n");
+            }
+        }
+        Files.setPosixFilePermissions(directory.resolve("src/0/0"), PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.createSymbolicLink(directory.resolve("b"), Path.of("a"));
+        repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560898 +0100"), "Add more stuff");
+
+        repository.checkout(initial);
+
+        Assertions.assertFalse(Files.exists(directory.resolve("src")));
+
+        repository.checkout("master");
+
+        for (int i = 0; i < 10; ++i) {
+            for (int j = 0; j < 10; ++j) {
+                Assertions.assertEquals(i + " " + j + "\n", Files.readString(directory.resolve("src/" + i + "/" + j)));
+            }
+        }
+        Assertions.assertTrue(Files.isExecutable(directory.resolve("src/0/0")));
+        Assertions.assertFalse(Files.isExecutable(directory.resolve("src/0/1")));
+        Assertions.assertEquals(Path.of("a"), Files.readSymbolicLink(directory.resolve("b")));
+    }
+
     @Nested
     class WithSetup {
         private Path directory;
@@ -39,6 +142,243 @@ public class RepositoryTest {
             Assertions.assertEquals("3d55094ecc4dc83fccdeac612207d3f313b570ce\n", Files.readString(directory.resolve(".git/refs/heads/master")));
         }
 
+        @Test
+        void commitUnchanged() throws IOException {
+            Files.createDirectory(directory.resolve("x"));
+            Files.writeString(directory.resolve("x/b"), "b\n");
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560898 +0100"), "Add b");
+            Files.writeString(directory.resolve("src/a"), "c\n");
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560899 +0100"), "Change a");
+
+            repository.checkout("3d55094ecc4dc83fccdeac612207d3f313b570ce");
+
+            Assertions.assertEquals("a\n", Files.readString(directory.resolve("src/a")));
+            Assertions.assertFalse(Files.exists(directory.resolve("x")));
+
+            repository.checkout("master");
+
+            Assertions.assertEquals("c\n", Files.readString(directory.resolve("src/a")));
+            Assertions.assertEquals("b\n", Files.readString(directory.resolve("x/b")));
+        }
+
+        @Test
+        void commitWatched() throws IOException, InterruptedException {
+            Files.createDirectories(directory.resolve("src/main"));
+            Files.createDirectories(directory.resolve("test"));
+            Files.writeString(directory.resolve("src/main/b"), "b\n");
+            Files.writeString(directory.resolve("test/c"), "c\n");
+            Watcher watcher = new Watcher(directory);
+            Thread thread = new Thread(() -> {
+                try {
+                    watcher.run();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            String watched;
+            try {
+                repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560898 +0100"), "Add b and c");
+                Files.writeString(directory.resolve("src/main/b"), "d\n");
+                Files.createDirectories(directory.resolve("x/y"));
+                Files.writeString(directory.resolve("x/y/e"), "e\n");
+                Files.delete(directory.resolve("test/c"));
+                Files.delete(directory.resolve("test"));
+                repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560899 +0100"), "Change things");
+                watched = Files.readString(directory.resolve(".git/refs/heads/master")).strip();
+            } finally {
+                watcher.close();
+                thread.join();
+            }
+
+            // Without the watcher and the index, everything is hashed again.
+            Files.delete(directory.resolve(".git/record-index"));
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560900 +0100"), "Change nothing");
+
+            StringBuilder out = new StringBuilder();
+            repository.diff(watched, "master", false, out);
+            Assertions.assertEquals("", out.toString());
+        }
+
+        @Test
+        void commitLargeFile() throws IOException {
+            byte[] data = new byte[3 << 20];
+            new Random(0).nextBytes(data);
+            Files.write(directory.resolve("large"), data);
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560898 +0100"), "Add large file");
+
+            String encodedHash = Base16.encode(new Blob(data).getHash());
+            Assertions.assertTrue(Files.exists(directory.resolve(".git/objects/" + encodedHash.substring(0, 2) + "/" + encodedHash.substring(2))));
+
+            repository.checkout("3d55094ecc4dc83fccdeac612207d3f313b570ce");
+            repository.checkout("master");
+
+            Assertions.assertArrayEquals(data, Files.readAllBytes(directory.resolve("large")));
+        }
+
+        @Test
+        void gc() throws IOException {
+            Files.writeString(directory.resolve("b"), "b\n");
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560898 +0100"), "Add b");
+
+            repository.gc();
+            repository.gc();
+
+            try (Stream<Path> stream = Files.list(directory.resolve(".git/objects"))) {
+                Assertions.assertEquals(
+                    Set.of(directory.resolve(".git/objects/info"), directory.resolve(".git/objects/pack")),
+                    stream.collect(Collectors.toSet())
+                );
+            }
+            try (Stream<Path> stream = Files.list(directory.resolve(".git/objects/pack"))) {
+                Assertions.assertEquals(2, stream.count());
+            }
+
+            repository.checkout("3d55094ecc4dc83fccdeac612207d3f313b570ce");
+
+            Assertions.assertFalse(Files.exists(directory.resolve("b")));
+
+            repository.checkout("master");
+
+            Assertions.assertEquals("a\n", Files.readString(directory.resolve("src/a")));
+            Assertions.assertEquals("b\n", Files.readString(directory.resolve("b")));
+        }
+
+        @Test
+        void gcAnnotatedTag() throws IOException {
+            byte[] body = (
+                "object 3d55094ecc4dc83fccdeac612207d3f313b570ce\n"
+                    + "type commit\n"
+                    + "tag v1.0\n"
+                    + "tagger Jane Doe <jane@example.com> 1604560880 +0100\n"
+                    + "\n"
+                    + "Version 1.0\n"
+            ).getBytes(StandardCharsets.UTF_8);
+            Path objects = directory.resolve(".git/objects");
+            ObjectId tag;
+            try (ObjectBatch batch = new ObjectBatch(objects, new ObjectSet(objects, id -> false))) {
+                try (ObjectWriter writer = new ObjectWriter(objects, batch, "tag", body.length, Deflater.DEFAULT_COMPRESSION)) {
+                    writer.write(body);
+                    tag = writer.publish();
+                }
+                batch.commit();
+            }
+            Files.createDirectories(directory.resolve(".git/refs/tags"));
+            Files.writeString(directory.resolve(".git/refs/tags/v1.0"), tag + "\n");
+
+            repository.gc();
+
+            // The tag was packed as well, so no loose objects are left.
+            try (Stream<Path> stream = Files.list(objects)) {
+                Assertions.assertEquals(Set.of(objects.resolve("info"), objects.resolve("pack")), stream.collect(Collectors.toSet()));
+            }
+            repository.checkout("master");
+
+            Assertions.assertEquals("a\n", Files.readString(directory.resolve("src/a")));
+        }
+
+        @Test
+        void commitAfterGc() throws IOException {
+            repository.gc();
+            Files.delete(directory.resolve(".git/record-index"));
+            Files.writeString(directory.resolve("b"), "b\n");
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560898 +0100"), "Add b");
+
+            // Only the new blob, tree and commit are written; the packed objects aren't written again.
+            try (Stream<Path> stream = Files.walk(directory.resolve(".git/objects"))) {
+                Assertions.assertEquals(3, stream.filter(path -> path.getParent().getFileName().toString().length() == 2).count());
+            }
+        }
+
+        @Test
+        void checkoutCached() throws IOException {
+            repository.checkout("3d55094ecc4dc83fccdeac612207d3f313b570ce");
+            long misses = repository.getCacheMisses();
+
+            repository.checkout("master");
+
+            Assertions.assertEquals(misses, repository.getCacheMisses());
+            Assertions.assertTrue(repository.getCacheHits() > 0);
+            Assertions.assertEquals("a\n", Files.readString(directory.resolve("src/a")));
+        }
+
+        @Test
+        void log() throws IOException {
+            Files.writeString(directory.resolve("b"), "b\n");
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560898 +0100"), "Add b");
+            StringBuilder out = new StringBuilder();
+
+            repository.log("HEAD", 1, out);
+
+            Assertions.assertTrue(out.toString().startsWith("commit "));
+            Assertions.assertTrue(out.toString().endsWith("Date:   Thu Nov 5 08:21:38 2020 +0100\n\n    Add b\n"));
+
+            out.setLength(0);
+            repository.log("master", 10, out);
+
+            Assertions.assertEquals(
+                "commit 3d55094ecc4dc83fccdeac612207d3f313b570ce\n"
+                    + "Author: Jane Doe <jane@example.com>\n"
+                    + "Date:   Thu Nov 5 08:21:10 2020 +0100\n"
+                    + "\n"
+                    + "    Initial commit\n",
+                out.substring(out.indexOf("\n\ncommit ") + 2)
+            );
+        }
+
+        @Test
+        void commitGraph() throws IOException {
+            ObjectId initial = ObjectId.parse("3d55094ecc4dc83fccdeac612207d3f313b570ce");
+            repository.branch("init");
+            Files.writeString(directory.resolve("b"), "b\n");
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560898 +0100"), "Add b");
+
+            // Commits don't write the graph; only gc does.
+            Assertions.assertFalse(Files.exists(directory.resolve(".git/objects/info/commit-graph")));
+
+            repository.gc();
+            CommitGraph graph = new CommitGraph(directory.resolve(".git/objects/info/commit-graph"));
+
+            Assertions.assertEquals(2, graph.size());
+            Assertions.assertEquals(1604560870, graph.getCommitTime(graph.find(initial)));
+            Assertions.assertTrue(repository.isAncestor("init", "master"));
+            Assertions.assertFalse(repository.isAncestor("master", "init"));
+            Assertions.assertEquals(initial, repository.mergeBase("master", "init"));
+
+            Files.writeString(directory.resolve("c"), "c\n");
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560899 +0100"), "Add c");
+
+            // The new commit isn't in the graph, but ancestry still works.
+            Assertions.assertEquals(2, new CommitGraph(directory.resolve(".git/objects/info/commit-graph")).size());
+            Assertions.assertTrue(repository.isAncestor("init", "master"));
+            Assertions.assertEquals(initial, repository.mergeBase("master", "init"));
+
+            repository.gc();
+
+            Assertions.assertEquals(3, new CommitGraph(directory.resolve(".git/objects/info/commit-graph")).size());
+        }
+
+        @Test
+        void diff() throws IOException {
+            Files.writeString(directory.resolve("src/a"), "changed\n");
+            Files.writeString(directory.resolve("b"), "b\n");
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560898 +0100"), "Change a, add b");
+            StringBuilder out = new StringBuilder();
+
+            repository.diff("3d55094ecc4dc83fccdeac612207d3f313b570ce", "master", true, out);
+
+            Assertions.assertEquals("A\tb\nM\tsrc/a\n", out.toString());
+
+            out.setLength(0);
+            repository.diff("master", "3d55094ecc4dc83fccdeac612207d3f313b570ce", false, out);
+
+            Assertions.assertEquals(
+                ":100644 000000 " + Base16.encode(new Blob("b\n".getBytes()).getHash()) + " 0000000000000000000000000000000000000000 D\tb\n"
+                    + ":100644 100644 " + Base16.encode(new Blob("changed\n".getBytes()).getHash()) + " " + Base16.encode(new Blob("a\n".getBytes()).getHash()) + " M\tsrc/a\n",
+                out.toString()
+            );
+        }
+
         @Test
         void branch() throws IOException {
             repository.branch("init");
@@ -46,6 +386,85 @@ public class RepositoryTest {
             Assertions.assertEquals("3d55094ecc4dc83fccdeac612207d3f313b570ce\n", Files.readString(directory.resolve(".git/refs/heads/init")));
         }
 
+        @Test
+        void commitLocked() throws IOException {
+            // Another repository instance advances the branch, and then another
+            // update of it hangs.
+            Repository other = new Repository(directory);
+            Files.writeString(directory.resolve("b"), "b\n");
+            other.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560898 +0100"), "Add b");
+            String advanced = Files.readString(directory.resolve(".git/refs/heads/master"));
+            Files.writeString(directory.resolve(".git/refs/heads/master.lock"), "");
+
+            Assertions.assertThrows(
+                RefUpdateException.class,
+                () -> repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560899 +0100"), "Locked")
+            );
+            Assertions.assertEquals(advanced, Files.readString(directory.resolve(".git/refs/heads/master")));
+        }
+
+        @Test
+        void commitConcurrently() throws Exception {
+            int threads = 4;
+            int rounds = 30;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<Integer>> results = new ArrayList<>();
+            try {
+                for (int i = 0; i < threads; ++i) {
+                    int thread = i;
+                    // Each thread uses its own instance, like separate processes.
+                    Repository other = new Repository(directory);
+                    results.add(executor.submit(() -> {
+                        int succeeded = 0;
+                        for (int round = 0; round < rounds; ++round) {
+                            try {
+                                other.commit(
+                                    new User("Jane Doe", "jane@example.com"),
+                                    Timestamp.of("1604560898 +0100"),
+                                    "Round " + round + " of thread " + thread
+                                );
+                                ++succeeded;
+                            } catch (RefUpdateException e) {
+                                // Another thread advanced the branch first.
+                            }
+                        }
+                        return succeeded;
+                    }));
+                }
+                int succeeded = 0;
+                for (Future<Integer> result : results) {
+                    succeeded += result.get();
+                }
+                StringBuilder out = new StringBuilder();
+
+                repository.log("master", Long.MAX_VALUE, out);
+
+                Assertions.assertEquals(succeeded + 1, out.toString().split("(?m)^commit ").length - 1);
+            } finally {
+                executor.shutdown();
+            }
+            try (Stream<Path> stream = Files.list(directory.resolve(".git"))) {
+                Assertions.assertEquals(
+                    List.of(),
+                    stream.map(path -> path.getFileName().toString()).filter(name -> name.startsWith("tmp_") || name.endsWith(".lock")).collect(Collectors.toList())
+                );
+            }
+            Files.writeString(directory.resolve("b"), "b\n");
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560899 +0100"), "Add b");
+        }
+
+        @Test
+        void listBranches() throws IOException {
+            repository.branch("init");
+            repository.gc();
+            repository.branch("feature");
+            StringBuilder out = new StringBuilder();
+
+            repository.listBranches(out);
+
+            Assertions.assertEquals("  feature\n  init\n* master\n", out.toString());
+        }
+
         @Test
         void checkout() throws IOException {
             Files.createDirectory(directory.resolve("x"));
@@ -64,5 +483,47 @@ public class RepositoryTest {
             Assertions.assertEquals("ref: refs/heads/master\n", Files.readString(directory.resolve(".git/HEAD")));
             Assertions.assertEquals(directory.resolve("src/a"), Files.readSymbolicLink(directory.resolve("a")));
         }
+
+        @Test
+        void checkoutReplacesDirectories() throws IOException {
+            repository.setThawWorkers(4);
+            Files.delete(directory.resolve("src/a"));
+            Files.delete(directory.resolve("src"));
+            Files.writeString(directory.resolve("src"), "src\n");
+            Files.createDirectories(directory.resolve("x/y"));
+            Files.writeString(directory.resolve("x/y/z"), "z\n");
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560898 +0100"), "Replace src");
+
+            repository.checkout("3d55094ecc4dc83fccdeac612207d3f313b570ce");
+
+            Assertions.assertEquals("a\n", Files.readString(directory.resolve("src/a")));
+            // Directories that lost all their files are removed.
+            Assertions.assertFalse(Files.exists(directory.resolve("x")));
+
+            repository.checkout("master");
+
+            Assertions.assertEquals("src\n", Files.readString(directory.resolve("src")));
+            Assertions.assertEquals("z\n", Files.readString(directory.resolve("x/y/z")));
+        }
+
+        @Test
+        void checkoutIncremental() throws IOException {
+            FileTime modified = FileTime.fromMillis(0);
+            Files.setLastModifiedTime(directory.resolve("src/a"), modified);
+            Files.writeString(directory.resolve("b"), "b\n");
+            Files.setPosixFilePermissions(directory.resolve("b"), PosixFilePermissions.fromString("rwxr-xr-x"));
+            repository.commit(new User("Jane Doe", "jane@example.com"), Timestamp.of("1604560898 +0100"), "Add b");
+
+            repository.checkout("3d55094ecc4dc83fccdeac612207d3f313b570ce");
+
+            Assertions.assertFalse(Files.exists(directory.resolve("b")));
+            Assertions.assertEquals(modified, Files.getLastModifiedTime(directory.resolve("src/a")));
+
+            Files.writeString(directory.resolve("src/a"), "changed\n");
+            repository.checkout("master");
+
+            Assertions.assertEquals("a\n", Files.readString(directory.resolve("src/a")));
+            Assertions.assertTrue(Files.isExecutable(directory.resolve("b")));
+        }
     }
 }
@@ -0,0 +1,66 @@
+package record;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RevisionWalkerTest {
+    private final User user = new User("Jane Doe", "jane@example.com");
+    private final ObjectId tree = ObjectId.parse("5e1dd7430fe0d9b1678543ae1a318485d69fdd2c");
+    private final Map<ObjectId, byte[]> objects = new HashMap<>();
+    private final List<ObjectId> reads = new ArrayList<>();
+
+    private ObjectId commit(long time, ObjectId... parents) {
+        Timestamp timestamp = Timestamp.of(time + " +0000");
+        Commit commit = new Commit(tree, List.of(parents), user, timestamp, user, timestamp, Long.toString(time));
+        objects.put(commit.getId(), commit.getBytes());
+        return commit.getId();
+    }
+
+    private RevisionWalker walker() {
+        return new RevisionWalker(new History(id -> {
+            reads.add(id);
+            return objects.get(id);
+        }, null));
+    }
+
+    @Test
+    void mergeOrder() throws Exception {
+        ObjectId root = commit(1);
+        ObjectId left = commit(2, root);
+        ObjectId right = commit(4, root);
+        ObjectId leftChild = commit(3, left);
+        ObjectId merge = commit(5, leftChild, right);
+        RevisionWalker walker = walker();
+        walker.push(merge);
+
+        List<ObjectId> result = new ArrayList<>();
+        for (RevisionWalker.Revision revision = walker.next(); revision != null; revision = walker.next()) {
+            result.add(revision.getId());
+        }
+
+        Assertions.assertEquals(List.of(merge, right, leftChild, left, root), result);
+        Assertions.assertEquals(5, reads.size());
+    }
+
+    @Test
+    void stopsEarly() throws Exception {
+        ObjectId id = commit(0);
+        for (int i = 1; i < 100; ++i) {
+            id = commit(i, id);
+        }
+        RevisionWalker walker = walker();
+        walker.push(id);
+
+        for (int i = 0; i < 3; ++i) {
+            Assertions.assertEquals(Integer.toString(99 - i), walker.next().getCommit().getMessage().strip());
+        }
+
+        // Only the frontier beyond the returned commits has been read.
+        Assertions.assertEquals(4, reads.size());
+    }
+}
@@ -0,0 +1,72 @@
+package record;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TreeDiffTest {
+    private final Map<ObjectId, Tree> trees = new HashMap<>();
+    private final List<ObjectId> reads = new ArrayList<>();
+
+    private Directory directory(String name, TreeNode... children) {
+        Tree tree = new Tree(new ArrayList<>(List.of(children)));
+        trees.put(tree.getId(), tree);
+        return new Directory(name, tree.getId());
+    }
+
+    private static File file(String name, String content) {
+        return new File(name, false, new Blob(content.getBytes()).getHash());
+    }
+
+    private List<String> diff(Tree from, Tree to) throws IOException {
+        List<String> result = new ArrayList<>();
+        new TreeDiff(id -> {
+            reads.add(id);
+            return trees.get(id);
+        }).diff(from, to, change -> result.add(change.getStatus().getCode() + " " + change.getPath()));
+        return result;
+    }
+
+    @Test
+    void changes() throws IOException {
+        Tree from = new Tree(new ArrayList<>(List.of(
+            file("a", "a"),
+            directory("b", file("c", "c"), file("d", "d")),
+            file("e", "e"),
+            new SymbolicLink("f", new Blob("a".getBytes()).getHash()),
+            directory("g", file("h", "h"))
+        )));
+        Tree to = new Tree(new ArrayList<>(List.of(
+            new File("a", true, new Blob("a".getBytes()).getHash()),
+            directory("b", file("c", "changed"), file("d", "d")),
+            directory("e", file("x", "x")),
+            file("f", "a"),
+            file("g", "g")
+        )));
+
+        Assertions.assertEquals(
+            List.of("M a", "M b/c", "D e", "A e/x", "T f", "D g/h", "A g"),
+            diff(from, to)
+        );
+    }
+
+    @Test
+    void skipsIdenticalSubtrees() throws IOException {
+        List<TreeNode> oldChildren = new ArrayList<>();
+        List<TreeNode> newChildren = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            Directory unchanged = directory("d" + i, file("a", "a" + i), directory("e", file("b", "b" + i)));
+            oldChildren.add(unchanged);
+            newChildren.add(i == 42 ? directory("d" + i, file("a", "a" + i), directory("e", file("b", "changed"))) : unchanged);
+        }
+
+        Assertions.assertEquals(List.of("M d42/e/b"), diff(new Tree(oldChildren), new Tree(newChildren)));
+        // Two trees on each side of the path to the changed file.
+        Assertions.assertEquals(4, reads.size());
+    }
+}
@@ -0,0 +1,76 @@
+package record;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TreeViewTest {
+    private final Tree tree =
+        new Tree(
+            new ArrayList<>(
+                Arrays.asList(
+                    new File("b", true, Base16.decode("61780798228d17af2d34fce4cfbdf35556832472")),
+                    new Directory("c", Base16.decode("3683f870be446c7cc05ffaef9fa06415276e1828")),
+                    new File("a", false, Base16.decode("78981922613b2afb6025042ff6bd878ac1994e85")),
+                    new SymbolicLink("😀", Base16.decode("78981922613b2afb6025042ff6bd878ac1994e85")),
+                    new File("！", false, Base16.decode("78981922613b2afb6025042ff6bd878ac1994e85"))
+                )
+            )
+        );
+
+    @Test
+    void find() {
+        TreeView view = TreeView.parse(tree.getBytes());
+
+        Assertions.assertTrue(view.isSorted());
+        Assertions.assertEquals(5, view.size());
+        Assertions.assertEquals(1, view.find("b"));
+        Assertions.assertEquals(TreeNodeType.EXECUTABLE, view.getType(1));
+        Assertions.assertTrue(view.hasObjectHash(1, Base16.decode("61780798228d17af2d34fce4cfbdf35556832472")));
+        Assertions.assertEquals(TreeNodeType.DIRECTORY, view.lookup("c").getType());
+        Assertions.assertEquals(3, view.find("😀"));
+        Assertions.assertEquals(4, view.find("！"));
+        Assertions.assertEquals(-1, view.find("d"));
+    }
+
+    @Test
+    void toTree() {
+        byte[] bytes = tree.getBytes();
+
+        Assertions.assertArrayEquals(bytes, TreeView.parse(bytes).toTree().getBytes());
+    }
+
+    @Test
+    void unsorted() {
+        List<TreeNode> children = new ArrayList<>();
+        children.add(new File("b", false, Base16.decode("61780798228d17af2d34fce4cfbdf35556832472")));
+        children.add(new File("a", false, Base16.decode("78981922613b2afb6025042ff6bd878ac1994e85")));
+        byte[] body = new byte[0];
+        for (TreeNode child : children) {
+            byte[] entry = child.toEntry();
+            byte[] concatenation = Arrays.copyOf(body, body.length + entry.length);
+            System.arraycopy(entry, 0, concatenation, body.length, entry.length);
+            body = concatenation;
+        }
+        byte[] header = LooseObject.getHeader("tree", body.length);
+        byte[] input = Arrays.copyOf(header, header.length + body.length);
+        System.arraycopy(body, 0, input, header.length, body.length);
+
+        TreeView view = TreeView.parse(input);
+
+        Assertions.assertFalse(view.isSorted());
+        Assertions.assertEquals(1, view.find("a"));
+        Assertions.assertEquals("a", view.toTree().getChildren().get(0).getName());
+    }
+
+    @Test
+    void truncated() {
+        byte[] bytes = tree.getBytes();
+        byte[] input = Arrays.copyOf(bytes, bytes.length - 1);
+
+        Assertions.assertThrows(FatalParseException.class, () -> TreeView.parse(input));
+    }
+}
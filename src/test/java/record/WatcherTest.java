@@ -0,0 +1,81 @@
+package record;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class WatcherTest {
+    private static final long TIMEOUT = 10_000;
+
+    private static Thread start(Watcher watcher) {
+        Thread thread = new Thread(() -> {
+            try {
+                watcher.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    void changes() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("record");
+        Files.createDirectories(directory.resolve(".git"));
+        Files.createDirectories(directory.resolve("src/main"));
+        Files.createDirectories(directory.resolve("test"));
+        Files.writeString(directory.resolve("src/main/a"), "a\n");
+
+        Assertions.assertNull(Watcher.sync(directory, TIMEOUT).getDirectories());
+
+        Watcher watcher = new Watcher(directory);
+        Thread thread = start(watcher);
+        try {
+            Assertions.assertThrows(IOException.class, () -> new Watcher(directory));
+
+            // A watcher that has just started can't tell what changed.
+            Watcher.Changes changes = Watcher.sync(directory, TIMEOUT);
+            Assertions.assertNull(changes.getDirectories());
+            Watcher.acknowledge(directory, changes);
+
+            Assertions.assertEquals(Set.of(), Watcher.sync(directory, TIMEOUT).getDirectories());
+
+            Files.writeString(directory.resolve("src/main/a"), "b\n");
+
+            Assertions.assertEquals(Set.of("src/main"), Watcher.sync(directory, TIMEOUT).getDirectories());
+
+            // Changes accumulate until they're acknowledged.
+            Files.createDirectories(directory.resolve("test/x"));
+            Files.writeString(directory.resolve("test/x/b"), "b\n");
+
+            changes = Watcher.sync(directory, TIMEOUT);
+            Assertions.assertEquals(Set.of("src/main", "test", "test/x"), changes.getDirectories());
+            Watcher.acknowledge(directory, changes);
+
+            Files.delete(directory.resolve("test/x/b"));
+            Files.delete(directory.resolve("test/x"));
+
+            changes = Watcher.sync(directory, TIMEOUT);
+            Assertions.assertEquals(Set.of("test", "test/x"), changes.getDirectories());
+
+            // Another sync writes a newer journal before the first freeze is
+            // acknowledged; its changes must survive the acknowledgement.
+            Files.writeString(directory.resolve("src/main/a"), "c\n");
+
+            Assertions.assertEquals(Set.of("src/main", "test", "test/x"), Watcher.sync(directory, TIMEOUT).getDirectories());
+            Watcher.acknowledge(directory, changes);
+
+            Assertions.assertEquals(Set.of("src/main", "test", "test/x"), Watcher.sync(directory, TIMEOUT).getDirectories());
+        } finally {
+            watcher.close();
+            thread.join();
+        }
+
+        Assertions.assertNull(Watcher.sync(directory, TIMEOUT).getDirectories());
+    }
+}
@@ -0,0 +1,46 @@
+package record;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ZlibTest {
+    private static byte[] deflate(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (OutputStream stream = Zlib.deflate(result, level)) {
+            stream.write(data);
+        }
+        return result.toByteArray();
+    }
+
+    @Test
+    void reuse() throws IOException {
+        byte[] a = "a".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        byte[] b = "b".repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+        // The same instances are used over and over, at different levels.
+        for (int i = 0; i < 10; ++i) {
+            byte[] stored = deflate(a, Deflater.NO_COMPRESSION);
+            byte[] deflated = deflate(b, Deflater.BEST_COMPRESSION);
+
+            Assertions.assertTrue(stored.length > a.length);
+            Assertions.assertTrue(deflated.length < b.length);
+            try (
+                InputStream first = Zlib.inflate(new ByteArrayInputStream(stored));
+                InputStream second = Zlib.inflate(new ByteArrayInputStream(deflated))
+            ) {
+                // Nested streams take different inflaters.
+                Assertions.assertEquals('a', first.read());
+                Assertions.assertArrayEquals(b, second.readAllBytes());
+                Assertions.assertEquals(999, first.readAllBytes().length);
+            }
+        }
+    }
+}